@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.qihoo360.loader2;
+
+import android.text.TextUtils;
+
+import com.qihoo360.loader2.PluginContainers.ActivityState;
+
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.TreeSet;
+
+import static com.qihoo360.loader2.PluginContainers.STATE_NONE;
+
+/**
+ * 同一种 LaunchMode + Theme（及 TaskAffinity）下的一组坑位，以及用于快速分配坑位的索引
+ * <p>
+ * 分配坑位时的查找顺序与以前遍历 HashMap 时完全一致，只是不再需要整组遍历：
+ * 1. 已登记了目标 Activity 的坑：(插件, Activity) -> 坑 的索引
+ * 2. 第一个空白的坑：以“在 HashMap 中的遍历顺序”为下标的空闲位图
+ * 3. 最老的、没有 Activity 实例的坑；4. 最老的坑：按 (时间戳, 遍历顺序) 排序的两个集合，按是否有实例区分
+ * 仍在租约期内的坑（见 PluginContainerLeases）单独放在按到期时间排序的集合中，不参与第 3、4 步；查找前先把已到期的移回上面两个集合。
+ * 第 4 步是坑位耗尽时的最后手段，只有全都在租约期内时才挤掉最早到期的那个
+ * （此时调用方的租约已过时，启动时本进程会发现坑位与 Intent 的目标不符，按 forward 流程重新登记）
+ * <p>
+ * 坑位状态的所有修改都必须在持有本对象锁的情况下进行（见 ActivityState 中的 detach/attach）。
+ *
+ * @author RePlugin Team
+ */
+class ActivityStateGroup {
+
+    /**
+     * 按时间戳从老到新排序，时间戳相同时按遍历顺序，与以前“遍历时取严格更小的”结果一致
+     */
+    private static final Comparator<ActivityState> LRU_COMPARATOR = new Comparator<ActivityState>() {
+        @Override
+        public int compare(ActivityState lhs, ActivityState rhs) {
+            if (lhs.timestamp != rhs.timestamp) {
+                return lhs.timestamp < rhs.timestamp ? -1 : 1;
+            }
+            return lhs.rank < rhs.rank ? -1 : (lhs.rank == rhs.rank ? 0 : 1);
+        }
+    };
+
+    /**
+     * 按租约到期时间从早到晚排序
+     */
+    private static final Comparator<ActivityState> LEASE_COMPARATOR = new Comparator<ActivityState>() {
+        @Override
+        public int compare(ActivityState lhs, ActivityState rhs) {
+            if (lhs.leaseUntil != rhs.leaseUntil) {
+                return lhs.leaseUntil < rhs.leaseUntil ? -1 : 1;
+            }
+            return lhs.rank < rhs.rank ? -1 : (lhs.rank == rhs.rank ? 0 : 1);
+        }
+    };
+
+    /**
+     * HashMap<坑位名称, ActivityState>
+     */
+    private final HashMap<String, ActivityState> mStates = new HashMap<>();
+
+    /**
+     * 按 mStates 的遍历顺序排列的坑位，下标即 ActivityState.rank
+     */
+    private ActivityState[] mByRank = new ActivityState[0];
+
+    /**
+     * 空白（STATE_NONE）坑位的 rank
+     */
+    private final BitSet mFree = new BitSet();
+
+    /**
+     * HashMap<插件:Activity, 登记了该 Activity 的所有坑的 rank>，取最小的 rank 即为要用的坑
+     */
+    private final HashMap<String, BitSet> mTargets = new HashMap<>();
+
+    /**
+     * 没有 Activity 实例的坑
+     */
+    private final TreeSet<ActivityState> mUnreferenced = new TreeSet<>(LRU_COMPARATOR);
+
+    /**
+     * 有 Activity 实例的坑。实例可能已被回收却没有走 onDestroy，查找时会再次确认
+     */
+    private final TreeSet<ActivityState> mReferenced = new TreeSet<>(LRU_COMPARATOR);
+
+    /**
+     * 设置过租约的坑（leaseUntil 不为 0），到期后在查找时移回 mUnreferenced 或 mReferenced
+     */
+    private final TreeSet<ActivityState> mLeased = new TreeSet<>(LEASE_COMPARATOR);
+
+    void put(ActivityState state) {
+        mStates.put(state.container, state);
+        state.group = this;
+    }
+
+    /**
+     * 坑位添加完毕后调用，重建所有索引
+     */
+    void reindex() {
+        mByRank = new ActivityState[mStates.size()];
+        mFree.clear();
+        mTargets.clear();
+        mUnreferenced.clear();
+        mReferenced.clear();
+        mLeased.clear();
+
+        int rank = 0;
+        for (ActivityState state : mStates.values()) {
+            state.rank = rank;
+            mByRank[rank++] = state;
+        }
+        for (ActivityState state : mByRank) {
+            attach(state);
+        }
+    }
+
+    /**
+     * 坑位状态即将修改，将其从索引中移除
+     */
+    void detach(ActivityState state) {
+        mFree.clear(state.rank);
+        mUnreferenced.remove(state);
+        mReferenced.remove(state);
+        mLeased.remove(state);
+
+        if (hasTarget(state)) {
+            // 极少数情况下（如强制重新登记）同一个 Activity 会登记在多个坑上，移除后剩下的坑自然顶上
+            String key = targetKey(state.plugin, state.activity);
+            BitSet ranks = mTargets.get(key);
+            if (ranks != null) {
+                ranks.clear(state.rank);
+                if (ranks.isEmpty()) {
+                    mTargets.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * 坑位状态修改完毕，按新的状态放回索引
+     */
+    void attach(ActivityState state) {
+        if (state.state == STATE_NONE) {
+            mFree.set(state.rank);
+        }
+        if (state.leaseUntil != 0) {
+            mLeased.add(state);
+        } else {
+            attachUnleased(state);
+        }
+
+        if (hasTarget(state)) {
+            String key = targetKey(state.plugin, state.activity);
+            BitSet ranks = mTargets.get(key);
+            if (ranks == null) {
+                ranks = new BitSet();
+                mTargets.put(key, ranks);
+            }
+            ranks.set(state.rank);
+        }
+    }
+
+    /**
+     * 已登记了目标 Activity 的坑
+     */
+    ActivityState findTarget(String plugin, String activity) {
+        if (TextUtils.isEmpty(plugin) || TextUtils.isEmpty(activity)) {
+            // 不会进入索引的参数，按以前的方式遍历
+            for (ActivityState state : mByRank) {
+                if (TextUtils.equals(state.plugin, plugin) && TextUtils.equals(state.activity, activity)) {
+                    return state;
+                }
+            }
+            return null;
+        }
+        BitSet ranks = mTargets.get(targetKey(plugin, activity));
+        return ranks != null ? mByRank[ranks.nextSetBit(0)] : null;
+    }
+
+    /**
+     * 第一个空白的坑
+     */
+    ActivityState findFree() {
+        int rank = mFree.nextSetBit(0);
+        return rank >= 0 ? mByRank[rank] : null;
+    }
+
+    /**
+     * 最老的、没有 Activity 实例的坑，仍在租约期内的坑除外
+     *
+     * @param now SystemClock.elapsedRealtime()
+     */
+    ActivityState findOldestUnreferenced(long now) {
+        expireLeases(now);
+        ActivityState found = mUnreferenced.isEmpty() ? null : mUnreferenced.first();
+
+        // 有实例的坑中，比 found 更老的那些，其实例可能已被回收
+        Iterator<ActivityState> it = mReferenced.iterator();
+        while (it.hasNext()) {
+            ActivityState state = it.next();
+            if (found != null && LRU_COMPARATOR.compare(state, found) > 0) {
+                break;
+            }
+            if (!state.hasRef()) {
+                it.remove();
+                mUnreferenced.add(state);
+                return state;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 最老的坑；全都在租约期内时，取最早到期的
+     *
+     * @param now SystemClock.elapsedRealtime()
+     */
+    ActivityState findOldest(long now) {
+        expireLeases(now);
+        ActivityState unreferenced = mUnreferenced.isEmpty() ? null : mUnreferenced.first();
+        ActivityState referenced = mReferenced.isEmpty() ? null : mReferenced.first();
+        if (unreferenced == null) {
+            return referenced != null ? referenced : (mLeased.isEmpty() ? null : mLeased.first());
+        } else if (referenced == null) {
+            return unreferenced;
+        }
+        return LRU_COMPARATOR.compare(unreferenced, referenced) < 0 ? unreferenced : referenced;
+    }
+
+    /**
+     * 将已到期的坑移回 mUnreferenced 或 mReferenced
+     */
+    private void expireLeases(long now) {
+        while (!mLeased.isEmpty() && !mLeased.first().isLeased(now)) {
+            ActivityState state = mLeased.pollFirst();
+            state.leaseUntil = 0;
+            attachUnleased(state);
+        }
+    }
+
+    private void attachUnleased(ActivityState state) {
+        if (state.refs.isEmpty()) {
+            mUnreferenced.add(state);
+        } else {
+            mReferenced.add(state);
+        }
+    }
+
+    private static boolean hasTarget(ActivityState state) {
+        return !TextUtils.isEmpty(state.plugin) && !TextUtils.isEmpty(state.activity);
+    }
+
+    private static String targetKey(String plugin, String activity) {
+        return plugin + ":" + activity;
+    }
+}
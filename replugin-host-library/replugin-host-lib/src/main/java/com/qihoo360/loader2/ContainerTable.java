@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.qihoo360.loader2;
+
+import android.content.SharedPreferences;
+
+import com.qihoo360.mobilesafe.api.Pref;
+import com.qihoo360.mobilesafe.api.Tasks;
+import com.qihoo360.replugin.helper.LogDebug;
+import com.qihoo360.replugin.helper.LogRelease;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.qihoo360.replugin.helper.LogDebug.LOG;
+import static com.qihoo360.replugin.helper.LogDebug.PLUGIN_TAG;
+import static com.qihoo360.replugin.helper.LogRelease.LOGR;
+
+/**
+ * 坑位登记表（坑 -> 插件:Activity:时间戳）
+ * <p>
+ * 以前每次分配坑位都会同步 commit 一次 SharedPreferences（plugins_PACM.temp），在 startActivity 的路径上做磁盘 IO。
+ * 现在登记表常驻内存，读写都只访问内存；修改先合并到待写入的集合中，再由后台线程（Tasks）批量写入 SharedPreferences。
+ * 同一个坑在写入前被多次修改时，只会写入最后一次的值。
+ * <p>
+ * 进程启动时仍从 SharedPreferences 恢复（见 PluginContainers.loadFromPref），写入通常在毫秒级完成，
+ * 进程意外死亡时最多丢失最后一批尚未写入的登记，此时按“核心进程数据丢失”的流程处理（见 PluginContainers）。
+ *
+ * @author RePlugin Team
+ */
+final class ContainerTable {
+
+    private static final Object LOCKER = new Object();
+
+    /**
+     * 内存中的登记表，首次访问时从 SharedPreferences 加载
+     */
+    private static HashMap<String, String> sTable;
+
+    /**
+     * 尚未写入的修改
+     */
+    private static HashMap<String, String> sPending = new HashMap<>();
+
+    private static boolean sFlushScheduled;
+
+    private static final Runnable FLUSH = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * 获取所有登记
+     */
+    static Map<String, String> getAll() {
+        synchronized (LOCKER) {
+            return new HashMap<>(table());
+        }
+    }
+
+    static String get(String container, String defValue) {
+        synchronized (LOCKER) {
+            String v = table().get(container);
+            return v != null ? v : defValue;
+        }
+    }
+
+    /**
+     * 登记，立即生效，稍后在后台线程写入
+     */
+    static void set(String container, String value) {
+        synchronized (LOCKER) {
+            table().put(container, value);
+            sPending.put(container, value);
+            if (sFlushScheduled) {
+                // 已有写入任务在排队，合并到同一批中
+                return;
+            }
+            sFlushScheduled = true;
+        }
+        Tasks.post2Thread(FLUSH);
+    }
+
+    private static HashMap<String, String> table() {
+        if (sTable == null) {
+            sTable = new HashMap<>();
+            try {
+                Map<String, ?> all = Pref.ipcGetAll();
+                for (Map.Entry<String, ?> e : all.entrySet()) {
+                    if (e.getValue() != null) {
+                        sTable.put(e.getKey(), e.getValue().toString());
+                    }
+                }
+            } catch (Throwable e) {
+                if (LOGR) {
+                    LogRelease.e(PLUGIN_TAG, "PACM: load table e=" + e.getMessage(), e);
+                }
+            }
+        }
+        return sTable;
+    }
+
+    private static void flush() {
+        HashMap<String, String> batch;
+        synchronized (LOCKER) {
+            batch = sPending;
+            sPending = new HashMap<>();
+            sFlushScheduled = false;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        if (LOG) {
+            LogDebug.d(PLUGIN_TAG, "PACM: flush table: size=" + batch.size());
+        }
+        try {
+            SharedPreferences.Editor editor = Pref.getTempSharedPreferences(Pref.PREF_TEMP_FILE_PACM).edit();
+            for (Map.Entry<String, String> e : batch.entrySet()) {
+                editor.putString(e.getKey(), e.getValue());
+            }
+            editor.commit();
+        } catch (Throwable e) {
+            if (LOGR) {
+                LogRelease.e(PLUGIN_TAG, "PACM: flush table e=" + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -20,6 +20,8 @@ import android.os.IBinder;
 import android.util.Log;
 
 import com.qihoo360.replugin.RePluginInternal;
+import com.qihoo360.replugin.base.BinderStats;
+import com.qihoo360.replugin.component.utils.IntentResolveCache;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
@@ -59,6 +61,11 @@ public class DumpUtils {
 
             if (writer != null) {
                 writer.println(dumpInfo);
+
+                // 本进程的隐式 Intent 解析缓存
+                IntentResolveCache.dump(writer);
+                PluginProviderStub.dumpBootstrap(writer);
+                BinderStats.dump(writer);
             }
         } catch (Throwable e) {
             e.printStackTrace();
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.qihoo360.loader2;
+
+import android.content.Intent;
+import android.os.SystemClock;
+
+import com.qihoo360.replugin.helper.LogDebug;
+import com.qihoo360.replugin.helper.LogRelease;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.qihoo360.replugin.helper.LogDebug.LOG;
+import static com.qihoo360.replugin.helper.LogDebug.PLUGIN_TAG;
+import static com.qihoo360.replugin.helper.LogRelease.LOGR;
+
+/**
+ * 常驻进程向各进程分发 Intent（见 PluginProcessMain.sendIntent2Process、sendIntent2Plugin）
+ * <p>
+ * 以前逐个进程串行调用 sendIntentSync，总耗时是所有进程处理时间之和，一个进程卡住会拖慢后面所有进程。
+ * 现在同步发送时，所有目标进程都交给后台线程池并发调用（线程不够时排队，不会退回到调用线程中串行执行），调用线程统一等待，
+ * 最多等待 {@link #SYNC_TIMEOUT}，到时仍未完成的进程记为超时，不再等待（调用仍在后台继续）。
+ * 异步发送本身是 oneway 调用，不会等待目标进程，仍在当前线程中依次发出。
+ * <p>
+ * 每个进程的发送次数、失败、超时和耗时会被记录，可通过 dump 查看。
+ *
+ * @author RePlugin Team
+ */
+final class IntentFanOut {
+
+    /**
+     * 同步发送时，每个目标进程最多等待的时间（目标进程在 UI 线程中最多处理 10 秒，见 LocalBroadcastHelper）
+     */
+    private static final long SYNC_TIMEOUT = 11 * 1000;
+
+    /**
+     * 后台最多同时进行的同步调用数，超出时排队
+     */
+    private static final int MAX_THREADS = 8;
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "intent-fan-out-" + mCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    static {
+        // 空闲时不保留线程
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_DONE = 1;
+    private static final int STATE_TIMEOUT = 2;
+
+    /**
+     * HashMap<进程名, 投递统计>
+     */
+    private static final HashMap<String, Stats> sStats = new HashMap<>();
+
+    /**
+     * 一个目标进程
+     */
+    static final class Target {
+
+        final String process;
+
+        final IPluginClient client;
+
+        Target(String process, IPluginClient client) {
+            this.process = process;
+            this.client = client;
+        }
+    }
+
+    /**
+     * 发送给所有目标进程
+     *
+     * @param sync 是否等待目标进程处理完成
+     */
+    static void send(List<Target> targets, Intent intent, boolean sync) {
+        if (targets.isEmpty()) {
+            return;
+        }
+        if (!sync) {
+            // oneway 调用，不会阻塞
+            for (Target t : targets) {
+                deliver(t, intent, false, SystemClock.elapsedRealtime(), null);
+            }
+            return;
+        }
+
+        final CountDownLatch latch = new CountDownLatch(targets.size());
+        final long start = SystemClock.elapsedRealtime();
+        final AtomicInteger[] states = new AtomicInteger[targets.size()];
+        for (int i = 0; i < targets.size(); i++) {
+            final Target t = targets.get(i);
+            final AtomicInteger state = new AtomicInteger(STATE_PENDING);
+            states[i] = state;
+            // 每个进程使用各自的 Intent 副本，避免并发序列化同一个对象
+            final Intent copy = new Intent(intent);
+            EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        deliver(t, copy, true, start, state);
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+
+        boolean done = false;
+        try {
+            done = latch.await(SYNC_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (done) {
+            return;
+        }
+
+        if (LOGR) {
+            LogRelease.w(PLUGIN_TAG, "i.f.o: timeout, pending=" + latch.getCount() + " a=" + intent.getAction());
+        }
+        // 到时仍未完成（包括仍在排队）的目标记为超时；之后即使完成也不再重复统计
+        long cost = SystemClock.elapsedRealtime() - start;
+        for (int i = 0; i < states.length; i++) {
+            if (states[i].compareAndSet(STATE_PENDING, STATE_TIMEOUT)) {
+                record(targets.get(i).process, false, true, cost);
+            }
+        }
+    }
+
+    /**
+     * @param start 开始发送的时间，同步发送时从交给线程池时算起（包括排队的时间）
+     * @param state 同步发送时的状态，已被记为超时的不再统计
+     */
+    private static void deliver(Target t, Intent intent, boolean sync, long start, AtomicInteger state) {
+        boolean ok = false;
+        try {
+            if (sync) {
+                t.client.sendIntentSync(intent);
+            } else {
+                t.client.sendIntent(intent);
+            }
+            ok = true;
+        } catch (Throwable e) {
+            if (LOGR) {
+                LogRelease.e(PLUGIN_TAG, "p.p sic e: " + e.getMessage(), e);
+            }
+        }
+        long cost = SystemClock.elapsedRealtime() - start;
+        if (LOG) {
+            LogDebug.d(PLUGIN_TAG, "send intent: process=" + t.process + " sync=" + sync + " ok=" + ok + " cost=" + cost);
+        }
+        if (state != null && !state.compareAndSet(STATE_PENDING, STATE_DONE)) {
+            // 已记为超时
+            return;
+        }
+        record(t.process, ok, false, cost);
+    }
+
+    private static void record(String process, boolean ok, boolean timeout, long cost) {
+        synchronized (sStats) {
+            Stats s = sStats.get(process);
+            if (s == null) {
+                s = new Stats();
+                sStats.put(process, s);
+            }
+            s.count++;
+            if (timeout) {
+                s.timeouts++;
+            } else if (!ok) {
+                s.failures++;
+            }
+            s.totalCost += cost;
+            if (cost > s.maxCost) {
+                s.maxCost = cost;
+            }
+        }
+    }
+
+    static void dump(PrintWriter writer) {
+        synchronized (sStats) {
+            writer.println("--- IntentFanOut stats.size = " + sStats.size() + " ---");
+            for (Map.Entry<String, Stats> e : sStats.entrySet()) {
+                Stats s = e.getValue();
+                writer.println(e.getKey() + ": count=" + s.count + " failures=" + s.failures + " timeouts=" + s.timeouts
+                        + " avg=" + (s.count > 0 ? s.totalCost / s.count : 0) + "ms max=" + s.maxCost + "ms");
+            }
+        }
+    }
+
+    private static final class Stats {
+
+        int count;
+
+        int failures;
+
+        /**
+         * 到等待时间仍未完成的次数（不再计入 failures）
+         */
+        int timeouts;
+
+        long totalCost;
+
+        long maxCost;
+    }
+}
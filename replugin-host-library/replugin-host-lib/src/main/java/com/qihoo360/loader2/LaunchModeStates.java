@@ -52,7 +52,7 @@ class LaunchModeStates {
      * <p>
      * 其中：N1 表示当前为 UI 进程，NR 表示 launchMode 为 Standard，NTS 表示坑的 theme 为 Not Translucent。
      */
-    private Map<String, HashMap<String, ActivityState>> mStates = new HashMap<>();
+    private Map<String, ActivityStateGroup> mStates = new HashMap<>();
 
     /**
      * 初始化 LaunchMode 和 Theme 对应的坑位
@@ -65,9 +65,9 @@ class LaunchModeStates {
      */
     void addStates(Map<String, ActivityState> allStates, HashSet<String> containers, String prefix, int launchMode, boolean translucent, int count) {
         String infix = getInfix(launchMode, translucent);
-        HashMap<String, ActivityState> states = mStates.get(infix);
+        ActivityStateGroup states = mStates.get(infix);
         if (states == null) {
-            states = new HashMap<>();
+            states = new ActivityStateGroup();
             mStates.put(infix, states);
         }
 
@@ -80,16 +80,17 @@ class LaunchModeStates {
             }
 
             ActivityState state = new ActivityState(key);
-            states.put(key, state);
+            states.put(state);
             allStates.put(key, state);
             containers.add(key);
         }
+        states.reindex();
     }
 
     /**
      * 根据 launchMode 和 theme 获取对应的坑位集合
      */
-    HashMap<String, ActivityState> getStates(int launchMode, int theme) {
+    ActivityStateGroup getStates(int launchMode, int theme) {
         String infix = getInfix(launchMode, isTranslucentTheme(theme));
         return mStates.get(infix);
     }
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.qihoo360.loader2;
+
+import android.os.IBinder;
+import android.os.Process;
+
+import com.qihoo360.mobilesafe.api.Tasks;
+import com.qihoo360.replugin.helper.LogDebug;
+import com.qihoo360.replugin.helper.LogRelease;
+
+import java.util.ArrayList;
+
+import static com.qihoo360.replugin.helper.LogDebug.LOG;
+import static com.qihoo360.replugin.helper.LogDebug.PLUGIN_TAG;
+import static com.qihoo360.replugin.helper.LogRelease.LOGR;
+
+/**
+ * 插件组件生命周期事件的上报（调用方进程）
+ * <p>
+ * 以前每次 Activity、Service 销毁，以及释放插件 Binder 时，都要同步调用一次常驻进程（unregActivity 等）。
+ * 现在事件先进入本地队列，由后台线程（Tasks，单线程）合并成小批次，通过 oneway 的 IPluginHost.reportLifecycleEvents 上报，
+ * 调用方不再等待常驻进程。同一个 Binder 上的 oneway 调用按发出顺序处理，因此常驻进程无需再排序。
+ * <p>
+ * Activity、Service 的创建及获取插件 Binder 时仍同步登记（regActivity、regService、regPluginBinder），
+ * 否则进程可能在计数生效前就被判定为空闲而退出。释放类事件晚一些送达只会推迟进程的回收，因此只批量上报这类事件。
+ * <p>
+ * 原有的同步方法仍然保留，供旧的调用方使用。
+ *
+ * @author RePlugin Team
+ */
+final class LifecycleEventReporter {
+
+    /**
+     * 每批最多的事件数
+     */
+    private static final int MAX_BATCH = 32;
+
+    private static final Object LOCKER = new Object();
+
+    private static final ArrayList<PluginLifecycleEvent> sQueue = new ArrayList<>();
+
+    private static boolean sFlushScheduled;
+
+    private static final Runnable FLUSH = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    static void activityDestroyed(int index, String plugin, String container, String activity) {
+        enqueue(new PluginLifecycleEvent(PluginLifecycleEvent.ACTIVITY_DESTROYED, Process.myPid(), index, Process.myPid(), plugin, container, activity, null));
+    }
+
+    static void serviceDestroyed(int index, String plugin, String service) {
+        enqueue(new PluginLifecycleEvent(PluginLifecycleEvent.SERVICE_DESTROYED, Process.myPid(), index, Process.myPid(), plugin, null, service, null));
+    }
+
+    /**
+     * @param pid    提供 Binder 的进程
+     * @param binder 释放的 Binder
+     */
+    static void binderReleased(int pid, IBinder binder) {
+        enqueue(new PluginLifecycleEvent(PluginLifecycleEvent.BINDER_RELEASED, Process.myPid(), -1, pid, null, null, null, binder));
+    }
+
+    private static void enqueue(PluginLifecycleEvent event) {
+        synchronized (LOCKER) {
+            sQueue.add(event);
+            if (sFlushScheduled) {
+                // 已有上报任务在排队，合并到同一批中
+                return;
+            }
+            sFlushScheduled = true;
+        }
+        Tasks.post2Thread(FLUSH);
+    }
+
+    private static void flush() {
+        while (true) {
+            PluginLifecycleEvent[] batch;
+            synchronized (LOCKER) {
+                if (sQueue.isEmpty()) {
+                    sFlushScheduled = false;
+                    return;
+                }
+                int count = Math.min(sQueue.size(), MAX_BATCH);
+                batch = sQueue.subList(0, count).toArray(new PluginLifecycleEvent[count]);
+                sQueue.subList(0, count).clear();
+            }
+
+            if (LOG) {
+                LogDebug.d(PLUGIN_TAG, "report lifecycle events: size=" + batch.length);
+            }
+            try {
+                PluginProcessMain.getPluginHost().reportLifecycleEvents(batch);
+            } catch (Throwable e) {
+                if (LOGR) {
+                    LogRelease.e(PLUGIN_TAG, "r.l.e: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+}
@@ -355,6 +355,7 @@ class Loader {
                     Plugin.FILENAME_2_DEX.put(mPath, new WeakReference<>(mClassLoader));
                 }
             }
+            Plugin.indexClassLoader(mClassLoader, mPluginObj);
             if (load == Plugin.LOAD_DEX) {
                 return isDexLoaded();
             }
@@ -140,6 +140,20 @@ public class MP {
             sBinderReasons.put(plugin + ":" + binder, reason);
         }
 
+        return PluginBinderCache.acquire(plugin, process, binder, BINDER_FETCHER);
+    }
+
+    private static final PluginBinderCache.Fetcher BINDER_FETCHER = new PluginBinderCache.Fetcher() {
+        @Override
+        public PluginBinder fetch(String plugin, int process, String binder) {
+            return fetchPluginBinderRemote(plugin, process, binder);
+        }
+    };
+
+    /**
+     * 远程获取插件 Binder，向常驻进程登记由 PluginBinderCache 负责
+     */
+    private static PluginBinder fetchPluginBinderRemote(String plugin, int process, String binder) {
         PluginBinderInfo info = new PluginBinderInfo(PluginBinderInfo.BINDER_REQUEST);
         IBinder b = null;
         try {
@@ -156,10 +170,6 @@ public class MP {
             if (LOG) {
                 LogDebug.d(PLUGIN_TAG, "MP.fetchPluginBinder binder.object=" + b + " pid=" + info.pid);
             }
-            // 增加计数器
-            if (b != null) {
-                PluginProcessMain.getPluginHost().regPluginBinder(info, b);
-            }
         } catch (Throwable e) {
             if (LOGR) {
                 LogRelease.e(PLUGIN_TAG, "mp.f.p.b: p=" + info.pid, e);
@@ -188,15 +198,8 @@ public class MP {
             }
         }
 
-        PluginBinderInfo info = new PluginBinderInfo(PluginBinderInfo.BINDER_REQUEST);
-        info.pid = binder.pid;
-        try {
-            PluginProcessMain.getPluginHost().unregPluginBinder(info, binder.binder);
-        } catch (Throwable e) {
-            if (LOGR) {
-                LogRelease.e(PLUGIN_TAG, "mp.r.p.b: " + e.getMessage(), e);
-            }
-        }
+        // 计数器归零且租期到期后，才通知常驻进程
+        PluginBinderCache.release(binder);
     }
 
     /**
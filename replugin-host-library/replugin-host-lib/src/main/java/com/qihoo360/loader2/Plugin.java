@@ -32,6 +32,7 @@ import com.qihoo360.loader.utils.ProcessLocker;
 import com.qihoo360.mobilesafe.api.Tasks;
 import com.qihoo360.replugin.RePlugin;
 import com.qihoo360.replugin.component.ComponentList;
+import com.qihoo360.replugin.component.activity.ActivityInjector;
 import com.qihoo360.replugin.component.app.PluginApplicationClient;
 import com.qihoo360.replugin.helper.LogDebug;
 import com.qihoo360.replugin.helper.LogRelease;
@@ -47,6 +48,7 @@ import java.io.PrintWriter;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.WeakHashMap;
 
 import static com.qihoo360.replugin.helper.LogDebug.LOG;
 import static com.qihoo360.replugin.helper.LogDebug.MAIN_TAG;
@@ -107,6 +109,12 @@ class Plugin {
      */
     static final HashMap<String, WeakReference<ComponentList>> FILENAME_2_COMPONENT_LIST = new HashMap<>();
 
+    /**
+     * ClassLoader -> 插件，用于根据 Activity 等对象的 ClassLoader 直接找到所属插件（见 PmBase.lookupPlugin）
+     * ClassLoader 未重写 equals/hashCode，因此按对象身份查找；Key 为弱引用，Value 也须为弱引用（Plugin 持有 ClassLoader）
+     */
+    static final WeakHashMap<ClassLoader, WeakReference<Plugin>> CLASSLOADER_2_PLUGIN = new WeakHashMap<>();
+
     /**
      * 调试用
      */
@@ -234,6 +242,40 @@ class Plugin {
         return dex;
     }
 
+    /**
+     * 记录 ClassLoader 所属的插件，在 Loader 得到 ClassLoader 后调用
+     */
+    static final void indexClassLoader(ClassLoader cl, Plugin plugin) {
+        if (cl == null || plugin == null) {
+            return;
+        }
+        synchronized (CLASSLOADER_2_PLUGIN) {
+            CLASSLOADER_2_PLUGIN.put(cl, new WeakReference<>(plugin));
+        }
+    }
+
+    static final void unindexClassLoader(ClassLoader cl) {
+        if (cl == null) {
+            return;
+        }
+        synchronized (CLASSLOADER_2_PLUGIN) {
+            CLASSLOADER_2_PLUGIN.remove(cl);
+        }
+    }
+
+    /**
+     * @return ClassLoader 最近一次所属的插件，没有记录时返回 null
+     */
+    static final Plugin queryPluginByClassLoader(ClassLoader cl) {
+        if (cl == null) {
+            return null;
+        }
+        synchronized (CLASSLOADER_2_PLUGIN) {
+            WeakReference<Plugin> ref = CLASSLOADER_2_PLUGIN.get(cl);
+            return ref != null ? ref.get() : null;
+        }
+    }
+
     static final Resources queryCachedResources(String filename) {
         Resources resources = null;
         if (!TextUtils.isEmpty(filename)) {
@@ -302,6 +344,7 @@ class Plugin {
             if (ref != null) {
                 dex = ref.get();
                 FILENAME_2_DEX.remove(filename);
+                unindexClassLoader(dex);
                 if (LOG) {
                     LogDebug.d(PLUGIN_TAG, "clear Cached Dex " + filename + " -> " + dex);
                 }
@@ -508,6 +551,7 @@ class Plugin {
                 mLoader.mPackageInfo = pi;
                 mLoader.mComponents = cl;
                 mLoader.mClassLoader = clzl;
+                indexClassLoader(clzl, this);
                 if (LOG) {
                     LogDebug.i(MAIN_TAG, "loadLocked(): Cached, dex loaded");
                 }
@@ -741,6 +785,9 @@ class Plugin {
      * 抽出方法，将mLoader设置为null与doload中mLoader的使用添加同步锁，解决在多线程下导致mLoader为空指针的问题。
      */
     private synchronized boolean tryLoadAgain(String tag, Context context, ClassLoader parent, PluginCommImpl manager, int load) {
+        if (mLoader != null) {
+            unindexClassLoader(mLoader.mClassLoader);
+        }
         mLoader = null;
         return doLoad(tag, context, parent, manager, load);
     }
@@ -934,6 +981,9 @@ class Plugin {
                 mApplicationClient.callAttachBaseContext(mLoader.mPkgContext);
                 mApplicationClient.callOnCreate();
             }
+
+            // 提前准备各 Activity 在“最近任务”中显示的 label 和图标
+            ActivityInjector.prefetch(mInfo.getName(), mLoader.mPkgResources, mLoader.mComponents, mInfo.getFrameworkVersion());
         } else {
             if (LOGR) {
                 LogRelease.e(PLUGIN_TAG, "p.cal dm " + mInfo.getName());
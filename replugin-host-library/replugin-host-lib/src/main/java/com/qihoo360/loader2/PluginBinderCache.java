@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.qihoo360.loader2;
+
+import android.os.IBinder;
+import android.os.RemoteException;
+import android.os.SystemClock;
+
+import com.qihoo360.mobilesafe.api.Tasks;
+import com.qihoo360.replugin.helper.LogDebug;
+import com.qihoo360.replugin.helper.LogRelease;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+
+import static com.qihoo360.replugin.helper.LogDebug.LOG;
+import static com.qihoo360.replugin.helper.LogDebug.PLUGIN_TAG;
+import static com.qihoo360.replugin.helper.LogRelease.LOGR;
+
+/**
+ * 本进程获取到的插件 Binder 的缓存（见 MP.fetchPluginBinder）
+ * <p>
+ * 以前每次 fetchPluginBinder 都要经过 startPluginProcess、queryBinder、regPluginBinder 三次 IPC。
+ * 现在按（插件, 进程, Binder 名）缓存：同一个 Binder 在本进程内只向常驻进程登记一次，之后的获取与释放只增减本地的引用计数，不再有 IPC。
+ * <p>
+ * 引用计数归零后继续保留 {@link #LEASE} 时间，期间再次获取仍可直接使用；到期后才通知常驻进程释放（oneway 批量上报，见 LifecycleEventReporter），
+ * 以便插件进程在无人使用时退出。Binder 所在进程退出时，缓存立即失效。
+ *
+ * @author RePlugin Team
+ */
+final class PluginBinderCache {
+
+    /**
+     * 引用计数归零后保留的时间
+     */
+    private static final long LEASE = 30 * 1000;
+
+    private static final HashMap<String, Entry> sEntries = new HashMap<>();
+
+    private static int sHits;
+
+    private static int sMisses;
+
+    /**
+     * 远程获取插件 Binder（未向常驻进程登记）
+     */
+    interface Fetcher {
+
+        MP.PluginBinder fetch(String plugin, int process, String binder);
+    }
+
+    /**
+     * 获取插件 Binder，命中缓存时不产生 IPC
+     */
+    static MP.PluginBinder acquire(String plugin, int process, String binder, Fetcher fetcher) {
+        String key = key(plugin, process, binder);
+        synchronized (sEntries) {
+            Entry e = sEntries.get(key);
+            if (e != null) {
+                e.refs++;
+                sHits++;
+                if (LOG) {
+                    LogDebug.d(PLUGIN_TAG, "plugin binder cache: hit " + key + " refs=" + e.refs);
+                }
+                return e.pb;
+            }
+            sMisses++;
+        }
+
+        // 两个线程同时未命中时，都会去获取；后到的一方丢弃自己获取的那份（尚未向常驻进程登记，无需释放）
+        MP.PluginBinder pb = fetcher.fetch(plugin, process, binder);
+        if (pb == null) {
+            return null;
+        }
+
+        Entry e = new Entry(key, pb);
+        synchronized (sEntries) {
+            Entry exist = sEntries.get(key);
+            if (exist != null) {
+                exist.refs++;
+                return exist.pb;
+            }
+            try {
+                pb.binder.linkToDeath(e, 0);
+            } catch (RemoteException ex) {
+                // 刚获取到，所在进程就退出了
+                return null;
+            }
+            sEntries.put(key, e);
+        }
+        // 同步登记，保证提供 Binder 的进程在返回前已计入引用，不会被当作空进程结束
+        try {
+            PluginBinderInfo info = new PluginBinderInfo(PluginBinderInfo.BINDER_REQUEST);
+            info.pid = pb.pid;
+            PluginProcessMain.getPluginHost().regPluginBinder(info, pb.binder);
+        } catch (Throwable ex) {
+            if (LOGR) {
+                LogRelease.e(PLUGIN_TAG, "p.b.c r: " + ex.getMessage(), ex);
+            }
+        }
+        return pb;
+    }
+
+    /**
+     * 释放一次引用
+     */
+    static void release(MP.PluginBinder pb) {
+        Entry e;
+        synchronized (sEntries) {
+            e = findLocked(pb);
+            if (e == null) {
+                // 所在进程已退出，或重复释放
+                if (LOG) {
+                    LogDebug.d(PLUGIN_TAG, "plugin binder cache: release, not found " + pb.plugin + ":" + pb.name);
+                }
+                return;
+            }
+            if (e.refs > 0) {
+                e.refs--;
+            }
+            if (e.refs > 0) {
+                return;
+            }
+            e.idleSince = SystemClock.elapsedRealtime();
+        }
+        Tasks.cancelThreadTask(e);
+        Tasks.postDelayed2Thread(e, LEASE);
+    }
+
+    static void dump(PrintWriter writer) {
+        synchronized (sEntries) {
+            writer.println("--- PluginBinderCache size=" + sEntries.size() + " hits=" + sHits + " misses=" + sMisses + " ---");
+            for (Entry e : sEntries.values()) {
+                writer.println(e.key + " pid=" + e.pb.pid + " refs=" + e.refs);
+            }
+        }
+    }
+
+    private static Entry findLocked(MP.PluginBinder pb) {
+        for (Entry e : sEntries.values()) {
+            if (e.pb == pb || e.pb.binder == pb.binder) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    private static String key(String plugin, int process, String binder) {
+        return plugin + ":" + process + ":" + binder;
+    }
+
+    /**
+     * 缓存项。作为 Runnable 时检查租期是否到期
+     */
+    private static final class Entry implements IBinder.DeathRecipient, Runnable {
+
+        final String key;
+
+        final MP.PluginBinder pb;
+
+        int refs = 1;
+
+        long idleSince;
+
+        Entry(String key, MP.PluginBinder pb) {
+            this.key = key;
+            this.pb = pb;
+        }
+
+        @Override
+        public void run() {
+            synchronized (sEntries) {
+                if (refs > 0 || sEntries.get(key) != this) {
+                    return;
+                }
+                long left = idleSince + LEASE - SystemClock.elapsedRealtime();
+                if (left > 0) {
+                    // 期间被再次获取又释放过，租期顺延
+                    Tasks.postDelayed2Thread(this, left);
+                    return;
+                }
+                sEntries.remove(key);
+                pb.binder.unlinkToDeath(this, 0);
+            }
+            if (LOG) {
+                LogDebug.d(PLUGIN_TAG, "plugin binder cache: lease expired " + key);
+            }
+            try {
+                LifecycleEventReporter.binderReleased(pb.pid, pb.binder);
+            } catch (Throwable e) {
+                if (LOGR) {
+                    LogRelease.e(PLUGIN_TAG, "p.b.c: " + e.getMessage(), e);
+                }
+            }
+        }
+
+        @Override
+        public void binderDied() {
+            if (LOG) {
+                LogDebug.d(PLUGIN_TAG, "plugin binder cache: binder died " + key);
+            }
+            synchronized (sEntries) {
+                if (sEntries.get(key) == this) {
+                    sEntries.remove(key);
+                }
+            }
+        }
+    }
+}
@@ -26,6 +26,7 @@ import android.content.res.Resources;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.text.TextUtils;
 
 import com.qihoo360.i.IModule;
@@ -70,6 +71,11 @@ public class PluginCommImpl {
      */
     PmBase mPluginMgr;
 
+    /**
+     * 打开插件 Activity 时使用的坑位租约
+     */
+    final PluginContainerLeases mContainerLeases = new PluginContainerLeases();
+
     PluginCommImpl(Context context, PmBase pm) {
         mContext = context;
         mPluginMgr = pm;
@@ -427,14 +433,21 @@ public class PluginCommImpl {
                 process = PluginClientHelper.getProcessInt(ai.processName);
             }
 
-            // 容器选择（启动目标进程）
-            IPluginClient client = MP.startPluginProcess(plugin, process, info);
-            if (client == null) {
-                return null;
-            }
+            // 租约有效时直接使用租约中的坑位，启动前不发起 IPC（对账在后台进行）
+            container = mContainerLeases.acquire(plugin, ai.name, process, intent);
+            if (container == null) {
+                long requestedAt = SystemClock.elapsedRealtime();
 
-            // 远程分配坑位
-            container = client.allocActivityContainer(plugin, process, ai.name, intent);
+                // 容器选择（启动目标进程）
+                IPluginClient client = MP.startPluginProcess(plugin, process, info);
+                if (client == null) {
+                    return null;
+                }
+
+                // 远程分配坑位
+                container = client.allocActivityContainer(plugin, process, ai.name, intent);
+                mContainerLeases.grant(plugin, ai.name, process, client, container, requestedAt);
+            }
             if (LOG) {
                 LogDebug.i(PLUGIN_TAG, "alloc success: container=" + container + " plugin=" + plugin + " activity=" + activity);
             }
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.qihoo360.loader2;
+
+import android.content.Intent;
+import android.os.IBinder;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import com.qihoo360.mobilesafe.api.Tasks;
+import com.qihoo360.replugin.helper.LogDebug;
+import com.qihoo360.replugin.helper.LogRelease;
+
+import java.util.HashMap;
+
+import static com.qihoo360.replugin.helper.LogDebug.LOG;
+import static com.qihoo360.replugin.helper.LogDebug.PLUGIN_TAG;
+import static com.qihoo360.replugin.helper.LogRelease.LOGR;
+
+/**
+ * 坑位租约（调用方进程）
+ * <p>
+ * 以前每次打开插件 Activity 都要先后调用常驻进程（MP.startPluginProcess）和目标进程（allocActivityContainer），共两次 IPC。
+ * 目标进程每次分配坑位后，会把该坑位为这个 Activity 保留 {@link #LEASE_DURATION}（见 PluginContainers.renewLease），
+ * 期间不会把它回收给其它 Activity，坑位耗尽需要强制挤掉时也会优先挤掉不在租约期内的坑。
+ * 调用方记下这份租约（目标进程的 IPluginClient 及坑位），租约有效期内再次打开同一个 Activity 时直接使用租约中的坑位，启动前不再有任何 IPC：
+ * <ul>
+ * <li>对账在后台线程进行，且每份租约在 {@link #RECONCILE_INTERVAL} 内最多一次：先调用 MP.startPluginProcess 补上常驻进程一侧的进程记录
+ * （StubProcessPool.claim、进程检查等），再向目标进程重新分配以续约，坑位以目标进程返回的为准；目标进程已不是租约中的那个、或分配失败时放弃租约</li>
+ * <li>坑位在对账之前已被目标进程强制挤给了别的 Activity（或已回收）时，目标进程在创建 Activity 时会发现与 Intent 中的目标不符，
+ * 按原有的 forward 流程重新登记并启动正确的 Activity，不会打开错误的页面</li>
+ * </ul>
+ * 租约在以下情况失效，之后回到原来的远程分配流程：到期、目标进程死亡、对账失败、插件安装或卸载。
+ *
+ * @author RePlugin Team
+ */
+class PluginContainerLeases {
+
+    /**
+     * 目标进程为坑位保留的时长
+     */
+    static final long LEASE_DURATION = 30 * 1000;
+
+    /**
+     * 调用方提前放弃租约的余量，避免与目标进程的到期时间临界
+     */
+    private static final long LEASE_MARGIN = 3 * 1000;
+
+    /**
+     * 对账（续约）的间隔，租约过半时才在后台对账一次
+     */
+    private static final long RECONCILE_INTERVAL = LEASE_DURATION / 2;
+
+    private static final class Lease {
+
+        final IPluginClient client;
+
+        String container;
+
+        long expireAt;
+
+        long reconcileAt;
+
+        boolean reconciling;
+
+        Lease(IPluginClient client, String container, long requestedAt) {
+            this.client = client;
+            this.container = container;
+            renew(requestedAt);
+        }
+
+        void renew(long requestedAt) {
+            expireAt = requestedAt + LEASE_DURATION - LEASE_MARGIN;
+            reconcileAt = requestedAt + RECONCILE_INTERVAL;
+        }
+    }
+
+    /**
+     * HashMap<插件:Activity:进程, 租约>
+     */
+    private final HashMap<String, Lease> mLeases = new HashMap<>();
+
+    /**
+     * 使用租约分配坑位：直接返回租约中的坑位，不发起任何 IPC；需要对账时交给后台线程
+     *
+     * @return 租约中的坑位，没有有效的租约时返回 null（调用方应走远程分配流程）
+     */
+    String acquire(String plugin, String activity, int process, Intent intent) {
+        final String key = key(plugin, activity, process);
+        final Lease lease;
+        final String container;
+        boolean reconcile;
+        synchronized (mLeases) {
+            lease = mLeases.get(key);
+            if (lease == null) {
+                return null;
+            }
+            long now = SystemClock.elapsedRealtime();
+            IBinder binder = lease.client.asBinder();
+            if (now >= lease.expireAt || binder == null || !binder.isBinderAlive()) {
+                mLeases.remove(key);
+                return null;
+            }
+            container = lease.container;
+            reconcile = now >= lease.reconcileAt && !lease.reconciling;
+            if (reconcile) {
+                lease.reconciling = true;
+            }
+        }
+        if (LOG) {
+            LogDebug.d(PLUGIN_TAG, "PACM: lease hit: container=" + container + " activity=" + activity + " reconcile=" + reconcile);
+        }
+
+        if (reconcile) {
+            // 调用方随后会修改 intent，这里复制一份
+            reconcile(key, lease, plugin, activity, process, new Intent(intent));
+        }
+        return container;
+    }
+
+    /**
+     * 远程分配成功后记录租约
+     *
+     * @param requestedAt 发起分配前的 SystemClock.elapsedRealtime()，租约从此时开始计算，保证不晚于目标进程的到期时间
+     */
+    void grant(String plugin, String activity, int process, IPluginClient client, String container, long requestedAt) {
+        if (client == null || TextUtils.isEmpty(container)) {
+            return;
+        }
+        synchronized (mLeases) {
+            mLeases.put(key(plugin, activity, process), new Lease(client, container, requestedAt));
+        }
+    }
+
+    /**
+     * 撤销所有租约（插件安装、卸载时）
+     */
+    void revokeAll() {
+        synchronized (mLeases) {
+            mLeases.clear();
+        }
+    }
+
+    /**
+     * 在后台线程对账：补上常驻进程一侧的进程记录（与远程分配流程中的 MP.startPluginProcess 相同），
+     * 确认目标进程没有变化后向其重新分配，以续约并取得目标进程当前登记的坑位
+     */
+    private void reconcile(final String key, final Lease lease, final String plugin, final String activity, final int process, final Intent intent) {
+        Tasks.post2Thread(new Runnable() {
+            @Override
+            public void run() {
+                long requestedAt = SystemClock.elapsedRealtime();
+                String container = null;
+                try {
+                    IPluginClient client = MP.startPluginProcess(plugin, process, new PluginBinderInfo(PluginBinderInfo.ACTIVITY_REQUEST));
+                    if (client != null && client.asBinder() == lease.client.asBinder()) {
+                        container = lease.client.allocActivityContainer(plugin, process, activity, intent);
+                    }
+                } catch (Throwable e) {
+                    if (LOGR) {
+                        LogRelease.e(PLUGIN_TAG, "PACM: lease reconcile e=" + e.getMessage(), e);
+                    }
+                }
+
+                synchronized (mLeases) {
+                    lease.reconciling = false;
+                    if (mLeases.get(key) != lease) {
+                        // 期间已被撤销或替换
+                        return;
+                    }
+                    if (TextUtils.isEmpty(container)) {
+                        if (LOGR) {
+                            LogRelease.w(PLUGIN_TAG, "PACM: lease reconcile failed, revoke: k=" + key);
+                        }
+                        mLeases.remove(key);
+                        return;
+                    }
+                    if (!TextUtils.equals(container, lease.container)) {
+                        // 目标进程已把原来的坑位给了别人，之后使用重新分配的坑位
+                        if (LOG) {
+                            LogDebug.d(PLUGIN_TAG, "PACM: lease moved: c=" + lease.container + " now=" + container + " a=" + activity);
+                        }
+                        lease.container = container;
+                    }
+                    lease.renew(requestedAt);
+                }
+            }
+        });
+    }
+
+    private static String key(String plugin, String activity, int process) {
+        return plugin + ":" + activity + ":" + process;
+    }
+}
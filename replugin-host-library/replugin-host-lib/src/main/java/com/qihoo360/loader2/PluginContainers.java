@@ -20,10 +20,10 @@ import android.app.Activity;
 import android.content.ComponentName;
 import android.content.Intent;
 import android.content.pm.ActivityInfo;
+import android.os.SystemClock;
 import android.text.TextUtils;
 
 import com.qihoo360.i.IPluginManager;
-import com.qihoo360.mobilesafe.api.Pref;
 import com.qihoo360.replugin.base.IPC;
 import com.qihoo360.replugin.component.process.PluginProcessHost;
 import com.qihoo360.replugin.helper.HostConfigHelper;
@@ -102,35 +102,33 @@ a 流程完成
     private static final String CONTAINER_ACTIVITY_PART = ".loader.a.Activity";
 
     /**
-     *
-     */
-    private final Object mLock = new Object();
-
-    /**
-     * 所有坑的状态集合
+     * 所有坑的状态集合，初始化后不再修改，读取时不加锁。
+     * init 在 PluginProcessPer 的构造函数中调用，本对象又保存在其 final 字段 mACM 中，
+     * 因此其它线程拿到 PluginProcessPer 时，这里填入的内容一定可见。
+     * 坑的状态由其所在的 ActivityStateGroup 加锁保护，不同组之间互不影响
      */
-    private HashMap<String, ActivityState> mStates = new HashMap<>();
+    private final HashMap<String, ActivityState> mStates = new HashMap<>();
 
     /**
      * 非默认 TaskAffinity 下，坑位的状态信息。
      */
-    private TaskAffinityStates mTaskAffinityStates = new TaskAffinityStates();
+    private final TaskAffinityStates mTaskAffinityStates = new TaskAffinityStates();
 
     /**
      * 默认 TaskAffinity 下，坑位的状态信息。
      */
-    private LaunchModeStates mLaunchModeStates = new LaunchModeStates();
+    private final LaunchModeStates mLaunchModeStates = new LaunchModeStates();
 
     /**
      * 保存进程和进程中坑位状态的 Map
      */
     private final Map<String, ProcessStates> mProcessStatesMap = new HashMap<>();
 
-    private static final int STATE_NONE = 0;
+    static final int STATE_NONE = 0;
 
-    private static final int STATE_OCCUPIED = 1;
+    static final int STATE_OCCUPIED = 1;
 
-    private static final int STATE_RESTORED = 2;
+    static final int STATE_RESTORED = 2;
 
     static final class ActivityState {
 
@@ -146,6 +144,21 @@ a 流程完成
 
         final ArrayList<WeakReference<Activity>> refs;
 
+        /**
+         * 所在的坑位组，快照（见 lookupByContainer）为 null
+         */
+        ActivityStateGroup group;
+
+        /**
+         * 在坑位组中的遍历顺序
+         */
+        int rank;
+
+        /**
+         * 为当前 Activity 保留此坑位的截止时间（SystemClock.elapsedRealtime），见 PluginContainerLeases
+         */
+        long leaseUntil;
+
         ActivityState(String container) {
             this.container = container;
             this.refs = new ArrayList<WeakReference<Activity>>();
@@ -199,11 +212,14 @@ a 流程完成
                 return;
             }
 
+            detach();
+            this.leaseUntil = 0;
             this.state = STATE_OCCUPIED;
             this.plugin = plugin;
             this.activity = activity;
             cleanRefs();
             this.timestamp = System.currentTimeMillis();
+            attach();
 
             //
             save2Pref(this.plugin, this.activity, this.container);
@@ -216,19 +232,25 @@ a 流程完成
                 }
                 return;
             }
+            detach();
+            this.leaseUntil = 0;
             this.state = STATE_RESTORED;
             this.plugin = plugin;
             this.activity = activity;
             cleanRefs();
             this.timestamp = timestamp;
+            attach();
         }
 
         private final void recycle() {
+            detach();
+            this.leaseUntil = 0;
             this.state = STATE_NONE;
             this.plugin = null;
             this.activity = null;
             cleanRefs();
             this.timestamp = System.currentTimeMillis();
+            attach();
         }
 
 
@@ -263,11 +285,17 @@ a 流程完成
                 return;
             }
 
+            detach();
             addRef(activity);
             this.timestamp = System.currentTimeMillis();
+            attach();
+        }
+
+        final boolean isLeased(long now) {
+            return leaseUntil > now;
         }
 
-        private final boolean hasRef() {
+        final boolean hasRef() {
             for (int i = refs.size() - 1; i >= 0; i--) {
                 WeakReference<Activity> ref = refs.get(i);
                 if (ref.get() == null) {
@@ -301,12 +329,32 @@ a 流程完成
             for (int i = refs.size() - 1; i >= 0; i--) {
                 WeakReference<Activity> ref = refs.get(i);
                 if (ref.get() == activity) {
+                    detach();
                     refs.remove(i);
+                    attach();
                     break;
                 }
             }
         }
 
+        /**
+         * 状态即将修改，从坑位组的索引中移除（调用方须持有坑位组的锁）
+         */
+        private final void detach() {
+            if (group != null) {
+                group.detach(this);
+            }
+        }
+
+        /**
+         * 状态修改完毕，放回坑位组的索引
+         */
+        private final void attach() {
+            if (group != null) {
+                group.attach(this);
+            }
+        }
+
         private final void finishRefs() {
             for (WeakReference<Activity> ref : refs) {
                 Activity a = ref.get();
@@ -420,15 +468,15 @@ a 流程完成
 
     private final void loadFromPref() {
         try {
-            Map<String, ?> a = Pref.ipcGetAll();
+            Map<String, String> a = ContainerTable.getAll();
             if (LOG) {
                 LogDebug.d(PLUGIN_TAG, "PACM: restore table: size=" + a.size());
             }
-            for (Entry<String, ?> i : a.entrySet()) {
+            for (Entry<String, String> i : a.entrySet()) {
                 String k = i.getKey();
-                Object v = i.getValue();
+                String v = i.getValue();
                 ActivityState state = mStates.get(k);
-                String item[] = v.toString().split(":");
+                String item[] = v.split(":");
                 if (state != null && item != null && item.length == 3) {
                     String plugin = item[0];
                     String activity = item[1];
@@ -437,7 +485,9 @@ a 流程完成
                         LogDebug.d(PLUGIN_TAG, "PACM: restore table: " + " container=" + k + " plugin=" + plugin + " activity=" + activity);
                     }
                     if (!TextUtils.isEmpty(plugin) && !TextUtils.isEmpty(activity)) {
-                        state.restore(plugin, activity, timestamp);
+                        synchronized (state.group) {
+                            state.restore(plugin, activity, timestamp);
+                        }
                     }
                 } else {
                     if (LOG) {
@@ -457,11 +507,12 @@ a 流程完成
         if (LOG) {
             LogDebug.d(PLUGIN_TAG, "PACM: save 2 pref: k=" + container + " v=" + v);
         }
-        Pref.ipcSet(container, v);
+        // 只写内存，由 ContainerTable 在后台线程写入 SharedPreferences，不阻塞 startActivity
+        ContainerTable.set(container, v);
     }
 
     static final String[] resolvePluginActivity(String container) {
-        String v = Pref.ipcGet(container, "");
+        String v = ContainerTable.get(container, "");
         //String v = plugin + ":" + activity + ":" + System.currentTimeMillis();
         if (LOG) {
             LogDebug.d(PLUGIN_TAG, "PACM: load special pref: k=" + container + " v=" + v);
@@ -475,13 +526,8 @@ a 流程完成
 
     final void forwardIntent(Activity activity, Intent intent, String original, String container, String plugin, String target, int process) {
         // 找到容器
-        ActivityState so = null;
-        ActivityState state = null;
-        synchronized (mLock) {
-            HashMap<String, ActivityState> map = mStates;
-            so = map.get(original);
-            state = map.get(container);
-        }
+        ActivityState so = mStates.get(original);
+        ActivityState state = mStates.get(container);
         if (so == null) {
             if (LOGR) {
                 LogRelease.e(PLUGIN_TAG, "f.a fi: cc: inv c.c=" + original);
@@ -495,27 +541,29 @@ a 流程完成
             return;
         }
         // 检查
-        if (state.state == STATE_NONE) {
-            if (LOGR) {
-                LogRelease.e(PLUGIN_TAG, "f.a fi: cc: ok, t.c empty, t.c=" + container);
-            }
-            // 重新登记
-            state.occupy(plugin, target);
-        } else if (!state.isTarget(plugin, target)) {
-            if (LOGR) {
-                LogRelease.e(PLUGIN_TAG, "f.a fi: cc: fly, force, t.c=" + container);
-            }
-            // 如果已经有实例存在了，只能打打日志
-            if (state.hasRef()) {
+        synchronized (state.group) {
+            if (state.state == STATE_NONE) {
                 if (LOGR) {
-                    LogRelease.e(PLUGIN_TAG, "f.a fi: cc: exists instances");
+                    LogRelease.e(PLUGIN_TAG, "f.a fi: cc: ok, t.c empty, t.c=" + container);
+                }
+                // 重新登记
+                state.occupy(plugin, target);
+            } else if (!state.isTarget(plugin, target)) {
+                if (LOGR) {
+                    LogRelease.e(PLUGIN_TAG, "f.a fi: cc: fly, force, t.c=" + container);
+                }
+                // 如果已经有实例存在了，只能打打日志
+                if (state.hasRef()) {
+                    if (LOGR) {
+                        LogRelease.e(PLUGIN_TAG, "f.a fi: cc: exists instances");
+                    }
+                }
+                // 重新登记
+                state.occupy(plugin, target);
+            } else {
+                if (LOGR) {
+                    LogRelease.e(PLUGIN_TAG, "f.a fi: cc: same, t.c=" + container);
                 }
-            }
-            // 重新登记
-            state.occupy(plugin, target);
-        } else {
-            if (LOGR) {
-                LogRelease.e(PLUGIN_TAG, "f.a fi: cc: same, t.c=" + container);
             }
         }
         if (so != state) {
@@ -525,7 +573,9 @@ a 流程完成
             if (LOG) {
                 LogDebug.i(PLUGIN_TAG, "forward fly: container=" + container + " plugin=" + plugin + " activity=" + target);
             }
-            so.recycle();
+            synchronized (so.group) {
+                so.recycle();
+            }
         } else {
             if (LOGR) {
                 LogRelease.i(PLUGIN_TAG, "f.a fi: same t.c=" + container);
@@ -560,21 +610,15 @@ a 流程完成
 
         /* SingleInstance 优先级最高 */
         if (ai.launchMode == LAUNCH_SINGLE_INSTANCE) {
-            synchronized (mLock) {
-                state = allocLocked(ai, mLaunchModeStates.getStates(ai.launchMode, ai.theme), plugin, activity, intent);
-            }
+            state = alloc(ai, mLaunchModeStates.getStates(ai.launchMode, ai.theme), plugin, activity, intent);
 
         /* TaskAffinity */
         } else if (!defaultPluginTaskAffinity.equals(ai.taskAffinity)) { // 非默认 taskAffinity
-            synchronized (mLock) {
-                state = allocLocked(ai, mTaskAffinityStates.getStates(ai), plugin, activity, intent);
-            }
+            state = alloc(ai, mTaskAffinityStates.getStates(ai), plugin, activity, intent);
 
         /* SingleTask, SingleTop, Standard */
         } else {
-            synchronized (mLock) {
-                state = allocLocked(ai, mLaunchModeStates.getStates(ai.launchMode, ai.theme), plugin, activity, intent);
-            }
+            state = alloc(ai, mLaunchModeStates.getStates(ai.launchMode, ai.theme), plugin, activity, intent);
         }
 
         if (state != null) {
@@ -584,58 +628,52 @@ a 流程完成
         return null;
     }
 
+    private final ActivityState alloc(ActivityInfo ai, ActivityStateGroup group,
+                                      String plugin, String activity, Intent intent) {
+        // 坑和状态的 map 为空
+        if (group == null) {
+            if (LOG) {
+                LogDebug.d(PLUGIN_TAG, "PACM: alloc fail, map is null");
+            }
+            return null;
+        }
+
+        synchronized (group) {
+            return allocLocked(ai, group, plugin, activity, intent);
+        }
+    }
+
     /**
      * @param ai
-     * @param map
+     * @param group
      * @param plugin
      * @param activity
      * @param intent
      * @return
      */
-    private final ActivityState allocLocked(ActivityInfo ai, HashMap<String, ActivityState> map,
+    private final ActivityState allocLocked(ActivityInfo ai, ActivityStateGroup group,
                                             String plugin, String activity, Intent intent) {
-        // 坑和状态的 map 为空
-        if (map == null) {
-            if (LOG) {
-                LogDebug.d(PLUGIN_TAG, "PACM: alloc fail, map is null");
-            }
-            return null;
-        }
-
         // 首先找上一个活的，或者已经注册的，避免多个坑到同一个activity的映射
-        for (ActivityState state : map.values()) {
-            if (state.isTarget(plugin, activity)) {
-                if (LOG) {
-                    LogDebug.d(PLUGIN_TAG, "PACM: alloc registered container=" + state.container);
-                }
-                return state;
+        ActivityState found = group.findTarget(plugin, activity);
+        if (found != null) {
+            if (LOG) {
+                LogDebug.d(PLUGIN_TAG, "PACM: alloc registered container=" + found.container);
             }
+            return found;
         }
 
         // 新分配：找空白的，第一个
-        for (ActivityState state : map.values()) {
-            if (state.state == STATE_NONE) {
-                if (LOG) {
-                    LogDebug.d(PLUGIN_TAG, "PACM: alloc empty container=" + state.container);
-                }
-                state.occupy(plugin, activity);
-                return state;
+        found = group.findFree();
+        if (found != null) {
+            if (LOG) {
+                LogDebug.d(PLUGIN_TAG, "PACM: alloc empty container=" + found.container);
             }
+            found.occupy(plugin, activity);
+            return found;
         }
 
-        ActivityState found;
-
-        // 重用：则找最老的那个
-        found = null;
-        for (ActivityState state : map.values()) {
-            if (!state.hasRef()) {
-                if (found == null) {
-                    found = state;
-                } else if (state.timestamp < found.timestamp) {
-                    found = state;
-                }
-            }
-        }
+        // 重用：则找最老的那个（仍在租约期内的坑除外）
+        found = group.findOldestUnreferenced(SystemClock.elapsedRealtime());
         if (found != null) {
             if (LOG) {
                 LogDebug.d(PLUGIN_TAG, "PACM: alloc recycled container=" + found.container);
@@ -644,15 +682,8 @@ a 流程完成
             return found;
         }
 
-        // 强挤：最后一招，挤掉：最老的那个
-        found = null;
-        for (ActivityState state : map.values()) {
-            if (found == null) {
-                found = state;
-            } else if (state.timestamp < found.timestamp) {
-                found = state;
-            }
-        }
+        // 强挤：最后一招，挤掉：最老的那个（优先不在租约期内的）
+        found = group.findOldest(SystemClock.elapsedRealtime());
         if (found != null) {
             if (LOG) {
                 LogDebug.w(PLUGIN_TAG, "PACM: force alloc container=" + found.container);
@@ -684,21 +715,15 @@ a 流程完成
 
         /* SingleInstance */
         if (ai.launchMode == LAUNCH_SINGLE_INSTANCE) {
-            synchronized (mLock) {
-                state = allocLocked(ai, states.mLaunchModeStates.getStates(ai.launchMode, ai.theme), plugin, activity, intent);
-            }
+            state = alloc(ai, states.mLaunchModeStates.getStates(ai.launchMode, ai.theme), plugin, activity, intent);
 
         /* TaskAffinity */
         } else if (!defaultPluginTaskAffinity.equals(ai.taskAffinity)) { // 非默认 taskAffinity
-            synchronized (mLock) {
-                state = allocLocked(ai, states.mTaskAffinityStates.getStates(ai), plugin, activity, intent);
-            }
+            state = alloc(ai, states.mTaskAffinityStates.getStates(ai), plugin, activity, intent);
 
         /* other mode */
         } else {
-            synchronized (mLock) {
-                state = allocLocked(ai, states.mLaunchModeStates.getStates(ai.launchMode, ai.theme), plugin, activity, intent);
-            }
+            state = alloc(ai, states.mLaunchModeStates.getStates(ai.launchMode, ai.theme), plugin, activity, intent);
         }
 
         if (state != null) {
@@ -707,6 +732,23 @@ a 流程完成
         return null;
     }
 
+    /**
+     * 为坑位当前登记的 Activity 续约，期间该坑位不会被回收给其它 Activity（坑位全都在租约期内时的强制分配除外）
+     *
+     * @param container 刚分配出去的坑位
+     */
+    final void renewLease(String container) {
+        ActivityState state = mStates.get(container);
+        if (state != null) {
+            synchronized (state.group) {
+                // 租约到期时间参与坑位组的索引排序，需先移出索引再修改
+                state.detach();
+                state.leaseUntil = SystemClock.elapsedRealtime() + PluginContainerLeases.LEASE_DURATION;
+                state.attach();
+            }
+        }
+    }
+
     final void handleCreate(String plugin, Activity activity, String container) {
         ComponentName cn = activity.getComponentName();
         if (cn != null) {
@@ -715,10 +757,9 @@ a 流程完成
         if (LOG) {
             LogDebug.d(PLUGIN_TAG, "PACM: activity created h=" + activity.hashCode() + " class=" + activity.getClass().getName() + " container=" + container);
         }
-        synchronized (mLock) {
-            HashMap<String, ActivityState> map = mStates;
-            ActivityState state = map.get(container);
-            if (state != null) {
+        ActivityState state = mStates.get(container);
+        if (state != null) {
+            synchronized (state.group) {
                 state.create(plugin, activity);
             }
         }
@@ -737,10 +778,9 @@ a 流程完成
         if (container == null) {
             return;
         }
-        synchronized (mLock) {
-            HashMap<String, ActivityState> map = mStates;
-            ActivityState state = map.get(container);
-            if (state != null) {
+        ActivityState state = mStates.get(container);
+        if (state != null) {
+            synchronized (state.group) {
                 state.removeRef(activity);
             }
         }
@@ -757,14 +797,15 @@ a 流程完成
             return null;
         }
 
-        synchronized (mLock) {
-            HashMap<String, ActivityState> map = mStates;
-            ActivityState state = map.get(container);
-            if (state != null && state.state != STATE_NONE) {
-                if (LOG) {
-                    LogDebug.d(PLUGIN_TAG, "found: " + state);
+        ActivityState state = mStates.get(container);
+        if (state != null) {
+            synchronized (state.group) {
+                if (state.state != STATE_NONE) {
+                    if (LOG) {
+                        LogDebug.d(PLUGIN_TAG, "found: " + state);
+                    }
+                    return new ActivityState(state);
                 }
-                return new ActivityState(state);
             }
         }
 
@@ -516,6 +516,7 @@ public class PluginLibraryInternalProxy {
         mPluginMgr.mClient.mACM.handleCreate(state.plugin, activity, state.container);
 
         // 插件进程信息登记，用于插件进程管理（例如可能用于插件进程分配/回收）
+        // 须同步登记：若只是排队上报，常驻进程可能在计数生效前判定该进程为空闲并结束它
         try {
             PluginProcessMain.getPluginHost().regActivity(PluginManager.sPluginProcessIndex, state.plugin, state.container, activity.getClass().getName());
         } catch (Throwable e) {
@@ -601,7 +602,7 @@ public class PluginLibraryInternalProxy {
         String plugin = state.plugin;
         String container = state.container;
         try {
-            PluginProcessMain.getPluginHost().unregActivity(PluginManager.sPluginProcessIndex, plugin, container, activity.getClass().getName());
+            LifecycleEventReporter.activityDestroyed(PluginManager.sPluginProcessIndex, plugin, container, activity.getClass().getName());
         } catch (Throwable e) {
             if (LOGR) {
                 LogRelease.e(PLUGIN_TAG, "ur.a: " + e.getMessage(), e);
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.qihoo360.loader2;
+
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * 插件组件的生命周期事件，由 LifecycleEventReporter 批量上报给常驻进程（见 IPluginHost.reportLifecycleEvents）
+ *
+ * @hide 内部框架使用
+ * @author RePlugin Team
+ */
+public final class PluginLifecycleEvent implements Parcelable {
+
+    public static final int ACTIVITY_DESTROYED = 2;
+
+    public static final int SERVICE_DESTROYED = 4;
+
+    public static final int BINDER_RELEASED = 6;
+
+    public int type;
+
+    /**
+     * 上报事件的进程 pid（oneway 调用中无法通过 Binder.getCallingPid 获取）
+     */
+    public int sender;
+
+    /**
+     * 组件所在进程的 index；Binder 事件无此值
+     */
+    public int index;
+
+    /**
+     * 组件所在进程的 pid；Binder 事件为提供 Binder 的进程
+     */
+    public int pid;
+
+    public String plugin;
+
+    /**
+     * Activity 的坑位
+     */
+    public String container;
+
+    /**
+     * Activity 或 Service 的类名
+     */
+    public String component;
+
+    /**
+     * Binder 事件对应的 Binder
+     */
+    public IBinder binder;
+
+    public static final Parcelable.Creator<PluginLifecycleEvent> CREATOR = new Parcelable.Creator<PluginLifecycleEvent>() {
+
+        @Override
+        public PluginLifecycleEvent createFromParcel(Parcel source) {
+            return new PluginLifecycleEvent(source);
+        }
+
+        @Override
+        public PluginLifecycleEvent[] newArray(int size) {
+            return new PluginLifecycleEvent[size];
+        }
+    };
+
+    PluginLifecycleEvent(int type, int sender, int index, int pid, String plugin, String container, String component, IBinder binder) {
+        this.type = type;
+        this.sender = sender;
+        this.index = index;
+        this.pid = pid;
+        this.plugin = plugin;
+        this.container = container;
+        this.component = component;
+        this.binder = binder;
+    }
+
+    PluginLifecycleEvent(Parcel source) {
+        type = source.readInt();
+        sender = source.readInt();
+        index = source.readInt();
+        pid = source.readInt();
+        plugin = source.readString();
+        container = source.readString();
+        component = source.readString();
+        binder = source.readStrongBinder();
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(type);
+        dest.writeInt(sender);
+        dest.writeInt(index);
+        dest.writeInt(pid);
+        dest.writeString(plugin);
+        dest.writeString(container);
+        dest.writeString(component);
+        dest.writeStrongBinder(binder);
+    }
+
+    @Override
+    public String toString() {
+        return "PluginLifecycleEvent{type=" + type + " sender=" + sender + " index=" + index + " pid=" + pid + " plugin=" + plugin
+                + " container=" + container + " component=" + component + "}";
+    }
+}
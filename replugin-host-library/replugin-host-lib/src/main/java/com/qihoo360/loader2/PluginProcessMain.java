@@ -25,6 +25,9 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import com.qihoo360.i.IPluginManager;
+import com.qihoo360.mobilesafe.svcmanager.QihooServiceManager;
+import com.qihoo360.replugin.base.BinderStats;
+import com.qihoo360.replugin.base.SharedMessageBus;
 import com.qihoo360.replugin.base.IPC;
 import com.qihoo360.replugin.component.process.PluginProcessHost;
 import com.qihoo360.replugin.helper.LogDebug;
@@ -39,6 +42,7 @@ import org.json.JSONObject;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -94,7 +98,8 @@ public class PluginProcessMain {
         int pid;
         int index;
         IBinder binder;
-        IPluginClient client;
+        IPluginClient client; // 原始接口，可通过 AIDL 返回给其它进程
+        IPluginClient localClient; // 带调用统计的接口（见 BinderStats.wrap），只能在本进程内调用，不能再传出去
         PluginManagerServer pluginManager; //单个进程的插件管理类
 
         public ProcessClientRecord(String process, String plugin, int pid, int index, IBinder binder, IPluginClient client, PluginManagerServer pms) {
@@ -104,6 +109,7 @@ public class PluginProcessMain {
             this.index = index;
             this.binder = binder;
             this.client = client;
+            this.localClient = binder != null ? IPluginClient.Stub.asInterface(BinderStats.wrap(binder, IPluginClient.Stub.class)) : client;
             this.pluginManager = pms;
         }
 
@@ -200,6 +206,16 @@ public class PluginProcessMain {
             writer.println();
             StubProcessManager.dump(writer);
             writer.println();
+            StubProcessPool.dump(writer);
+            writer.println();
+            IntentFanOut.dump(writer);
+            writer.println();
+            QihooServiceManager.dump(writer);
+            writer.println();
+            PluginBinderCache.dump(writer);
+            writer.println();
+            BinderStats.dump(writer);
+            writer.println();
 //            writer.println("--- USED_PLUGINS.size = " + USED_PLUGINS.size() + " ---");
 //            for (ProcessPluginInfo r : USED_PLUGINS.values()) {
 //                writer.println(r);
@@ -261,6 +277,9 @@ public class PluginProcessMain {
 
                     // 断开和插件化管理器服务端的连接，因为已经失效
                     PluginManagerProxy.disconnect();
+
+                    // 登记在常驻进程中的消息门铃已随之丢失，需重新发布
+                    SharedMessageBus.onHostDied();
                 }
             }, 0);
         } catch (RemoteException e) {
@@ -272,7 +291,7 @@ public class PluginProcessMain {
         }
 
         //
-        sPluginHostRemote = IPluginHost.Stub.asInterface(binder);
+        sPluginHostRemote = IPluginHost.Stub.asInterface(BinderStats.wrap(binder, IPluginHost.Stub.class));
         if (LOG) {
             LogDebug.d(PLUGIN_TAG, "host binder.i = " + PluginProcessMain.sPluginHostRemote);
         }
@@ -471,22 +490,14 @@ public class PluginProcessMain {
      * @param intent
      */
     private static void sendIntent2Client(Map<String, ProcessClientRecord> map, Intent intent, boolean sync){
+        List<IntentFanOut.Target> targets = new ArrayList<>(map.size());
         for (ProcessClientRecord r : map.values()) {
             if (!isBinderAlive(r)) {
                 continue;
             }
-            try {
-                if (sync) {
-                    r.client.sendIntentSync(intent);
-                } else {
-                    r.client.sendIntent(intent);
-                }
-            } catch (Throwable e) {
-                if (LOGR) {
-                    LogRelease.e(PLUGIN_TAG, "p.p sic e: " + e.getMessage(), e);
-                }
-            }
+            targets.add(new IntentFanOut.Target(r.name, r.localClient));
         }
+        IntentFanOut.send(targets, intent, sync);
     }
 
     /**
@@ -522,7 +533,7 @@ public class PluginProcessMain {
                     }
                     int rc = 0;
                     try {
-                        rc = r.client.sumActivities();
+                        rc = r.localClient.sumActivities();
                         if (rc == -1) {
                             return -1;
                         }
@@ -749,6 +760,7 @@ public class PluginProcessMain {
         });
 
         StubProcessManager.setProcessStop(p.binder);
+        StubProcessPool.onProcessDied(p.index);
 
         // 通知 PluginManagerServer 客户端进程链接已断开
         p.pluginManager.onClientProcessKilled(p.name);
@@ -21,6 +21,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ActivityInfo;
 import android.os.IBinder;
+import android.os.Parcel;
 import android.os.RemoteException;
 import android.support.v4.content.LocalBroadcastManager;
 import android.text.TextUtils;
@@ -28,6 +29,7 @@ import android.text.TextUtils;
 import com.qihoo360.i.IPluginManager;
 import com.qihoo360.loader2.alc.ActivityController;
 import com.qihoo360.replugin.RePlugin;
+import com.qihoo360.replugin.base.BinderStats;
 import com.qihoo360.replugin.base.IPC;
 import com.qihoo360.replugin.base.LocalBroadcastHelper;
 import com.qihoo360.replugin.component.dummy.ForwardActivity;
@@ -323,6 +325,9 @@ class PluginProcessPer extends IPluginClient.Stub {
             return null;
         }
 
+        // 调用方会把此坑位记为租约，短时间内再次打开同一个 Activity 时直接使用
+        mACM.renewLease(container);
+
         return container;
     }
 
@@ -355,4 +360,15 @@ class PluginProcessPer extends IPluginClient.Stub {
     public String dumpActivities() {
         return mACM.dump();
     }
+
+    @Override
+    public boolean onTransact(int code, Parcel data, Parcel reply, int flags) throws RemoteException {
+        // 统计每个方法的调用次数与耗时（见 BinderStats）
+        long start = BinderStats.begin();
+        try {
+            return super.onTransact(code, data, reply, flags);
+        } finally {
+            BinderStats.endIncoming(IPluginClient.Stub.class, code, data, reply, start);
+        }
+    }
 }
\ No newline at end of file
@@ -20,6 +20,8 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
 import android.os.IBinder;
 import android.os.IBinder.DeathRecipient;
 import android.os.RemoteException;
@@ -27,16 +29,21 @@ import android.text.TextUtils;
 
 import com.qihoo360.loader2.sp.IPref;
 import com.qihoo360.loader2.sp.PrefImpl;
+import com.qihoo360.loader2.sp.PrefReplica;
+import com.qihoo360.replugin.base.BinderStats;
 import com.qihoo360.replugin.base.IPC;
 import com.qihoo360.replugin.component.process.ProcessPitProviderBase;
 import com.qihoo360.replugin.component.process.ProcessPitProviderPersist;
 import com.qihoo360.replugin.helper.LogDebug;
+import com.qihoo360.replugin.helper.LogRelease;
 import com.qihoo360.replugin.utils.CloseableUtils;
 
+import java.io.PrintWriter;
 import java.util.Arrays;
 
 import static com.qihoo360.replugin.helper.LogDebug.LOG;
 import static com.qihoo360.replugin.helper.LogDebug.PLUGIN_TAG;
+import static com.qihoo360.replugin.helper.LogRelease.LOGR;
 
 /**
  * @author RePlugin Team
@@ -59,6 +66,23 @@ public class PluginProviderStub {
 
     private static final String METHOD_START_PROCESS = "start_process";
 
+    /**
+     * ContentProvider.call 方式获取 Binder，arg 为 SELECTION_MAIN_BINDER 等
+     */
+    private static final String METHOD_FETCH_BINDER = "fetch_binder";
+
+    /**
+     * call 方式在本进程中失败过（部分 ROM 上不可用），之后直接使用 query 方式
+     */
+    private static volatile boolean sCallDisabled;
+
+    /**
+     * 两种方式最近一次的耗时（毫秒），-1 表示未使用过
+     */
+    private static volatile long sLastCallCost = -1;
+
+    private static volatile long sLastQueryCost = -1;
+
     /**
      * 需要枷锁否？
      */
@@ -88,6 +112,34 @@ public class PluginProviderStub {
         return null;
     }
 
+    /**
+     * 与 stubMain 相同，但通过 ContentProvider.call 直接返回 Bundle，省去 Cursor 的创建与跨进程传递
+     */
+    public static final Bundle stubCall(String method, String arg, Bundle extras) {
+        if (LOG) {
+            LogDebug.d(PLUGIN_TAG, "stubCall method=" + method + " arg=" + arg);
+        }
+
+        if (!METHOD_FETCH_BINDER.equals(method)) {
+            return null;
+        }
+
+        IBinder binder;
+        if (SELECTION_MAIN_BINDER.equals(arg)) {
+            binder = PMF.sPluginMgr.getHostBinder();
+        } else if (SELECTION_MAIN_PREF.equals(arg)) {
+            initPref();
+            binder = sPrefImpl;
+        } else {
+            return null;
+        }
+
+        // 用 BinderParcelable 包装，Bundle.putBinder 在 API 18 以下不可用
+        Bundle result = new Bundle();
+        result.putParcelable(BinderCursor.BINDER_KEY, new BinderCursor.BinderParcelable(binder));
+        return result;
+    }
+
     /**
      * 在目标插件进程中运行
      * @param uri
@@ -159,6 +211,55 @@ public class PluginProviderStub {
      * @return
      */
     private static final IBinder proxyFetchHostBinder(Context context, String selection) {
+        // 优先使用 call 方式（API 11 起可用），失败时自动回退到 query 方式
+        boolean callFailed = false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB && !sCallDisabled) {
+            long start = System.currentTimeMillis();
+            IBinder binder = null;
+            try {
+                binder = proxyCallHostBinder(context, selection);
+            } catch (Throwable e) {
+                if (LOGR) {
+                    LogRelease.e(PLUGIN_TAG, "p.f.h.b: call e=" + e.getMessage(), e);
+                }
+            }
+            if (binder != null) {
+                sLastCallCost = System.currentTimeMillis() - start;
+                if (LOG) {
+                    LogDebug.d(PLUGIN_TAG, "proxy fetch binder: call cost=" + sLastCallCost + " binder=" + binder);
+                }
+                return binder;
+            }
+            callFailed = true;
+        }
+
+        long start = System.currentTimeMillis();
+        IBinder binder = proxyQueryHostBinder(context, selection);
+        sLastQueryCost = System.currentTimeMillis() - start;
+        if (LOG) {
+            LogDebug.d(PLUGIN_TAG, "proxy fetch binder: query cost=" + sLastQueryCost);
+        }
+        if (callFailed && binder != null) {
+            // query 可以而 call 不行，说明是 ROM 的问题（而不是常驻进程恰好退出），此后不再尝试 call
+            if (LOGR) {
+                LogRelease.w(PLUGIN_TAG, "p.f.h.b: call unavailable, use query");
+            }
+            sCallDisabled = true;
+        }
+        return binder;
+    }
+
+    private static IBinder proxyCallHostBinder(Context context, String selection) {
+        Bundle result = context.getContentResolver().call(ProcessPitProviderPersist.URI, METHOD_FETCH_BINDER, selection, null);
+        if (result == null) {
+            return null;
+        }
+        result.setClassLoader(BinderCursor.class.getClassLoader());
+        BinderCursor.BinderParcelable w = result.getParcelable(BinderCursor.BINDER_KEY);
+        return w != null ? w.mBinder : null;
+    }
+
+    private static IBinder proxyQueryHostBinder(Context context, String selection) {
         //
         Cursor cursor = null;
         try {
@@ -226,12 +327,20 @@ public class PluginProviderStub {
                         sPref = null;
                     }
                 }, 0);
-                sPref = IPref.Stub.asInterface(b);
+                // 读操作由本地副本完成，常驻进程重启后（Binder 死亡）重新建立
+                sPref = PrefReplica.attach(IPref.Stub.asInterface(BinderStats.wrap(b, IPref.Stub.class)));
             }
         }
         return sPref;
     }
 
+    /**
+     * 输出获取常驻进程 Binder 的方式及耗时
+     */
+    static void dumpBootstrap(PrintWriter writer) {
+        writer.println("--- host binder bootstrap: callDisabled=" + sCallDisabled + " callCost=" + sLastCallCost + " queryCost=" + sLastQueryCost + " ---");
+    }
+
     static final void initPref() {
         if (sPrefImpl == null) {
             sPrefImpl = new PrefImpl();
@@ -34,6 +34,7 @@ import com.qihoo360.i.Factory;
 import com.qihoo360.i.IModule;
 import com.qihoo360.i.IPluginManager;
 import com.qihoo360.mobilesafe.api.Tasks;
+import com.qihoo360.mobilesafe.parser.manifest.ManifestParser;
 import com.qihoo360.replugin.IHostBinderFetcher;
 import com.qihoo360.replugin.RePlugin;
 import com.qihoo360.replugin.RePluginConstants;
@@ -45,10 +46,13 @@ import com.qihoo360.replugin.component.dummy.DummyProvider;
 import com.qihoo360.replugin.component.dummy.DummyService;
 import com.qihoo360.replugin.component.process.PluginProcessHost;
 import com.qihoo360.replugin.component.service.server.PluginPitService;
+import com.qihoo360.replugin.component.utils.IntentResolveCache;
 import com.qihoo360.replugin.helper.HostConfigHelper;
 import com.qihoo360.replugin.helper.LogDebug;
 import com.qihoo360.replugin.helper.LogRelease;
 import com.qihoo360.replugin.model.PluginInfo;
+import com.qihoo360.replugin.model.PluginInfoPage;
+import com.qihoo360.replugin.model.PluginInfoPager;
 import com.qihoo360.replugin.packages.PluginManagerProxy;
 import com.qihoo360.replugin.utils.ReflectUtils;
 
@@ -187,6 +191,10 @@ class PmBase {
             if (action.equals(intent.getAction())) {
                 PluginInfo info = intent.getParcelableExtra("obj");
                 if (info != null) {
+                    // 插件有变化，已缓存的隐式 Intent 解析结果全部作废
+                    IntentResolveCache.invalidate();
+                    mLocal.mContainerLeases.revokeAll();
+
                     switch (action) {
                         case ACTION_NEW_PLUGIN:
                             // 非常驻进程上下文
@@ -353,7 +361,13 @@ class PmBase {
     private void refreshPluginsFromHostSvc() {
         List<PluginInfo> plugins = null;
         try {
-            plugins = PluginProcessMain.getPluginHost().listPlugins();
+            // 分页获取，避免插件较多时单次传输过大
+            plugins = PluginInfoPager.load(new PluginInfoPager.PageSource() {
+                @Override
+                public PluginInfoPage fetch(long snapshot, int offset) throws RemoteException {
+                    return PluginProcessMain.getPluginHost().listPluginsPage(snapshot, offset);
+                }
+            });
         } catch (Throwable e) {
             if (LOGR) {
                 LogRelease.e(PLUGIN_TAG, "lst.p: " + e.getMessage(), e);
@@ -647,6 +661,11 @@ class PmBase {
 //            }, filter);
 //        }
 
+        if (IPC.isPersistentProcess()) {
+            // 预热自定义插件进程（如已开启）
+            StubProcessPool.init(mContext);
+        }
+
         if (!IPC.isPersistentProcess()) {
             // 由于常驻进程已经在内部做了相关的处理，此处仅需要在UI进程注册并更新即可
             IntentFilter intentFilter = new IntentFilter();
@@ -1111,6 +1130,13 @@ class PmBase {
     }
 
     final Plugin lookupPlugin(ClassLoader loader) {
+        // 先查 ClassLoader 索引，命中且仍是当前的插件对象时直接返回
+        Plugin indexed = Plugin.queryPluginByClassLoader(loader);
+        if (indexed != null && indexed.getClassLoader() == loader && mPlugins.get(indexed.mInfo.getName()) == indexed) {
+            return indexed;
+        }
+
+        // 未命中或已过期（如插件被替换后新旧对象共用缓存的 ClassLoader），按以前的方式遍历
         for (Plugin p : mPlugins.values()) {
             if (p != null && p.getClassLoader() == loader) {
                 return p;
@@ -1202,6 +1228,9 @@ class PmBase {
         // 移除卸载插件表快照
         PluginTable.removeInfo(info);
 
+        // 移除卸载插件的 IntentFilter 索引
+        ManifestParser.INS.remove(info);
+
         // 移除内存中插件的PackageInfo、Resources、ComponentList和DexClassLoader缓存对象
         Plugin.clearCachedPlugin(Plugin.queryCachedFilename(info.getName()));
     }
@@ -1228,6 +1257,9 @@ class PmBase {
         //
         StubProcessManager.schedulePluginProcessLoop(StubProcessManager.CHECK_STAGE1_DELAY);
 
+        // 自定义进程可能已预热好，交给此插件使用
+        StubProcessPool.claim(process);
+
         // 获取
         IPluginClient client = PluginProcessMain.probePluginClient(plugin, process, info);
         if (client != null) {
@@ -1293,6 +1325,7 @@ class PmBase {
 
     final void handleServiceCreated(Service service) {
 //      int pid = Process.myPid();
+        // 与 Activity 相同，须同步登记，避免进程在计数生效前被判定为空闲
         try {
             PluginProcessMain.getPluginHost().regService(PluginManager.sPluginProcessIndex, mDefaultPlugin.mInfo.getName(), service.getClass().getName());
         } catch (Throwable e) {
@@ -1314,7 +1347,7 @@ class PmBase {
     final void handleServiceDestroyed(Service service) {
 //      int pid = Process.myPid();
         try {
-            PluginProcessMain.getPluginHost().unregService(PluginManager.sPluginProcessIndex, mDefaultPlugin.mInfo.getName(), service.getClass().getName());
+            LifecycleEventReporter.serviceDestroyed(PluginManager.sPluginProcessIndex, mDefaultPlugin.mInfo.getName(), service.getClass().getName());
         } catch (Throwable e) {
             if (LOGR) {
                 LogRelease.e(PLUGIN_TAG, "ur.s: " + e.getMessage(), e);
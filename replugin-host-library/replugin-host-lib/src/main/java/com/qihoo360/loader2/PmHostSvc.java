@@ -23,6 +23,7 @@ import android.content.IntentFilter;
 import android.content.pm.ActivityInfo;
 import android.os.Binder;
 import android.os.IBinder;
+import android.os.Parcel;
 import android.os.Parcelable;
 import android.os.RemoteException;
 import android.support.v4.content.LocalBroadcastManager;
@@ -33,6 +34,7 @@ import com.qihoo360.replugin.RePlugin;
 import com.qihoo360.replugin.RePluginConstants;
 import com.qihoo360.replugin.RePluginEventCallbacks;
 import com.qihoo360.replugin.RePluginInternal;
+import com.qihoo360.replugin.base.BinderStats;
 import com.qihoo360.replugin.base.IPC;
 import com.qihoo360.replugin.base.LocalBroadcastHelper;
 import com.qihoo360.replugin.component.ComponentList;
@@ -44,6 +46,8 @@ import com.qihoo360.replugin.helper.HostConfigHelper;
 import com.qihoo360.replugin.helper.LogDebug;
 import com.qihoo360.replugin.helper.LogRelease;
 import com.qihoo360.replugin.model.PluginInfo;
+import com.qihoo360.replugin.model.PluginInfoPage;
+import com.qihoo360.replugin.model.PluginInfoSnapshots;
 import com.qihoo360.replugin.packages.IPluginManagerServer;
 import com.qihoo360.replugin.packages.PluginInfoUpdater;
 import com.qihoo360.replugin.packages.PluginManagerServer;
@@ -114,6 +118,11 @@ class PmHostSvc extends IPluginHost.Stub {
      */
     private final HashMap<String, HashMap<String, List<String>>> mActionPluginComponents = new HashMap<>();
 
+    /**
+     * 分页传输插件列表时的快照（见 listPluginsPage）
+     */
+    private final PluginInfoSnapshots mPluginSnapshots = new PluginInfoSnapshots();
+
     private static final class BinderDied implements DeathRecipient {
 
         String name;
@@ -202,6 +211,14 @@ class PmHostSvc extends IPluginHost.Stub {
         return PluginTable.buildPlugins();
     }
 
+    @Override
+    public PluginInfoPage listPluginsPage(long snapshot, int offset) throws RemoteException {
+        if (snapshot != 0) {
+            return mPluginSnapshots.page(snapshot, offset);
+        }
+        return mPluginSnapshots.open(PluginTable.buildPlugins());
+    }
+
     @Override
     public void regActivity(int index, String plugin, String container, String activity) throws RemoteException {
         int pid = Binder.getCallingPid();
@@ -235,7 +252,13 @@ class PmHostSvc extends IPluginHost.Stub {
     public void unregPluginBinder(PluginBinderInfo info, IBinder binder) throws RemoteException {
         PluginProcessMain.detachBinder(info.pid, binder);
 
-        // 通知插件进程，是否需要退出
+        releaseBinder(info);
+    }
+
+    /**
+     * 通知提供 Binder 的插件进程，是否需要退出
+     */
+    private void releaseBinder(PluginBinderInfo info) throws RemoteException {
         IPluginClient client = PluginProcessMain.probePluginClientByPid(info.pid, info);
         if (client == null) {
             if (LOG) {
@@ -669,4 +692,56 @@ class PmHostSvc extends IPluginHost.Stub {
     public String dump() {
         return PluginProcessMain.dump();
     }
+
+    @Override
+    public void reportLifecycleEvents(PluginLifecycleEvent[] events) throws RemoteException {
+        if (events == null) {
+            return;
+        }
+
+        for (PluginLifecycleEvent e : events) {
+            if (handleLifecycleEvent(e)) {
+                // 通知提供 Binder 的进程（会同步调用插件进程）
+                PluginBinderInfo info = new PluginBinderInfo(PluginBinderInfo.BINDER_REQUEST);
+                info.pid = e.pid;
+                releaseBinder(info);
+            }
+        }
+    }
+
+    /**
+     * 与 unregActivity 等同步方法的处理相同
+     *
+     * @return 是否为释放 Binder 的事件
+     */
+    private boolean handleLifecycleEvent(PluginLifecycleEvent e) {
+        switch (e.type) {
+            case PluginLifecycleEvent.ACTIVITY_DESTROYED:
+                PluginProcessMain.detachActivity(e.pid, e.index, e.plugin, e.component, e.container);
+                break;
+            case PluginLifecycleEvent.SERVICE_DESTROYED:
+                PluginProcessMain.detachService(e.pid, e.index, e.plugin, e.component);
+                break;
+            case PluginLifecycleEvent.BINDER_RELEASED:
+                PluginProcessMain.detachBinder(e.pid, e.binder);
+                return true;
+            default:
+                if (LOGR) {
+                    LogRelease.w(PLUGIN_TAG, "h.l.e: unknown " + e);
+                }
+                break;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean onTransact(int code, Parcel data, Parcel reply, int flags) throws RemoteException {
+        // 统计每个方法的调用次数与耗时（见 BinderStats）
+        long start = BinderStats.begin();
+        try {
+            return super.onTransact(code, data, reply, flags);
+        } finally {
+            BinderStats.endIncoming(IPluginHost.Stub.class, code, data, reply, start);
+        }
+    }
 }
\ No newline at end of file
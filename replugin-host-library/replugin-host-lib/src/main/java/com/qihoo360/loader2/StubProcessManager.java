@@ -2,6 +2,7 @@ package com.qihoo360.loader2;
 
 import android.app.ActivityManager;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.text.TextUtils;
 
 import com.qihoo360.i.IPluginManager;
@@ -27,8 +28,11 @@ public class StubProcessManager {
      */
     static final ProcessRecord STUB_PROCESSES[] = new ProcessRecord[Constant.STUB_PROCESS_COUNT];
     static final int CHECK_STAGE1_DELAY = 17 * 1000;
+    /**
+     * 结束进程后，等待其 binderDied 的最长时间
+     */
+    private static final long KILL_TIMEOUT = 1000;
     private static final int CHECK_STAGE2_DELAY = 11 * 1000;
-    private static final int CHECK_STAGE3_DELAY = 3 * 1000;
     private static final Runnable CHECK = new Runnable() {
         @Override
         public void run() {
@@ -52,25 +56,17 @@ public class StubProcessManager {
         if (LOG) {
             LogDebug.d(PLUGIN_TAG, "alloc plugin process: plugin=" + plugin);
         }
-        // 取运行列表
-        List<ActivityManager.RunningAppProcessInfo> processes = AMSUtils.getRunningAppProcessesNoThrows(RePluginInternal.getAppContext());
-        // 取运行列表失败，则直接返回失败
-        if (processes == null || processes.isEmpty()) {
-            if (LOG) {
-                LogDebug.d(PLUGIN_TAG, "alloc plugin process: get running processes is empty");
-                LogDebug.i(PLUGIN_TAG, "get list exception p=" + plugin);
-            }
-            return IPluginManager.PROCESS_AUTO;
-        }
+        // 进程状态由 attach 和 binderDied 事件维护（见 attachStubProcess、setProcessStop），这里只需在内存中选择
         //根据优先级分配坑位进程
         int prevMatchPriority = -1; //临时变量，保存上一个ProcessRecord的进程分配优先级
         ProcessRecord selectRecord = null; //被选中的坑位进程
         for (ProcessRecord r : STUB_PROCESSES) {
             synchronized (r) {
-                if (r.calculateMatchPriority(plugin) > prevMatchPriority) {
-                    prevMatchPriority = r.calculateMatchPriority(plugin);
+                int priority = r.calculateMatchPriority(plugin);
+                if (priority > prevMatchPriority) {
+                    prevMatchPriority = priority;
                     selectRecord = r;
-                } else if (r.calculateMatchPriority(plugin) == prevMatchPriority) {
+                } else if (priority == prevMatchPriority) {
                     if (r.mobified < selectRecord.mobified) {
                         selectRecord = r;
                     }
@@ -86,7 +82,7 @@ public class StubProcessManager {
             {
                 return selectRecord.index;
             }
-            selectRecord.resetAllocate(plugin, processes);
+            selectRecord.resetAllocate(plugin);
             return selectRecord.index;
         }
     }
@@ -188,14 +184,19 @@ public class StubProcessManager {
         }
 
         ProcessRecord r = STUB_PROCESSES[index];
+        boolean empty;
         synchronized (r){
             r.activities--;
             r.mobified = System.currentTimeMillis();
+            empty = r.isEmpty();
             if (LOG) {
                 LogDebug.d(PLUGIN_TAG, "activities=" + r.activities + " services=" + r.services + " binders=" + r.binders);
             }
         }
-        schedulePluginProcessLoop(CHECK_STAGE2_DELAY);
+        // 进程中已没有组件时，才需要检查是否退出
+        if (empty) {
+            schedulePluginProcessLoop(CHECK_STAGE2_DELAY);
+        }
 
         return true;
     }
@@ -252,14 +253,19 @@ public class StubProcessManager {
         }
 
         ProcessRecord r = STUB_PROCESSES[index];
+        boolean empty;
         synchronized (r){
             r.services--;
             r.mobified = System.currentTimeMillis();
+            empty = r.isEmpty();
             if (LOG) {
                 LogDebug.d(PLUGIN_TAG, "activities=" + r.activities + " services=" + r.services + " binders=" + r.binders);
             }
         }
-        schedulePluginProcessLoop(CHECK_STAGE2_DELAY);
+        // 进程中已没有组件时，才需要检查是否退出
+        if (empty) {
+            schedulePluginProcessLoop(CHECK_STAGE2_DELAY);
+        }
 
         return true;
     }
@@ -288,11 +294,13 @@ public class StubProcessManager {
         if (LOG) {
             LogDebug.d(PLUGIN_TAG, "unreg binder: pid=" + pid + " binder=" + binder);
         }
+        boolean empty = false;
         for (ProcessRecord r : STUB_PROCESSES) {
             if (r.pid == pid) {
                 synchronized (r){
                     r.binders--;
                     r.mobified = System.currentTimeMillis();
+                    empty = r.isEmpty();
                     if (LOG) {
                         LogDebug.d(PLUGIN_TAG, "activities=" + r.activities + " services=" + r.services + " binders=" + r.binders);
                     }
@@ -301,7 +309,10 @@ public class StubProcessManager {
             }
         }
 
-        schedulePluginProcessLoop(CHECK_STAGE2_DELAY);
+        // 进程中已没有组件时，才需要检查是否退出
+        if (empty) {
+            schedulePluginProcessLoop(CHECK_STAGE2_DELAY);
+        }
     }
 
     static final int sumBinders(int index) {
@@ -368,26 +379,15 @@ public class StubProcessManager {
                     if (r.state != StubProcessState.STATE_RUNNING) {
                         continue;
                     }
-                    if (r.activities > 0) {
-                        continue;
-                    }
-                    if (r.services > 0) {
-                        continue;
-                    }
-                    if (r.binders > 0) {
+                    if (!r.isEmpty()) {
                         continue;
                     }
                     if (LOGR) {
                         // terminate empty process
                         LogRelease.i(PLUGIN_TAG, "t e p " + r.pid);
                     }
-                    //
-                    android.os.Process.killProcess(r.pid);
-                    waitKilled(r.pid);
-                    r.setStoped();
-                    //
-                    schedulePluginProcessLoop(CHECK_STAGE3_DELAY);
-                    return;
+                    // 一次结束所有空进程，不再重复定时检查
+                    r.killAndWait();
                 }
             }
         }
@@ -464,6 +464,10 @@ public class StubProcessManager {
             this.binders = 0;
         }
 
+        boolean isEmpty() {
+            return activities <= 0 && services <= 0 && binders <= 0;
+        }
+
         void setRunning(int pid) {
             this.state = StubProcessState.STATE_RUNNING;
             this.pid = pid;
@@ -479,6 +483,8 @@ public class StubProcessManager {
             this.pid = 0;
             this.binder = null;
             this.client = null;
+            // 唤醒 killAndWait
+            notifyAll();
         }
 
         /**
@@ -512,13 +518,28 @@ public class StubProcessManager {
             return priority;
         }
 
-        void resetAllocate(String plugin, List<ActivityManager.RunningAppProcessInfo> processes) {
-            killProcess(processes);
+        void resetAllocate(String plugin) {
+            killProcess();
             allocate(plugin);
         }
 
-        private void killProcess(List<ActivityManager.RunningAppProcessInfo> processes) {
+        private void killProcess() {
             // 确保进程为空
+            if (state == StubProcessState.STATE_RUNNING) {
+                // 已 attach 的进程，pid 已知，结束后等待 binderDied
+                killAndWait();
+                return;
+            }
+            if (state != StubProcessState.STATE_ALLOCATED) {
+                // 未使用或已停止（binderDied 已确认退出），无需处理
+                return;
+            }
+
+            // 已分配但尚未 attach：进程可能正在启动，只有这种情况需要向系统查询
+            List<ActivityManager.RunningAppProcessInfo> processes = AMSUtils.getRunningAppProcessesNoThrows(RePluginInternal.getAppContext());
+            if (processes == null || processes.isEmpty()) {
+                return;
+            }
             int pid = lookupPluginProcess(processes, index);
             if (pid > 0) {
                 if (LOGR) {
@@ -529,6 +550,37 @@ public class StubProcessManager {
             }
         }
 
+        /**
+         * 结束正在运行的进程，并等待 binderDied（setStoped）确认其退出。调用方需持有本对象的锁
+         */
+        void killAndWait() {
+            int pid = this.pid;
+            if (pid <= 0) {
+                setStoped();
+                return;
+            }
+            if (LOGR) {
+                LogRelease.i(PLUGIN_TAG, "ppr k i: " + pid);
+            }
+            android.os.Process.killProcess(pid);
+
+            long deadline = SystemClock.elapsedRealtime() + KILL_TIMEOUT;
+            while (this.pid == pid && state == StubProcessState.STATE_RUNNING) {
+                long remain = deadline - SystemClock.elapsedRealtime();
+                if (remain <= 0) {
+                    // 超时未收到 binderDied，按已退出处理
+                    setStoped();
+                    break;
+                }
+                try {
+                    wait(remain);
+                } catch (InterruptedException e) {
+                    setStoped();
+                    break;
+                }
+            }
+        }
+
         @Override
         public String toString() {
             if (LOG) {
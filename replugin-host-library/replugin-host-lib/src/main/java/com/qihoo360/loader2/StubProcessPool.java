@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.qihoo360.loader2;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Build;
+import android.os.SystemClock;
+
+import com.qihoo360.i.IPluginManager;
+import com.qihoo360.mobilesafe.api.Tasks;
+import com.qihoo360.replugin.RePlugin;
+import com.qihoo360.replugin.component.process.PluginProcessHost;
+import com.qihoo360.replugin.helper.LogDebug;
+import com.qihoo360.replugin.helper.LogRelease;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+
+import static com.qihoo360.replugin.helper.LogDebug.LOG;
+import static com.qihoo360.replugin.helper.LogDebug.PLUGIN_TAG;
+import static com.qihoo360.replugin.helper.LogRelease.LOGR;
+
+/**
+ * 预热的自定义插件进程池（常驻进程）
+ * <p>
+ * 插件首次在 :p0 ~ :pN 中打开 Activity、Service 时，才会去启动该进程，fork、Application 初始化以及与常驻进程的握手都发生在用户点击的过程中。
+ * 开启后（见 RePluginConfig.setStubProcessPoolSize），常驻进程会提前启动若干个尚未运行的自定义进程，使其完成初始化并 attach 到常驻进程，
+ * 之后第一个需要该进程的插件可以直接使用（见 PmBase.startPluginProcessLocked）。
+ * <p>
+ * 每交出一个进程，就预热下一个尚未运行的进程，直到池满或没有可用的进程；
+ * 预热后超过空闲时间仍未被使用、或系统内存不足时，空闲的进程会被结束，并暂停预热，直到下一次有插件需要进程时再恢复。
+ *
+ * @author RePlugin Team
+ */
+final class StubProcessPool {
+
+    /**
+     * 启动后延迟预热，避免与宿主自身的初始化抢占资源
+     */
+    private static final long WARM_DELAY = 5 * 1000;
+
+    private static final Object LOCKER = new Object();
+
+    private static Context sContext;
+
+    /**
+     * HashMap<进程 index, 预热完成的时间（SystemClock.elapsedRealtime）>，尚未被使用的进程
+     */
+    private static final HashMap<Integer, Long> sWarm = new HashMap<>();
+
+    /**
+     * 已交给插件使用的进程 index
+     */
+    private static final HashSet<Integer> sClaimed = new HashSet<>();
+
+    /**
+     * 因空闲超时或内存不足而暂停预热
+     */
+    private static boolean sSuspended;
+
+    private static int sHits;
+
+    private static int sMisses;
+
+    private static int sReclaimed;
+
+    private static final Runnable WARM = new Runnable() {
+        @Override
+        public void run() {
+            warm();
+        }
+    };
+
+    private static final Runnable IDLE_CHECK = new Runnable() {
+        @Override
+        public void run() {
+            reclaim(false);
+        }
+    };
+
+    /**
+     * 常驻进程初始化时调用，未开启时什么也不做
+     */
+    static void init(Context context) {
+        if (poolSize() <= 0) {
+            return;
+        }
+        sContext = context;
+
+        // 内存不足时结束空闲的进程
+        if (Build.VERSION.SDK_INT >= 14) {
+            context.registerComponentCallbacks(new ComponentCallbacks2() {
+                @Override
+                public void onTrimMemory(int level) {
+                    if (level >= TRIM_MEMORY_RUNNING_LOW && level != TRIM_MEMORY_UI_HIDDEN) {
+                        reclaim(true);
+                    }
+                }
+
+                @Override
+                public void onConfigurationChanged(Configuration newConfig) {
+                }
+
+                @Override
+                public void onLowMemory() {
+                    reclaim(true);
+                }
+            });
+        }
+
+        Tasks.postDelayed2Thread(WARM, WARM_DELAY);
+    }
+
+    /**
+     * 有插件即将使用某个自定义进程（调用方已加锁）
+     *
+     * @param index 进程 index
+     * @return 该进程是否来自预热池
+     */
+    static boolean claim(int index) {
+        if (sContext == null || !PluginProcessHost.isCustomPluginProcess(index)) {
+            return false;
+        }
+        boolean hit;
+        synchronized (LOCKER) {
+            hit = sWarm.remove(index) != null;
+            if (hit) {
+                sHits++;
+            } else if (!sClaimed.contains(index)) {
+                // 只统计真正需要冷启动的情况；已在使用中的进程每次 startPluginProcess 都会走到这里，不计入
+                sMisses++;
+            }
+            sClaimed.add(index);
+            // 有了新的需求，恢复预热
+            sSuspended = false;
+        }
+        if (LOG) {
+            LogDebug.d(PLUGIN_TAG, "stub pool: claim index=" + index + " hit=" + hit);
+        }
+        Tasks.cancelThreadTask(WARM);
+        Tasks.postDelayed2Thread(WARM, WARM_DELAY);
+        return hit;
+    }
+
+    /**
+     * 自定义进程已退出
+     */
+    static void onProcessDied(int index) {
+        if (sContext == null || !PluginProcessHost.isCustomPluginProcess(index)) {
+            return;
+        }
+        synchronized (LOCKER) {
+            sWarm.remove(index);
+            sClaimed.remove(index);
+        }
+    }
+
+    static void dump(PrintWriter writer) {
+        synchronized (LOCKER) {
+            writer.println("--- StubProcessPool size=" + poolSize() + " idleTimeout=" + idleTimeout() + " ---");
+            writer.println("warm=" + sWarm.keySet() + " claimed=" + sClaimed + " suspended=" + sSuspended);
+            writer.println("hits=" + sHits + " misses=" + sMisses + " reclaimed=" + sReclaimed);
+        }
+    }
+
+    private static void warm() {
+        while (true) {
+            int index = nextIndexToWarm();
+            if (index == IPluginManager.PROCESS_AUTO) {
+                return;
+            }
+
+            if (LOG) {
+                LogDebug.d(PLUGIN_TAG, "stub pool: warm index=" + index);
+            }
+            boolean rc = false;
+            try {
+                rc = PluginProviderStub.proxyStartPluginProcess(sContext, index);
+            } catch (Throwable e) {
+                if (LOGR) {
+                    LogRelease.e(PLUGIN_TAG, "stub pool: warm e=" + e.getMessage(), e);
+                }
+            }
+            if (!rc) {
+                return;
+            }
+
+            synchronized (LOCKER) {
+                if (sClaimed.contains(index)) {
+                    // 预热期间已被插件使用
+                    continue;
+                }
+                sWarm.put(index, SystemClock.elapsedRealtime());
+            }
+            Tasks.cancelThreadTask(IDLE_CHECK);
+            Tasks.postDelayed2Thread(IDLE_CHECK, idleTimeout());
+        }
+    }
+
+    /**
+     * 下一个需要预热的进程：池未满、未暂停，且该进程没有被使用、也没有在运行
+     *
+     * @return 进程 index，没有时返回 PROCESS_AUTO
+     */
+    private static int nextIndexToWarm() {
+        synchronized (LOCKER) {
+            if (sSuspended || sWarm.size() >= poolSize()) {
+                return IPluginManager.PROCESS_AUTO;
+            }
+            for (int i = 0; i < PluginProcessHost.PROCESS_COUNT; i++) {
+                int index = PluginProcessHost.PROCESS_INIT + i;
+                if (sWarm.containsKey(index) || sClaimed.contains(index)) {
+                    continue;
+                }
+                if (PluginProcessMain.getPidByProcessName(processName(i)) > 0) {
+                    // 已在运行（例如被 Provider 拉起），视为已被使用
+                    sClaimed.add(index);
+                    continue;
+                }
+                return index;
+            }
+            return IPluginManager.PROCESS_AUTO;
+        }
+    }
+
+    /**
+     * 结束空闲的预热进程
+     *
+     * @param all true 表示内存不足，结束所有空闲的进程；false 表示只结束超过空闲时间的进程
+     */
+    private static void reclaim(boolean all) {
+        long now = SystemClock.elapsedRealtime();
+        long timeout = idleTimeout();
+        long next = Long.MAX_VALUE;
+        HashMap<Integer, Long> victims = new HashMap<>();
+        synchronized (LOCKER) {
+            Iterator<Map.Entry<Integer, Long>> it = sWarm.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Integer, Long> e = it.next();
+                long expireAt = e.getValue() + timeout;
+                if (all || expireAt <= now) {
+                    victims.put(e.getKey(), e.getValue());
+                    it.remove();
+                } else if (expireAt < next) {
+                    next = expireAt;
+                }
+            }
+            if (!victims.isEmpty()) {
+                sSuspended = true;
+            }
+        }
+        if (next != Long.MAX_VALUE) {
+            Tasks.cancelThreadTask(IDLE_CHECK);
+            Tasks.postDelayed2Thread(IDLE_CHECK, next - now);
+        }
+
+        for (int index : victims.keySet()) {
+            kill(index);
+        }
+    }
+
+    private static void kill(int index) {
+        String name = processName(index - PluginProcessHost.PROCESS_INIT);
+        int pid = PluginProcessMain.getPidByProcessName(name);
+        if (pid <= 0) {
+            return;
+        }
+
+        // 进程可能被没有经过 startPluginProcess 的方式用到（如插件 Provider），有 Activity 时不结束
+        try {
+            IPluginClient client = PluginProcessMain.probePluginClient(null, index, new PluginBinderInfo(PluginBinderInfo.NONE_REQUEST));
+            if (client != null && client.sumActivities() > 0) {
+                synchronized (LOCKER) {
+                    sClaimed.add(index);
+                }
+                return;
+            }
+        } catch (Throwable e) {
+            if (LOGR) {
+                LogRelease.e(PLUGIN_TAG, "stub pool: kill e=" + e.getMessage(), e);
+            }
+        }
+
+        synchronized (LOCKER) {
+            // 从 sWarm 中取出后到这里之间，可能已被插件使用（claim），此时不能结束。持锁结束进程，使 claim 不会穿插进来
+            if (sClaimed.contains(index) || sWarm.containsKey(index)) {
+                if (LOG) {
+                    LogDebug.d(PLUGIN_TAG, "stub pool: claimed before kill, index=" + index);
+                }
+                return;
+            }
+            if (LOGR) {
+                LogRelease.i(PLUGIN_TAG, "stub pool: t i p " + pid);
+            }
+            sReclaimed++;
+            android.os.Process.killProcess(pid);
+        }
+    }
+
+    private static String processName(int i) {
+        return PluginProcessHost.PROCESS_ADJUST_MAP.get("$" + PluginProcessHost.PROCESS_PLUGIN_SUFFIX + i);
+    }
+
+    private static int poolSize() {
+        return Math.min(RePlugin.getConfig().getStubProcessPoolSize(), PluginProcessHost.PROCESS_COUNT);
+    }
+
+    private static long idleTimeout() {
+        return RePlugin.getConfig().getStubProcessIdleTimeout();
+    }
+}
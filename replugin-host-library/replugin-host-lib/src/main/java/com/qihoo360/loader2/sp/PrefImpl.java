@@ -17,22 +17,43 @@
 package com.qihoo360.loader2.sp;
 
 import android.os.Bundle;
+import android.os.Parcel;
+import android.os.RemoteCallbackList;
 import android.os.RemoteException;
 
+import com.qihoo360.replugin.base.BinderStats;
 import com.qihoo360.replugin.helper.LogDebug;
+import com.qihoo360.replugin.helper.LogRelease;
 
 import java.util.HashMap;
+import java.util.Map;
 
 import static com.qihoo360.replugin.helper.LogDebug.LOG;
 import static com.qihoo360.replugin.helper.LogDebug.PLUGIN_TAG;
+import static com.qihoo360.replugin.helper.LogRelease.LOGR;
 
 /**
+ * 常驻进程中的 IPref 实现
+ * <p>
+ * 其它进程通过 attachReplica 建立只读副本（见 PrefReplica）；每次修改都会生成递增的版本号，并在锁内依次以 oneway 方式通知所有副本。
+ *
  * @author RePlugin Team
  */
 public final class PrefImpl extends IPref.Stub {
 
+    static final String KEY_VERSION = "version";
+
+    static final String KEY_CATEGORIES = "categories";
+
     HashMap<String, Bundle> mBundles = new HashMap<String, Bundle>();
 
+    /**
+     * 最近一次修改的版本号，由 mBundles 保护
+     */
+    private long mVersion;
+
+    private final RemoteCallbackList<IPrefListener> mReplicas = new RemoteCallbackList<>();
+
     private Bundle load(String category) {
         synchronized (mBundles) {
             Bundle bundle = mBundles.get(category);
@@ -58,11 +79,36 @@ public final class PrefImpl extends IPref.Stub {
 
     @Override
     public void set(String category, String key, String value) throws RemoteException {
-        Bundle bundle = load(category);
-        if (LOG) {
-            LogDebug.d(PLUGIN_TAG, "set: category=" + category + " bundle=" + bundle + " key=" + key + " value=" + value);
+        update(category, key, value);
+    }
+
+    @Override
+    public long update(String category, String key, String value) throws RemoteException {
+        synchronized (mBundles) {
+            Bundle bundle = load(category);
+            if (LOG) {
+                LogDebug.d(PLUGIN_TAG, "set: category=" + category + " bundle=" + bundle + " key=" + key + " value=" + value);
+            }
+            bundle.putString(key, value);
+            long version = ++mVersion;
+
+            // 在锁内通知，保证各副本收到的顺序与版本号一致
+            int n = mReplicas.beginBroadcast();
+            try {
+                for (int i = 0; i < n; i++) {
+                    try {
+                        mReplicas.getBroadcastItem(i).onChanged(category, key, value, version);
+                    } catch (Throwable e) {
+                        if (LOGR) {
+                            LogRelease.e(PLUGIN_TAG, "pref: notify e=" + e.getMessage(), e);
+                        }
+                    }
+                }
+            } finally {
+                mReplicas.finishBroadcast();
+            }
+            return version;
         }
-        bundle.putString(key, value);
     }
 
     @Override
@@ -74,4 +120,33 @@ public final class PrefImpl extends IPref.Stub {
         return bundle;
     }
 
+    @Override
+    public Bundle attachReplica(IPrefListener listener) throws RemoteException {
+        Bundle snapshot = new Bundle();
+        synchronized (mBundles) {
+            // 注册与拷贝在同一把锁内，之后的修改都会通知到该副本
+            mReplicas.register(listener);
+            Bundle categories = new Bundle();
+            for (Map.Entry<String, Bundle> e : mBundles.entrySet()) {
+                categories.putBundle(e.getKey(), new Bundle(e.getValue()));
+            }
+            snapshot.putLong(KEY_VERSION, mVersion);
+            snapshot.putBundle(KEY_CATEGORIES, categories);
+        }
+        if (LOG) {
+            LogDebug.d(PLUGIN_TAG, "attachReplica: snapshot=" + snapshot);
+        }
+        return snapshot;
+    }
+
+    @Override
+    public boolean onTransact(int code, Parcel data, Parcel reply, int flags) throws RemoteException {
+        // 统计每个方法的调用次数与耗时（见 BinderStats）
+        long start = BinderStats.begin();
+        try {
+            return super.onTransact(code, data, reply, flags);
+        } finally {
+            BinderStats.endIncoming(IPref.Stub.class, code, data, reply, start);
+        }
+    }
 }
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.qihoo360.loader2.sp;
+
+import android.os.Bundle;
+import android.os.IBinder;
+import android.os.RemoteException;
+
+import com.qihoo360.replugin.helper.LogDebug;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.qihoo360.replugin.helper.LogDebug.LOG;
+import static com.qihoo360.replugin.helper.LogDebug.PLUGIN_TAG;
+
+/**
+ * 非常驻进程中 IPref 的只读副本
+ * <p>
+ * 建立时从常驻进程一次性取回所有数据，之后通过 IPrefListener 接收变化通知，读操作直接在本地完成，不再调用常驻进程。
+ * 写操作仍交给常驻进程（PrefImpl），返回的版本号立即应用到本地，保证本进程“写后即读”。
+ * <p>
+ * 每个值都记录了版本号：同一个值的通知与写操作的返回先后不定，只接受更新的版本。
+ * 常驻进程重启后数据和版本号都会重置，因此其 Binder 死亡后本副本即作废，由调用方重新建立（见 PluginProviderStub.getPref）。
+ *
+ * @author RePlugin Team
+ */
+public final class PrefReplica implements IPref {
+
+    private final IPref mRemote;
+
+    /**
+     * HashMap<category, HashMap<key, Value>>
+     */
+    private final HashMap<String, HashMap<String, Value>> mCategories = new HashMap<>();
+
+    /**
+     * 已收到的最大版本号
+     */
+    private long mVersion;
+
+    private final IPrefListener.Stub mListener = new IPrefListener.Stub() {
+        @Override
+        public void onChanged(String category, String key, String value, long version) throws RemoteException {
+            apply(category, key, value, version);
+        }
+    };
+
+    /**
+     * 建立副本（同步调用常驻进程）
+     */
+    public static PrefReplica attach(IPref remote) throws RemoteException {
+        PrefReplica replica = new PrefReplica(remote);
+        Bundle snapshot = remote.attachReplica(replica.mListener);
+        replica.load(snapshot);
+        return replica;
+    }
+
+    private PrefReplica(IPref remote) {
+        mRemote = remote;
+    }
+
+    private void load(Bundle snapshot) {
+        if (snapshot == null) {
+            return;
+        }
+        long version = snapshot.getLong(PrefImpl.KEY_VERSION);
+        Bundle categories = snapshot.getBundle(PrefImpl.KEY_CATEGORIES);
+        synchronized (mCategories) {
+            if (categories != null) {
+                for (String category : categories.keySet()) {
+                    Bundle bundle = categories.getBundle(category);
+                    if (bundle == null) {
+                        continue;
+                    }
+                    for (String key : bundle.keySet()) {
+                        // 快照之后的通知可能已先到达，不能覆盖
+                        putLocked(category, key, bundle.getString(key), version);
+                    }
+                }
+            }
+            if (version > mVersion) {
+                mVersion = version;
+            }
+        }
+        if (LOG) {
+            LogDebug.d(PLUGIN_TAG, "pref replica: attached, version=" + version);
+        }
+    }
+
+    private void apply(String category, String key, String value, long version) {
+        synchronized (mCategories) {
+            putLocked(category, key, value, version);
+            if (version > mVersion) {
+                mVersion = version;
+            }
+        }
+    }
+
+    private void putLocked(String category, String key, String value, long version) {
+        HashMap<String, Value> values = mCategories.get(category);
+        if (values == null) {
+            values = new HashMap<>();
+            mCategories.put(category, values);
+        }
+        Value old = values.get(key);
+        if (old != null && old.version >= version) {
+            return;
+        }
+        values.put(key, new Value(value, version));
+    }
+
+    /**
+     * @return 已收到的最大版本号
+     */
+    public long getVersion() {
+        synchronized (mCategories) {
+            return mVersion;
+        }
+    }
+
+    @Override
+    public String get(String category, String key, String defValue) throws RemoteException {
+        synchronized (mCategories) {
+            HashMap<String, Value> values = mCategories.get(category);
+            if (values != null && values.containsKey(key)) {
+                return values.get(key).value;
+            }
+        }
+        return defValue;
+    }
+
+    @Override
+    public void set(String category, String key, String value) throws RemoteException {
+        update(category, key, value);
+    }
+
+    @Override
+    public long update(String category, String key, String value) throws RemoteException {
+        long version = mRemote.update(category, key, value);
+        apply(category, key, value, version);
+        return version;
+    }
+
+    @Override
+    public Bundle getAll(String category) throws RemoteException {
+        Bundle bundle = new Bundle();
+        synchronized (mCategories) {
+            HashMap<String, Value> values = mCategories.get(category);
+            if (values != null) {
+                for (Map.Entry<String, Value> e : values.entrySet()) {
+                    bundle.putString(e.getKey(), e.getValue().value);
+                }
+            }
+        }
+        return bundle;
+    }
+
+    @Override
+    public Bundle attachReplica(IPrefListener listener) throws RemoteException {
+        return mRemote.attachReplica(listener);
+    }
+
+    @Override
+    public IBinder asBinder() {
+        return mRemote.asBinder();
+    }
+
+    private static final class Value {
+
+        final String value;
+
+        final long version;
+
+        Value(String value, long version) {
+            this.value = value;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.qihoo360.mobilesafe.parser.manifest;
+
+import com.qihoo360.replugin.ext.parser.exception.ParserException;
+import com.qihoo360.replugin.ext.parser.parser.XmlStreamer;
+import com.qihoo360.replugin.ext.parser.struct.xml.Attribute;
+import com.qihoo360.replugin.ext.parser.struct.xml.XmlNamespaceEndTag;
+import com.qihoo360.replugin.ext.parser.struct.xml.XmlNamespaceStartTag;
+import com.qihoo360.replugin.ext.parser.struct.xml.XmlNodeEndTag;
+import com.qihoo360.replugin.ext.parser.struct.xml.XmlNodeStartTag;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 直接消费 BinaryXmlParser 的事件，生成组件及 IntentFilter
+ * <p>
+ * 以前需要先把二进制 AndroidManifest 转成 xml 文本，再交给 SAX 解析一遍；
+ * 现在二进制事件直接转交给 XmlHandler，省去中间文本及第二次解析。
+ *
+ * @author RePlugin Team
+ */
+class BinaryXmlHandler implements XmlStreamer {
+
+    private static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
+
+    private static final String ANDROID_PREFIX = "android";
+
+    private final XmlHandler mHandler;
+
+    /**
+     * HashMap<namespace uri, prefix>
+     */
+    private final Map<String, String> mPrefixes = new HashMap<>();
+
+    private final BinaryAttributes mAttributes = new BinaryAttributes();
+
+    BinaryXmlHandler(XmlHandler handler) {
+        mHandler = handler;
+    }
+
+    @Override
+    public void onStartTag(XmlNodeStartTag xmlNodeStartTag) {
+        String name = xmlNodeStartTag.getName();
+        mAttributes.reset(xmlNodeStartTag.getAttributes().value());
+        try {
+            mHandler.startElement(xmlNodeStartTag.getNamespace(), name, name, mAttributes);
+        } catch (SAXException e) {
+            throw new ParserException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void onEndTag(XmlNodeEndTag xmlNodeEndTag) {
+        String name = xmlNodeEndTag.getName();
+        try {
+            mHandler.endElement(xmlNodeEndTag.getNamespace(), name, name);
+        } catch (SAXException e) {
+            throw new ParserException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void onNamespaceStart(XmlNamespaceStartTag tag) {
+        if (tag.getUri() != null && tag.getPrefix() != null) {
+            mPrefixes.put(tag.getUri(), tag.getPrefix());
+        }
+    }
+
+    @Override
+    public void onNamespaceEnd(XmlNamespaceEndTag tag) {
+        if (tag.getUri() != null) {
+            mPrefixes.remove(tag.getUri());
+        }
+    }
+
+    private String getPrefix(String uri) {
+        if (uri == null || uri.isEmpty()) {
+            return null;
+        }
+        // XmlHandler 按 "android:xxx" 查找属性，不论插件声明的前缀是什么
+        if (ANDROID_NS.equals(uri)) {
+            return ANDROID_PREFIX;
+        }
+        String prefix = mPrefixes.get(uri);
+        return prefix != null ? prefix : uri;
+    }
+
+    /**
+     * 把二进制 xml 的属性包装成 SAX 的 Attributes，同一个对象在每个节点间复用
+     */
+    private class BinaryAttributes implements Attributes {
+
+        private Attribute[] mAttrs;
+
+        void reset(Attribute[] attrs) {
+            mAttrs = attrs;
+        }
+
+        @Override
+        public int getLength() {
+            return mAttrs == null ? 0 : mAttrs.length;
+        }
+
+        @Override
+        public String getURI(int index) {
+            Attribute attr = attrAt(index);
+            return attr != null ? attr.getNamespace() : null;
+        }
+
+        @Override
+        public String getLocalName(int index) {
+            Attribute attr = attrAt(index);
+            return attr != null ? attr.getName() : null;
+        }
+
+        @Override
+        public String getQName(int index) {
+            Attribute attr = attrAt(index);
+            if (attr == null) {
+                return null;
+            }
+            String prefix = getPrefix(attr.getNamespace());
+            return prefix == null ? attr.getName() : prefix + ":" + attr.getName();
+        }
+
+        @Override
+        public String getType(int index) {
+            return attrAt(index) != null ? "CDATA" : null;
+        }
+
+        @Override
+        public String getValue(int index) {
+            Attribute attr = attrAt(index);
+            return attr != null ? attr.getValue() : null;
+        }
+
+        @Override
+        public int getIndex(String uri, String localName) {
+            for (int i = 0; i < getLength(); i++) {
+                Attribute attr = mAttrs[i];
+                if (attr == null || attr.getName() == null) {
+                    continue;
+                }
+                if (attr.getName().equals(localName) && equals(uri, attr.getNamespace())) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int getIndex(String qName) {
+            if (qName == null) {
+                return -1;
+            }
+            int colon = qName.indexOf(':');
+            String prefix = colon >= 0 ? qName.substring(0, colon) : null;
+            String localName = colon >= 0 ? qName.substring(colon + 1) : qName;
+            for (int i = 0; i < getLength(); i++) {
+                Attribute attr = mAttrs[i];
+                if (attr == null || attr.getName() == null) {
+                    continue;
+                }
+                if (attr.getName().equals(localName) && equals(prefix, getPrefix(attr.getNamespace()))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public String getType(String uri, String localName) {
+            return getType(getIndex(uri, localName));
+        }
+
+        @Override
+        public String getType(String qName) {
+            return getType(getIndex(qName));
+        }
+
+        @Override
+        public String getValue(String uri, String localName) {
+            return getValue(getIndex(uri, localName));
+        }
+
+        @Override
+        public String getValue(String qName) {
+            return getValue(getIndex(qName));
+        }
+
+        private Attribute attrAt(int index) {
+            if (index < 0 || index >= getLength()) {
+                return null;
+            }
+            return mAttrs[index];
+        }
+
+        private boolean equals(String a, String b) {
+            if (a == null || a.isEmpty()) {
+                return b == null || b.isEmpty();
+            }
+            return a.equals(b);
+        }
+    }
+}
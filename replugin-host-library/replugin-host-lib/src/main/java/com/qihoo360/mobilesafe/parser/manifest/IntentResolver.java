@@ -0,0 +1,394 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.qihoo360.mobilesafe.parser.manifest;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
+
+import com.qihoo360.mobilesafe.parser.manifest.bean.ComponentBean;
+import com.qihoo360.replugin.helper.LogDebug;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.qihoo360.mobilesafe.parser.manifest.ManifestParser.TAG;
+import static com.qihoo360.replugin.helper.LogDebug.LOG;
+
+/**
+ * 某插件中某一类组件（Activity、Service）的 IntentFilter 倒排索引
+ * <p>
+ * 索引结构：action -> scheme（或无 scheme 时的 MIME 主类型）-> 候选列表；另保留一份全部 filter 的列表，供没有 action 的 Intent 使用。
+ * 候选列表按 priority 从高到低、同优先级按声明顺序排列，查找时只需对少量候选调用 IntentFilter.match，
+ * 不必再遍历插件的全部组件。category、host、path 等条件仍由 IntentFilter.match 做最终校验，保证语义不变。
+ * <p>
+ * 对象构建完成后不再修改，可在多个线程间共享；插件更新时整体替换（见 ManifestParser）。
+ *
+ * @author RePlugin Team
+ */
+final class IntentResolver {
+
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+    static final IntentResolver EMPTY = new IntentResolver(Collections.<String, Bucket>emptyMap(), NO_ENTRIES);
+
+    /**
+     * 匹配任意 MIME 类型（*&#47;*）的 key
+     */
+    private static final String ANY_TYPE = "*";
+
+    private static final Comparator<Entry> PRIORITY_COMPARATOR = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry lhs, Entry rhs) {
+            return compareEntry(lhs, rhs);
+        }
+    };
+
+    /**
+     * HashMap<action, Bucket>
+     */
+    private final Map<String, Bucket> mActions;
+
+    /**
+     * 所有 filter（包括没有声明 action 的），按 priority 排序。
+     * IntentFilter.match 对 action 为 null 的 Intent 不检查 action，因此这类 Intent 需要逐个匹配
+     */
+    private final Entry[] mAll;
+
+    private IntentResolver(Map<String, Bucket> actions, Entry[] all) {
+        mActions = actions;
+        mAll = all;
+    }
+
+    /**
+     * 根据组件列表构建索引
+     *
+     * @param components 从 manifest 中解析到的组件列表（按声明顺序）
+     */
+    static IntentResolver build(List<ComponentBean> components) {
+        if (components == null || components.isEmpty()) {
+            return EMPTY;
+        }
+
+        Map<String, BucketBuilder> builders = new HashMap<>();
+        List<Entry> all = new ArrayList<>();
+        int order = 0;
+        for (ComponentBean component : components) {
+            if (component.intentFilters == null) {
+                continue;
+            }
+            for (IntentFilter filter : component.intentFilters) {
+                Entry entry = new Entry(component.name, filter, order++);
+                all.add(entry);
+                Iterator<String> actions = filter.actionsIterator();
+                while (actions != null && actions.hasNext()) {
+                    String action = actions.next();
+                    BucketBuilder builder = builders.get(action);
+                    if (builder == null) {
+                        builder = new BucketBuilder();
+                        builders.put(action, builder);
+                    }
+                    builder.add(entry);
+                }
+            }
+        }
+
+        if (all.isEmpty()) {
+            return EMPTY;
+        }
+        Map<String, Bucket> buckets = new HashMap<>(builders.size() * 4 / 3 + 1);
+        for (Map.Entry<String, BucketBuilder> e : builders.entrySet()) {
+            buckets.put(e.getKey(), e.getValue().build());
+        }
+        return new IntentResolver(buckets, sorted(all));
+    }
+
+    /**
+     * 索引中出现的所有 action
+     */
+    Set<String> actions() {
+        return mActions.keySet();
+    }
+
+    /**
+     * 根据 Intent 查找第一个匹配的组件（按 priority 从高到低）
+     *
+     * @return 组件名称，没有匹配的组件时返回 null
+     */
+    String match(Context context, Intent intent) {
+        final String action = intent.getAction();
+        if (action == null) {
+            // IntentFilter.match 遇到空 action 时跳过 action 的检查，只能逐个匹配
+            return match(mAll, action, intent.resolveTypeIfNeeded(context.getContentResolver()),
+                    intent.getScheme(), intent.getData(), intent.getCategories());
+        }
+        Bucket bucket = mActions.get(action);
+        if (bucket == null) {
+            return null;
+        }
+
+        final Uri data = intent.getData();
+        final String scheme = intent.getScheme();
+
+        Entry[] bySchemes = bucket.schemes.get(scheme != null ? scheme : "");
+        Entry[] noData = null;
+        Entry[] byType = null;
+        Entry[] anyType = null;
+
+        // resolveTypeIfNeeded 对 content:// 会跨进程查询，只在确实有候选时才调用
+        String type = null;
+        boolean typeResolved = false;
+
+        // 未声明 scheme 的 filter 只能匹配没有 data、或 scheme 为 content/file 的 Intent（与 IntentFilter.matchData 一致）
+        if (scheme == null || scheme.isEmpty() || "content".equals(scheme) || "file".equals(scheme)) {
+            if (data == null && intent.getType() == null) {
+                noData = bucket.noData;
+            }
+            if (!bucket.types.isEmpty()) {
+                type = intent.resolveTypeIfNeeded(context.getContentResolver());
+                typeResolved = true;
+                if (type != null) {
+                    String major = majorType(type);
+                    if (ANY_TYPE.equals(major)) {
+                        // Intent 的类型为 *&#47;* 时，声明了任意 MIME 的 filter 都可能匹配
+                        byType = bucket.allTypes;
+                    } else {
+                        byType = bucket.types.get(major);
+                        anyType = bucket.types.get(ANY_TYPE);
+                    }
+                }
+            }
+        }
+
+        Entry[] candidates = merge(bySchemes, noData, byType, anyType);
+        if (candidates.length == 0) {
+            return null;
+        }
+        if (!typeResolved) {
+            type = intent.resolveTypeIfNeeded(context.getContentResolver());
+        }
+
+        return match(candidates, action, type, scheme, data, intent.getCategories());
+    }
+
+    private static String match(Entry[] candidates, String action, String type, String scheme, Uri data, Set<String> categories) {
+        for (Entry entry : candidates) {
+            int match = entry.filter.match(action, type, scheme, data, categories, "ComponentList");
+            if (match >= 0) {
+                if (LOG) {
+                    LogDebug.d(TAG, "IntentFilter 匹配成功: " + entry.component);
+                }
+                return entry.component;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 合并多个已排序的候选列表，保持 priority 顺序，并去掉重复的 filter
+     */
+    private static Entry[] merge(Entry[]... lists) {
+        Entry[] only = null;
+        int total = 0;
+        int nonEmpty = 0;
+        for (Entry[] list : lists) {
+            if (list != null && list.length > 0) {
+                only = list;
+                total += list.length;
+                nonEmpty++;
+            }
+        }
+        if (nonEmpty == 0) {
+            return NO_ENTRIES;
+        } else if (nonEmpty == 1) {
+            return only;
+        }
+
+        Entry[] result = new Entry[total];
+        int[] pos = new int[lists.length];
+        int count = 0;
+        while (true) {
+            int best = -1;
+            for (int i = 0; i < lists.length; i++) {
+                Entry[] list = lists[i];
+                if (list == null || pos[i] >= list.length) {
+                    continue;
+                }
+                if (best < 0 || compareEntry(list[pos[i]], lists[best][pos[best]]) < 0) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            Entry entry = lists[best][pos[best]++];
+            if (count == 0 || result[count - 1] != entry) {
+                result[count++] = entry;
+            }
+        }
+        return count == total ? result : Arrays.copyOf(result, count);
+    }
+
+    private static int compareEntry(Entry lhs, Entry rhs) {
+        if (lhs.priority != rhs.priority) {
+            return lhs.priority > rhs.priority ? -1 : 1;
+        }
+        return lhs.order < rhs.order ? -1 : (lhs.order == rhs.order ? 0 : 1);
+    }
+
+    /**
+     * 取 MIME 的主类型，如 image/png -> image
+     * <p>
+     * IntentFilter 会把 image/* 存成 image、把 *&#47;* 存成 *，因此两边取法一致即可
+     */
+    private static String majorType(String type) {
+        int slash = type.indexOf('/');
+        return slash > 0 ? type.substring(0, slash) : type;
+    }
+
+    private static Map<String, Entry[]> toArrays(Map<String, List<Entry>> lists) {
+        if (lists.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Entry[]> arrays = new HashMap<>(lists.size() * 4 / 3 + 1);
+        for (Map.Entry<String, List<Entry>> e : lists.entrySet()) {
+            arrays.put(e.getKey(), sorted(e.getValue()));
+        }
+        return arrays;
+    }
+
+    private static Entry[] sorted(List<Entry> list) {
+        if (list.isEmpty()) {
+            return NO_ENTRIES;
+        }
+        Entry[] array = list.toArray(new Entry[list.size()]);
+        // 稳定排序，同优先级保持声明顺序
+        Arrays.sort(array, PRIORITY_COMPARATOR);
+        return array;
+    }
+
+    private static void addTo(Map<String, List<Entry>> map, String key, Entry entry) {
+        List<Entry> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<>(2);
+            map.put(key, list);
+        }
+        addTo(list, entry);
+    }
+
+    private static void addTo(List<Entry> list, Entry entry) {
+        // 同一个 filter 可能声明多个同主类型的 MIME，只保留一份
+        if (list.isEmpty() || list.get(list.size() - 1) != entry) {
+            list.add(entry);
+        }
+    }
+
+    /**
+     * 一个 IntentFilter 及其所属组件
+     */
+    static final class Entry {
+
+        final String component;
+
+        final IntentFilter filter;
+
+        final int priority;
+
+        /**
+         * 在 manifest 中的声明顺序
+         */
+        final int order;
+
+        Entry(String component, IntentFilter filter, int order) {
+            this.component = component;
+            this.filter = filter;
+            this.priority = filter.getPriority();
+            this.order = order;
+        }
+    }
+
+    /**
+     * 某个 action 下的所有候选
+     */
+    private static final class Bucket {
+
+        /**
+         * 声明了 scheme 的 filter，HashMap<scheme, 候选列表>
+         */
+        final Map<String, Entry[]> schemes;
+
+        /**
+         * 既没有 scheme 也没有 MIME 的 filter
+         */
+        final Entry[] noData;
+
+        /**
+         * 没有 scheme 但声明了 MIME 的 filter，HashMap<MIME 主类型, 候选列表>
+         */
+        final Map<String, Entry[]> types;
+
+        /**
+         * types 中所有候选合并后的列表，供类型为 *&#47;* 的 Intent 使用
+         */
+        final Entry[] allTypes;
+
+        Bucket(Map<String, Entry[]> schemes, Entry[] noData, Map<String, Entry[]> types) {
+            this.schemes = schemes;
+            this.noData = noData;
+            this.types = types;
+            this.allTypes = merge(types.values().toArray(new Entry[types.size()][]));
+        }
+    }
+
+    private static final class BucketBuilder {
+
+        private final Map<String, List<Entry>> mSchemes = new HashMap<>();
+
+        private final List<Entry> mNoData = new ArrayList<>();
+
+        private final Map<String, List<Entry>> mTypes = new HashMap<>();
+
+        void add(Entry entry) {
+            IntentFilter filter = entry.filter;
+            int schemes = filter.countDataSchemes();
+            int types = filter.countDataTypes();
+            if (schemes > 0) {
+                for (int i = 0; i < schemes; i++) {
+                    addTo(mSchemes, filter.getDataScheme(i), entry);
+                }
+            } else if (types > 0) {
+                for (int i = 0; i < types; i++) {
+                    addTo(mTypes, majorType(filter.getDataType(i)), entry);
+                }
+            } else {
+                addTo(mNoData, entry);
+            }
+        }
+
+        Bucket build() {
+            return new Bucket(toArrays(mSchemes), sorted(mNoData), toArrays(mTypes));
+        }
+    }
+}
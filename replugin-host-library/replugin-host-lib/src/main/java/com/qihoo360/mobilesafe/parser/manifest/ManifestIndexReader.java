@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.qihoo360.mobilesafe.parser.manifest;
+
+import android.content.IntentFilter;
+
+import com.qihoo360.mobilesafe.parser.manifest.bean.ComponentBean;
+import com.qihoo360.mobilesafe.parser.manifest.bean.DataBean;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 解析编译期由 replugin-plugin-gradle 写入 apk comment 的组件索引（二进制格式）
+ * <p>
+ * 格式（LITTLE_ENDIAN）：
+ * <pre>
+ * u8  版本号
+ * u16 字符串个数，其后每个字符串为 [u16 字节数][UTF-8 字节]
+ * u16 Activity 个数，其后为组件列表
+ * u16 Service 个数，其后为组件列表
+ * u16 Receiver 个数，其后为组件列表
+ *
+ * 组件：      [u16 name][u16 process][u8 filter 个数][filter...]
+ * filter：    [i32 priority][u8 action 个数][u16...][u8 category 个数][u16...][u8 data 个数][data...]
+ * data：      [u16 scheme][u16 host][u16 port][u16 path][u16 pathPrefix][u16 pathPattern][u16 mimeType]
+ * </pre>
+ * 所有字符串都以其在字符串表中的下标表示，{@link #NO_STRING} 表示不存在。
+ * 字符串直接从 ByteBuffer 的底层数组解码，不做额外拷贝。
+ *
+ * @author RePlugin Team
+ */
+class ManifestIndexReader {
+
+    /**
+     * 当前支持的索引版本
+     */
+    static final int VERSION = 1;
+
+    static final int NO_STRING = 0xFFFF;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer mBuffer;
+
+    private String[] mStrings;
+
+    private List<ComponentBean> mActivities;
+    private List<ComponentBean> mServices;
+    private List<ComponentBean> mReceivers;
+
+    ManifestIndexReader(ByteBuffer buffer) {
+        mBuffer = buffer.duplicate();
+        mBuffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * 解析索引
+     *
+     * @return 版本不支持或数据损坏时返回 false
+     */
+    boolean read() {
+        try {
+            int version = mBuffer.get() & 0xFF;
+            if (version != VERSION) {
+                return false;
+            }
+            readStrings();
+            mActivities = readComponents();
+            mServices = readComponents();
+            mReceivers = readComponents();
+            return true;
+        } catch (RuntimeException e) {
+            // BufferUnderflowException、IndexOutOfBoundsException 等，说明索引已损坏
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    List<ComponentBean> getActivities() {
+        return mActivities;
+    }
+
+    List<ComponentBean> getServices() {
+        return mServices;
+    }
+
+    List<ComponentBean> getReceivers() {
+        return mReceivers;
+    }
+
+    private void readStrings() {
+        int count = readUShort();
+        mStrings = new String[count];
+        for (int i = 0; i < count; i++) {
+            int len = readUShort();
+            if (len > mBuffer.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            if (mBuffer.hasArray()) {
+                int pos = mBuffer.position();
+                mStrings[i] = new String(mBuffer.array(), mBuffer.arrayOffset() + pos, len, UTF_8);
+                mBuffer.position(pos + len);
+            } else {
+                byte[] bytes = new byte[len];
+                mBuffer.get(bytes);
+                mStrings[i] = new String(bytes, UTF_8);
+            }
+        }
+    }
+
+    private List<ComponentBean> readComponents() {
+        int count = readUShort();
+        List<ComponentBean> components = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ComponentBean bean = new ComponentBean();
+            bean.name = readString();
+            bean.process = readString();
+
+            int filterCount = mBuffer.get() & 0xFF;
+            bean.intentFilters = new ArrayList<>(filterCount);
+            for (int j = 0; j < filterCount; j++) {
+                bean.intentFilters.add(readFilter());
+            }
+            components.add(bean);
+        }
+        return components;
+    }
+
+    private IntentFilter readFilter() {
+        IntentFilter filter = new IntentFilter();
+        filter.setPriority(mBuffer.getInt());
+
+        List<String> actions = readStringList();
+        List<String> categories = readStringList();
+
+        int dataCount = mBuffer.get() & 0xFF;
+        List<DataBean> dataBeans = null;
+        if (dataCount > 0) {
+            dataBeans = new ArrayList<>(dataCount);
+            for (int i = 0; i < dataCount; i++) {
+                DataBean bean = new DataBean();
+                bean.scheme = readString();
+                bean.host = readString();
+                bean.port = readString();
+                bean.path = readString();
+                bean.pathPrefix = readString();
+                bean.pathPattern = readString();
+                bean.mimeType = readString();
+                dataBeans.add(bean);
+            }
+        }
+
+        // 与 xml 解析走同一套填充逻辑，保证两种来源得到的 IntentFilter 一致
+        XmlHandler.fillFilter(filter, actions, categories, dataBeans);
+        return filter;
+    }
+
+    private List<String> readStringList() {
+        int count = mBuffer.get() & 0xFF;
+        if (count == 0) {
+            return null;
+        }
+        List<String> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(readString());
+        }
+        return list;
+    }
+
+    private String readString() {
+        int idx = readUShort();
+        if (idx == NO_STRING) {
+            return null;
+        }
+        return mStrings[idx];
+    }
+
+    private int readUShort() {
+        return mBuffer.getShort() & 0xFFFF;
+    }
+}
@@ -16,24 +16,30 @@
 
 package com.qihoo360.mobilesafe.parser.manifest;
 
+import android.content.Context;
+import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.PatternMatcher;
 
 import com.qihoo360.mobilesafe.parser.manifest.bean.ComponentBean;
+import com.qihoo360.replugin.ext.parser.ApkParser;
+import com.qihoo360.replugin.component.utils.IntentResolveCache;
 import com.qihoo360.replugin.helper.LogDebug;
 import com.qihoo360.replugin.model.PluginInfo;
 
 import org.xml.sax.InputSource;
 import org.xml.sax.XMLReader;
 
+import java.io.IOException;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
@@ -48,22 +54,27 @@ public enum ManifestParser {
 
     public static final String TAG = "ms-parser";
 
+    /**
+     * 编译期写入 assets 的组件索引，与 replugin-plugin-gradle 中 ManifestIndexWriter.ASSET_NAME 一致
+     */
+    private static final String MANIFEST_INDEX_ASSET = "assets/replugin_manifest.idx";
+
     /**
      * 因为多插件中的组件可能存在重名，所以这里加了一层插件的对应关系。
      * <p>
-     * HashMap<插件名称, HashMap<插件内组件名称，List<组件的 IntentFilter>>>
+     * HashMap<插件名称（包名及别名）, 插件内所有组件的 IntentFilter 及索引>
+     * <p>
+     * 插件的解析结果在构建完成后才整体放入，查询时无需加锁，也不会看到解析了一半的数据
      */
-    private Map<String, Map<String, List<IntentFilter>>> mPluginActivityInfoMap = new HashMap<>();
-    private Map<String, Map<String, List<IntentFilter>>> mPluginServiceInfoMap = new HashMap<>();
-    private Map<String, Map<String, List<IntentFilter>>> mPluginReceiverInfoMap = new HashMap<>();
+    private final Map<String, PluginFilters> mPluginFiltersMap = new ConcurrentHashMap<>();
 
     /**
      * 保存 action 与 组件及 filters 的对应关系
      * <p>
      * HashMap<action, Set<插件名称>>
      */
-    private Map<String, Set<String>> mActivityActionPluginsMap = new HashMap<>();
-    private Map<String, Set<String>> mServiceActionPluginsMap = new HashMap<>();
+    private final Map<String, Set<String>> mActivityActionPluginsMap = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> mServiceActionPluginsMap = new ConcurrentHashMap<>();
 
     /**
      * 解析 AndroidManifest
@@ -73,48 +84,148 @@ public enum ManifestParser {
      */
     public void parse(PluginInfo pli, String manifestStr) {
         XmlHandler handler = parseManifest(manifestStr);
+        parse(pli, handler);
+    }
+
+    /**
+     * 直接从 Apk 中解析组件及 IntentFilter，不生成中间的 xml 文本
+     * <p>
+     * 优先读取 assets 中编译期生成的组件索引（apk 使用 v2 签名时索引只写在这里），没有时再解析二进制的 AndroidManifest，
+     * 两步共用同一个 ApkParser，Apk 只打开一次
+     *
+     * @param pli     插件信息
+     * @param apkFile apk 文件路径
+     * @return 是否解析成功
+     */
+    public boolean parseFromApk(PluginInfo pli, String apkFile) {
+        XmlHandler handler = new XmlHandler();
+        boolean success = false;
+
+        ApkParser parser = null;
+        try {
+            parser = new ApkParser(apkFile);
+            byte[] index = parser.getFileData(MANIFEST_INDEX_ASSET);
+            if (index != null && parseIndex(pli, ByteBuffer.wrap(index))) {
+                if (LOG) {
+                    LogDebug.d(TAG, "parseFromApk: read index from assets, plugin=" + pli.getName());
+                }
+                return true;
+            }
+            parser.parseManifest(new BinaryXmlHandler(handler));
+            success = true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            // 丢弃解析了一半的组件，按没有组件登记
+            handler = new XmlHandler();
+        } finally {
+            if (parser != null) {
+                try {
+                    parser.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        // 即使解析失败也要登记插件（与解析空字符串时一致），以免后续查询时拿到 null
+        parse(pli, handler);
+        return success;
+    }
 
-        Map<String, List<IntentFilter>> activityFilterMap = new HashMap<>();
-        putToMap(mPluginActivityInfoMap, activityFilterMap, pli);
-        parseComponent(pli.getName(), activityFilterMap, handler.getActivities(), mActivityActionPluginsMap);
+    /**
+     * 从编译期生成的二进制组件索引中解析组件及 IntentFilter
+     *
+     * @param pli   插件信息
+     * @param index apk comment 中的索引数据，见 ManifestIndexReader
+     * @return 索引版本不支持或数据损坏时返回 false，此时不做任何登记，调用方应使用其它方式解析
+     */
+    public boolean parseIndex(PluginInfo pli, ByteBuffer index) {
+        ManifestIndexReader reader = new ManifestIndexReader(index);
+        if (!reader.read()) {
+            return false;
+        }
+        parse(pli, reader.getActivities(), reader.getServices(), reader.getReceivers());
+        return true;
+    }
 
-        Map<String, List<IntentFilter>> serviceFilterMap = new HashMap<>();
-        putToMap(mPluginServiceInfoMap, serviceFilterMap, pli);
-        parseComponent(pli.getName(), serviceFilterMap, handler.getServices(), mServiceActionPluginsMap);
+    private void parse(PluginInfo pli, XmlHandler handler) {
+        parse(pli, handler.getActivities(), handler.getServices(), handler.getReceivers());
+    }
 
-        Map<String, List<IntentFilter>> receiverFilterMap = new HashMap<>();
-        putToMap(mPluginReceiverInfoMap, receiverFilterMap, pli);
-        parseComponent(pli.getName(), receiverFilterMap, handler.getReceivers(), null);
+    private void parse(PluginInfo pli, List<ComponentBean> activities, List<ComponentBean> services, List<ComponentBean> receivers) {
+        PluginFilters filters = new PluginFilters(
+                buildFilterMap(activities), IntentResolver.build(activities),
+                buildFilterMap(services), IntentResolver.build(services),
+                buildFilterMap(receivers));
+        update(pli, filters);
 
         /* 打印日志 */
         if (LOG) {
-            printFilters(activityFilterMap, serviceFilterMap, receiverFilterMap);
+            printFilters(filters.activities, filters.services, filters.receivers);
+        }
+    }
+
+    /**
+     * 移除插件的组件信息（插件卸载时调用）
+     *
+     * @param pli 插件信息
+     */
+    public void remove(PluginInfo pli) {
+        update(pli, null);
+    }
+
+    /**
+     * 替换（或移除）插件的组件信息。写操作很少，串行执行即可；读操作不加锁
+     */
+    private synchronized void update(PluginInfo pli, PluginFilters filters) {
+        String plugin = pli.getName();
+        PluginFilters old = mPluginFiltersMap.get(plugin);
+        if (old != null) {
+            removeActionPlugins(plugin, old.activityResolver, mActivityActionPluginsMap);
+            removeActionPlugins(plugin, old.serviceResolver, mServiceActionPluginsMap);
+        }
+
+        if (filters != null) {
+            putToMap(filters, pli);
+            putActionPlugins(plugin, filters.activityResolver, mActivityActionPluginsMap);
+            putActionPlugins(plugin, filters.serviceResolver, mServiceActionPluginsMap);
+        } else {
+            removeFromMap(pli.getPackageName());
+            removeFromMap(pli.getAlias());
+        }
+
+        // 组件信息变化后，之前缓存的 Intent 解析结果不再可信
+        IntentResolveCache.invalidate();
+    }
+
+    private void putToMap(PluginFilters filters, PluginInfo pi) {
+        if (pi.getPackageName() != null) {
+            mPluginFiltersMap.put(pi.getPackageName(), filters);
+        }
+        if (pi.getAlias() != null) {
+            mPluginFiltersMap.put(pi.getAlias(), filters);
         }
     }
 
-    private void putToMap(Map<String, Map<String, List<IntentFilter>>> infoMap, Map<String, List<IntentFilter>> filterMap, PluginInfo pi) {
-        infoMap.put(pi.getPackageName(), filterMap);
-        infoMap.put(pi.getAlias(), filterMap);
+    private void removeFromMap(String key) {
+        if (key != null) {
+            mPluginFiltersMap.remove(key);
+        }
     }
 
     /**
-     * parseComponent
+     * 生成 HashMap<组件名称, List<IntentFilters>>
      *
-     * @param plugin         插件名称
-     * @param filterMap      HashMap<组件名称, List<IntentFilters>>
      * @param componentBeans 从 manifest 中解析到的组件列表
      */
-    private void parseComponent(String plugin,
-                                Map<String, List<IntentFilter>> filterMap,
-                                List<ComponentBean> componentBeans,
-                                Map<String, Set<String>> actionPluginsMap) {
-
+    private Map<String, List<IntentFilter>> buildFilterMap(List<ComponentBean> componentBeans) {
+        Map<String, List<IntentFilter>> filterMap = new HashMap<>();
         if (componentBeans != null) {
             for (ComponentBean componentBean : componentBeans) {
                 doFillFilters(componentBean, filterMap);
-                doFillActionPlugins(plugin, componentBean, actionPluginsMap);
             }
         }
+        return Collections.unmodifiableMap(filterMap);
     }
 
     private void doFillFilters(ComponentBean b, Map<String, List<IntentFilter>> filterMap) {
@@ -131,23 +242,27 @@ public enum ManifestParser {
     }
 
     /**
-     * 将 filters 中 action 和组件的对应关系保存起来
+     * 将索引中 action 和插件的对应关系保存起来
      */
-    private void doFillActionPlugins(String plugin, ComponentBean componentBean, Map<String, Set<String>> actionPluginsMap) {
-        if (actionPluginsMap == null || componentBean.intentFilters == null) {
-            return;
+    private void putActionPlugins(String plugin, IntentResolver resolver, Map<String, Set<String>> actionPluginsMap) {
+        for (String action : resolver.actions()) {
+            Set<String> plugins = actionPluginsMap.get(action);
+            if (plugins == null) {
+                plugins = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+                actionPluginsMap.put(action, plugins);
+            }
+            plugins.add(plugin);
         }
+    }
 
-        for (IntentFilter filter : componentBean.intentFilters) {
-            Iterator<String> iterator = filter.actionsIterator();
-            while (iterator.hasNext()) {
-                String action = iterator.next();
-                Set<String> plugins = actionPluginsMap.get(action);
-                if (plugins == null) {
-                    plugins = new HashSet<>();
-                    actionPluginsMap.put(action, plugins);
+    private void removeActionPlugins(String plugin, IntentResolver resolver, Map<String, Set<String>> actionPluginsMap) {
+        for (String action : resolver.actions()) {
+            Set<String> plugins = actionPluginsMap.get(action);
+            if (plugins != null) {
+                plugins.remove(plugin);
+                if (plugins.isEmpty()) {
+                    actionPluginsMap.remove(action);
                 }
-                plugins.add(plugin);
             }
         }
     }
@@ -175,15 +290,44 @@ public enum ManifestParser {
     }
 
     public Map<String, List<IntentFilter>> getActivityFilterMap(String plugin) {
-        return mPluginActivityInfoMap.get(plugin);
+        PluginFilters filters = mPluginFiltersMap.get(plugin);
+        return filters != null ? filters.activities : null;
     }
 
     public Map<String, List<IntentFilter>> getServiceFilterMap(String plugin) {
-        return mPluginServiceInfoMap.get(plugin);
+        PluginFilters filters = mPluginFiltersMap.get(plugin);
+        return filters != null ? filters.services : null;
     }
 
     public Map<String, List<IntentFilter>> getReceiverFilterMap(String plugin) {
-        return mPluginReceiverInfoMap.get(plugin);
+        PluginFilters filters = mPluginFiltersMap.get(plugin);
+        return filters != null ? filters.receivers : null;
+    }
+
+    /**
+     * 在插件的 Activity 中查找第一个（按 priority 从高到低）与 Intent 匹配的组件
+     *
+     * @param context Context
+     * @param plugin  插件名称
+     * @param intent  调用方传来的 Intent
+     * @return Activity 名称，插件不存在或没有匹配的组件时返回 null
+     */
+    public String matchActivity(Context context, String plugin, Intent intent) {
+        PluginFilters filters = mPluginFiltersMap.get(plugin);
+        return filters != null ? filters.activityResolver.match(context, intent) : null;
+    }
+
+    /**
+     * 在插件的 Service 中查找第一个（按 priority 从高到低）与 Intent 匹配的组件
+     *
+     * @param context Context
+     * @param plugin  插件名称
+     * @param intent  调用方传来的 Intent
+     * @return Service 名称，插件不存在或没有匹配的组件时返回 null
+     */
+    public String matchService(Context context, String plugin, Intent intent) {
+        PluginFilters filters = mPluginFiltersMap.get(plugin);
+        return filters != null ? filters.serviceResolver.match(context, intent) : null;
     }
 
     /**
@@ -335,4 +479,30 @@ public enum ManifestParser {
         builder.append("]");
         return builder.toString();
     }
+
+    /**
+     * 某插件所有组件的 IntentFilter 及索引，构建完成后不再修改
+     */
+    private static final class PluginFilters {
+
+        /**
+         * HashMap<插件内组件名称，List<组件的 IntentFilter>>
+         */
+        final Map<String, List<IntentFilter>> activities;
+        final Map<String, List<IntentFilter>> services;
+        final Map<String, List<IntentFilter>> receivers;
+
+        final IntentResolver activityResolver;
+        final IntentResolver serviceResolver;
+
+        PluginFilters(Map<String, List<IntentFilter>> activities, IntentResolver activityResolver,
+                      Map<String, List<IntentFilter>> services, IntentResolver serviceResolver,
+                      Map<String, List<IntentFilter>> receivers) {
+            this.activities = activities;
+            this.activityResolver = activityResolver;
+            this.services = services;
+            this.serviceResolver = serviceResolver;
+            this.receivers = receivers;
+        }
+    }
 }
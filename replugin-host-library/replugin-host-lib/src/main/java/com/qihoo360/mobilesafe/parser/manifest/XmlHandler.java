@@ -75,6 +75,7 @@ class XmlHandler extends DefaultHandler {
                 filters = new ArrayList<>();
                 curComponent.intentFilters = filters;
                 curComponent.name = repairAttrName(attributes.getValue("android:name"));
+                curComponent.process = attributes.getValue("android:process");
                 break;
 
             case "service":
@@ -85,6 +86,7 @@ class XmlHandler extends DefaultHandler {
                 filters = new ArrayList<>();
                 curComponent.intentFilters = filters;
                 curComponent.name = repairAttrName(attributes.getValue("android:name"));
+                curComponent.process = attributes.getValue("android:process");
                 break;
 
             case "receiver":
@@ -95,10 +97,12 @@ class XmlHandler extends DefaultHandler {
                 filters = new ArrayList<>();
                 curComponent.intentFilters = filters;
                 curComponent.name = repairAttrName(attributes.getValue("android:name"));
+                curComponent.process = attributes.getValue("android:process");
                 break;
 
             case "intent-filter":
                 curFilter = new IntentFilter();
+                curFilter.setPriority(parsePriority(attributes.getValue("android:priority")));
                 filters.add(curFilter);
                 break;
 
@@ -140,40 +144,7 @@ class XmlHandler extends DefaultHandler {
 
         switch (qName) {
             case "intent-filter":
-                if (curActions != null) {
-                    for (String action : curActions) {
-                        curFilter.addAction(action);
-                    }
-                }
-                if (curCategories != null) {
-                    for (String cate : curCategories) {
-                        curFilter.addCategory(cate);
-                    }
-                }
-
-                if (curDataBeans != null) {
-                    for (DataBean bean : curDataBeans) {
-                        if (!TextUtils.isEmpty(bean.scheme)) {
-                            curFilter.addDataScheme(bean.scheme);
-                        }
-
-                        if (!TextUtils.isEmpty(bean.host) && !TextUtils.isEmpty(bean.port)) {
-                            curFilter.addDataAuthority(bean.host, bean.port);
-                        }
-
-                        if (!TextUtils.isEmpty(bean.path)) {
-                            curFilter.addDataPath(bean.path, bean.getPatternMatcherType());
-                        }
-
-                        try {
-                            if (!TextUtils.isEmpty(bean.mimeType)) {
-                                curFilter.addDataType(bean.mimeType);
-                            }
-                        } catch (IntentFilter.MalformedMimeTypeException e) {
-                            e.printStackTrace();
-                        }
-                    }
-                }
+                fillFilter(curFilter, curActions, curCategories, curDataBeans);
 
                 curActions = null;
                 curCategories = null;
@@ -191,6 +162,60 @@ class XmlHandler extends DefaultHandler {
         }
     }
 
+    /**
+     * 将 intent-filter 节点中收集到的 action、category、data 填充到 IntentFilter 中
+     */
+    static void fillFilter(IntentFilter filter, List<String> actions, List<String> categories, List<DataBean> dataBeans) {
+        if (actions != null) {
+            for (String action : actions) {
+                filter.addAction(action);
+            }
+        }
+        if (categories != null) {
+            for (String cate : categories) {
+                filter.addCategory(cate);
+            }
+        }
+
+        if (dataBeans != null) {
+            for (DataBean bean : dataBeans) {
+                if (!TextUtils.isEmpty(bean.scheme)) {
+                    filter.addDataScheme(bean.scheme);
+                }
+
+                if (!TextUtils.isEmpty(bean.host) && !TextUtils.isEmpty(bean.port)) {
+                    filter.addDataAuthority(bean.host, bean.port);
+                }
+
+                if (!TextUtils.isEmpty(bean.path)) {
+                    filter.addDataPath(bean.path, bean.getPatternMatcherType());
+                }
+
+                try {
+                    if (!TextUtils.isEmpty(bean.mimeType)) {
+                        filter.addDataType(bean.mimeType);
+                    }
+                } catch (IntentFilter.MalformedMimeTypeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * 解析 android:priority，非法值按 0 处理
+     */
+    private static int parsePriority(String val) {
+        if (TextUtils.isEmpty(val)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(val);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     /**
      * 如果 android:name 中未包含 pkg，则添加 pkg
      *
@@ -26,6 +26,7 @@ import java.util.List;
 public class ComponentBean {
 
     public String name;
+    public String process;
     public List<IntentFilter> intentFilters;
 
     @Override
@@ -28,12 +28,10 @@ import android.util.Log;
 
 import com.qihoo360.mobilesafe.core.BuildConfig;
 import com.qihoo360.replugin.IBinderGetter;
+import com.qihoo360.replugin.base.BinderStats;
 import com.qihoo360.replugin.base.IPC;
 
-import java.lang.ref.SoftReference;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.PrintWriter;
 
 /**
  * 方便的以同步调用的方式获取一个服务实现的接口类
@@ -50,14 +48,10 @@ public final class QihooServiceManager {
 
     private static IServiceChannel sServerChannel;
 
-    private static Map<String, SoftReference<IBinder>> sCache;
+    private static final ServiceBinderCache sCache = new ServiceBinderCache();
 
     private static final IBinder PROCESS_DEATH_AGENT = new Binder();
 
-    static {
-        sCache = Collections.synchronizedMap(new HashMap<String, SoftReference<IBinder>>());
-    }
-
     /**
      * 获取已注册服务的IBinder对象，前提是该服务是静态服务，即默认一直存在，或者自己已经启动并且向我们注册过；
      * 注意不能通过此借口获取一个插件的服务，除非明确知道该插件的服务已经主动注册过，否则使用getPluginService()
@@ -66,52 +60,36 @@ public final class QihooServiceManager {
      * @param serviceName 请求获取的service名称
      * @return 所请求的service实现对象
      */
-    public static IBinder getService(Context context, String serviceName) {
+    public static IBinder getService(final Context context, String serviceName) {
         if (DEBUG) {
             Log.d(TAG, "[getService] begin = " + SystemClock.elapsedRealtime());
         }
 
-        IBinder service = null;
-
         /**
-         * 先考虑本地缓存
+         * 先考虑本地缓存（服务所在进程退出时缓存自动失效，见 ServiceBinderCache）
          */
-        SoftReference<IBinder> ref = sCache.get(serviceName);
-        if (ref != null) {
-            service = ref.get();
-            if (service != null) {
-                if (service.isBinderAlive() && service.pingBinder()) {
-                    if (DEBUG) {
-                        Log.d(TAG, "[getService] Found service from cache: " + serviceName);
-                        Log.d(TAG, "[getService] end = " + SystemClock.elapsedRealtime());
-                    }
-                    return service;
-                } else {
-                    sCache.remove(serviceName);
+        IBinder service = sCache.get(context, serviceName, new ServiceBinderCache.Fetcher() {
+            @Override
+            public IBinder fetch(String name) {
+                IServiceChannel serviceChannel = getServerChannel(context);
+                if (serviceChannel == null) {
+                    return null;
                 }
-            }
-        }
-
-        IServiceChannel serviceChannel = getServerChannel(context);
-        if (serviceChannel == null) {
-            return null;
-        }
-
-        try {
-            service = serviceChannel.getService(serviceName);
 
-            if (service != null) {
-                if (DEBUG) {
-                    Log.d(TAG, "[getService] Found service from remote service channel: " + serviceName);
+                try {
+                    IBinder remote = serviceChannel.getService(name);
+                    if (remote != null && DEBUG) {
+                        Log.d(TAG, "[getService] Found service from remote service channel: " + name);
+                    }
+                    return remote;
+                } catch (RemoteException e) {
+                    if (DEBUG) {
+                        Log.e(TAG, "[getService] Error when getting service from service channel...", e);
+                    }
                 }
-                service = ServiceWrapper.factory(context, serviceName, service);
-                sCache.put(serviceName, new SoftReference<IBinder>(service));
+                return null;
             }
-        } catch (RemoteException e) {
-            if (DEBUG) {
-                Log.e(TAG, "[getService] Error when getting service from service channel...", e);
-            }
-        }
+        });
 
         if (DEBUG) {
             Log.d(TAG, "[getService] end = " + SystemClock.elapsedRealtime());
@@ -179,6 +157,7 @@ public final class QihooServiceManager {
             return false;
         }
 
+        sCache.remove(serviceName);
         try {
             serviceChannel.removeService(serviceName);
         } catch (RemoteException e) {
@@ -228,6 +207,13 @@ public final class QihooServiceManager {
         return service;
     }
 
+    /**
+     * [HIDE] 输出服务缓存的命中、未命中及失效次数
+     */
+    public static void dump(PrintWriter writer) {
+        sCache.dump(writer);
+    }
+
     static IServiceChannel getServerChannel(Context context) {
         if (DEBUG) {
             Log.d(TAG, "[getServerChannel] begin = " + SystemClock.elapsedRealtime());
@@ -255,7 +241,7 @@ public final class QihooServiceManager {
         try {
             cursor = context.getContentResolver().query(getServiceChannelUri(), null, null, null, null);
             IBinder binder = ServiceChannelCursor.getBinder(cursor);
-            serviceChannel = IServiceChannel.Stub.asInterface(binder);
+            serviceChannel = IServiceChannel.Stub.asInterface(BinderStats.wrap(binder, IServiceChannel.Stub.class));
             sServerChannel = serviceChannel;
         } catch (Exception e) {
             if (DEBUG) {
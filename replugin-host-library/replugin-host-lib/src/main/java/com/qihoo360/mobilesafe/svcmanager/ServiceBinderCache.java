@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.qihoo360.mobilesafe.svcmanager;
+
+import android.content.Context;
+import android.os.IBinder;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.qihoo360.mobilesafe.core.BuildConfig;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+
+/**
+ * QihooServiceManager.getService 所用的服务缓存
+ * <p>
+ * 每个缓存的远程 Binder 都注册了 DeathRecipient，服务所在进程退出时自动失效，因此命中缓存时无需再 pingBinder。
+ * 同一服务名同时未命中时，只由第一个调用方去获取，其余调用方等待并共享结果。
+ *
+ * @author RePlugin Team
+ */
+/* PACKAGE */final class ServiceBinderCache {
+
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+
+    private static final String TAG = DEBUG ? "ServiceBinderCache" : ServiceBinderCache.class.getSimpleName();
+
+    /**
+     * 获取服务的远程 Binder
+     */
+    interface Fetcher {
+
+        /**
+         * @return 服务的 Binder，没有时返回 null
+         */
+        IBinder fetch(String name);
+    }
+
+    private final HashMap<String, Entry> mEntries = new HashMap<>();
+
+    /**
+     * HashMap<服务名, 正在进行的获取>
+     */
+    private final HashMap<String, Pending> mPending = new HashMap<>();
+
+    private int mHits;
+
+    private int mMisses;
+
+    /**
+     * 未命中时，等待其它调用方获取结果的次数
+     */
+    private int mCoalesced;
+
+    private int mInvalidations;
+
+    /**
+     * 获取服务，优先使用缓存
+     *
+     * @return 交给调用方的 Binder（远程服务会被包装为 ServiceWrapper），没有时返回 null
+     */
+    IBinder get(Context context, String name, Fetcher fetcher) {
+        Pending pending;
+        boolean owner = false;
+        synchronized (this) {
+            Entry e = mEntries.get(name);
+            if (e != null) {
+                mHits++;
+                return e.service;
+            }
+            mMisses++;
+            pending = mPending.get(name);
+            if (pending == null) {
+                pending = new Pending();
+                mPending.put(name, pending);
+                owner = true;
+            } else {
+                mCoalesced++;
+            }
+        }
+        if (!owner) {
+            return pending.await();
+        }
+
+        IBinder service = null;
+        try {
+            IBinder remote = fetcher.fetch(name);
+            if (remote != null) {
+                service = ServiceWrapper.factory(context, name, remote);
+                put(name, remote, service);
+            }
+        } finally {
+            synchronized (this) {
+                mPending.remove(name);
+            }
+            pending.complete(service);
+        }
+        return service;
+    }
+
+    /**
+     * 服务已被移除
+     */
+    synchronized void remove(String name) {
+        Entry e = mEntries.remove(name);
+        if (e != null) {
+            e.remote.unlinkToDeath(e, 0);
+            mInvalidations++;
+        }
+    }
+
+    synchronized void dump(PrintWriter writer) {
+        writer.println("--- ServiceBinderCache size=" + mEntries.size() + " ---");
+        writer.println("hits=" + mHits + " misses=" + mMisses + " coalesced=" + mCoalesced + " invalidations=" + mInvalidations);
+        writer.println("services=" + mEntries.keySet());
+    }
+
+    private void put(String name, IBinder remote, IBinder service) {
+        Entry e = new Entry(name, remote, service);
+        try {
+            // 同进程的服务（本地 Binder）不会“死亡”，此调用什么也不做
+            remote.linkToDeath(e, 0);
+        } catch (RemoteException ex) {
+            // 服务所在进程刚刚退出，不缓存
+            if (DEBUG) {
+                Log.d(TAG, "[put] binder already dead: " + name);
+            }
+            return;
+        }
+        synchronized (this) {
+            mEntries.put(name, e);
+        }
+    }
+
+    private final class Entry implements IBinder.DeathRecipient {
+
+        final String name;
+
+        final IBinder remote;
+
+        final IBinder service;
+
+        Entry(String name, IBinder remote, IBinder service) {
+            this.name = name;
+            this.remote = remote;
+            this.service = service;
+        }
+
+        @Override
+        public void binderDied() {
+            if (DEBUG) {
+                Log.d(TAG, "[binderDied] " + name);
+            }
+            synchronized (ServiceBinderCache.this) {
+                if (mEntries.get(name) == this) {
+                    mEntries.remove(name);
+                    mInvalidations++;
+                }
+            }
+        }
+    }
+
+    private static final class Pending {
+
+        private boolean mDone;
+
+        private IBinder mResult;
+
+        synchronized void complete(IBinder result) {
+            mResult = result;
+            mDone = true;
+            notifyAll();
+        }
+
+        synchronized IBinder await() {
+            boolean interrupted = false;
+            while (!mDone) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return mResult;
+        }
+    }
+}
@@ -20,12 +20,14 @@ package com.qihoo360.mobilesafe.svcmanager;
 import android.database.MatrixCursor;
 import android.os.DeadObjectException;
 import android.os.IBinder;
+import android.os.Parcel;
 import android.os.RemoteException;
 import android.text.TextUtils;
 import android.util.Log;
 
 import com.qihoo360.mobilesafe.core.BuildConfig;
 import com.qihoo360.replugin.IBinderGetter;
+import com.qihoo360.replugin.base.BinderStats;
 
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -52,6 +54,17 @@ import java.util.concurrent.ConcurrentHashMap;
      */
     static IServiceChannel.Stub sServiceChannelImpl = new IServiceChannel.Stub() {
 
+        @Override
+        public boolean onTransact(int code, Parcel data, Parcel reply, int flags) throws RemoteException {
+            // 统计每个方法的调用次数与耗时（见 BinderStats）
+            long start = BinderStats.begin();
+            try {
+                return super.onTransact(code, data, reply, flags);
+            } finally {
+                BinderStats.endIncoming(IServiceChannel.Stub.class, code, data, reply, start);
+            }
+        }
+
         @Override
         public IBinder getService(String serviceName) throws RemoteException {
             if (DEBUG) {
@@ -48,6 +48,7 @@ import com.qihoo360.mobilesafe.api.AppVar;
 import com.qihoo360.mobilesafe.api.Tasks;
 import com.qihoo360.mobilesafe.core.BuildConfig;
 import com.qihoo360.mobilesafe.svcmanager.QihooServiceManager;
+import com.qihoo360.replugin.base.BinderStats;
 import com.qihoo360.replugin.base.IPC;
 import com.qihoo360.replugin.component.ComponentList;
 import com.qihoo360.replugin.component.app.PluginApplicationClient;
@@ -966,6 +967,9 @@ public class RePlugin {
 
             IPC.init(app);
 
+            // 需在连接常驻进程之前开启，否则取到的 IPluginHost 等不会被统计
+            BinderStats.setEnabled(sConfig.isBinderStatsEnabled());
+
             // 打印当前内存占用情况
             // 只有开启“详细日志”才会输出，防止“消耗性能”
             if (LOG && RePlugin.getConfig().isPrintDetailLog()) {
@@ -53,6 +53,10 @@ public final class RePluginConfig {
 
     private boolean optimizeArtLoadDex = false;
 
+    private int stubProcessPoolSize = 0;
+    private long stubProcessIdleTimeout = 3 * 60 * 1000;
+    private boolean binderStatsEnabled = false;
+
     /**
      * 获取插件回调方法。通常无需调用此方法。
      *
@@ -362,4 +366,83 @@ public final class RePluginConfig {
         this.optimizeArtLoadDex = optimizeArtLoadDex;
         return this;
     }
-}
\ No newline at end of file
+
+    /**
+     * 获取预热的自定义插件进程（:p0 ~ :pN）的数量
+     *
+     * @return 预热的进程数，0 表示不预热
+     * @since 2.2.3
+     */
+    public int getStubProcessPoolSize() {
+        return stubProcessPoolSize;
+    }
+
+    /**
+     * 设置预热的自定义插件进程（:p0 ~ :pN）的数量，默认为0（不预热） <p>
+     * 开启后，常驻进程会提前启动尚未运行的自定义进程，插件首次在该进程中打开 Activity、Service 时无需再等待进程启动。
+     * 最多不超过自定义进程的总数
+     *
+     * @param stubProcessPoolSize 预热的进程数
+     * @return RePluginConfig自己。这样可以连环调用set方法
+     * @since 2.2.3
+     */
+    public RePluginConfig setStubProcessPoolSize(int stubProcessPoolSize) {
+        if (!checkAllowModify()) {
+            return this;
+        }
+        this.stubProcessPoolSize = stubProcessPoolSize;
+        return this;
+    }
+
+    /**
+     * 获取预热进程的最长空闲时间
+     *
+     * @return 空闲时间（毫秒）
+     * @since 2.2.3
+     */
+    public long getStubProcessIdleTimeout() {
+        return stubProcessIdleTimeout;
+    }
+
+    /**
+     * 设置预热进程的最长空闲时间，默认为3分钟 <p>
+     * 预热后超过此时间仍未被插件使用的进程会被结束，直到下次有插件需要进程时再重新预热
+     *
+     * @param stubProcessIdleTimeout 空闲时间（毫秒）
+     * @return RePluginConfig自己。这样可以连环调用set方法
+     * @since 2.2.3
+     */
+    public RePluginConfig setStubProcessIdleTimeout(long stubProcessIdleTimeout) {
+        if (!checkAllowModify()) {
+            return this;
+        }
+        this.stubProcessIdleTimeout = stubProcessIdleTimeout;
+        return this;
+    }
+
+    /**
+     * 是否统计框架内部的 Binder 调用
+     *
+     * @return 是否统计
+     * @since 2.2.3
+     */
+    public boolean isBinderStatsEnabled() {
+        return binderStatsEnabled;
+    }
+
+    /**
+     * 设置是否统计框架内部的 Binder 调用（IPluginHost、IPluginClient 等），默认为false <p>
+     * 开启后按接口和方法记录调用次数、耗时分布、数据量和调用方进程，结果随 dump 输出，用于排查跨进程调用的性能问题
+     *
+     * @param binderStatsEnabled 是否统计
+     * @return RePluginConfig自己。这样可以连环调用set方法
+     * @since 2.2.3
+     */
+    public RePluginConfig setBinderStatsEnabled(boolean binderStatsEnabled) {
+        if (!checkAllowModify()) {
+            return this;
+        }
+        this.binderStatsEnabled = binderStatsEnabled;
+        return this;
+    }
+}
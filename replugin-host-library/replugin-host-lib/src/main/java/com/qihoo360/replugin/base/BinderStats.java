@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.qihoo360.replugin.base;
+
+import android.os.Binder;
+import android.os.IBinder;
+import android.os.IInterface;
+import android.os.Looper;
+import android.os.Parcel;
+import android.os.RemoteException;
+import android.util.SparseIntArray;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 框架内部 AIDL 接口（IPluginHost、IPluginClient 等）的调用统计
+ * <p>
+ * 服务端在各 Stub 实现的 onTransact 中调用 {@link #begin()} / {@link #endIncoming}；
+ * 客户端通过 {@link #wrap} 包装远程 Binder 后再交给 Stub.asInterface，由包装类统计每次 transact。
+ * 按接口和方法统计：调用次数、耗时分布、请求及返回的数据量、调用方进程（服务端）以及在主线程中调用的次数（客户端）。
+ * <p>
+ * 默认关闭（见 RePluginConfig.setBinderStatsEnabled）。关闭时每次调用只多一次 volatile 读；开启时也只有计时和几次原子的计数，可在正式版本中使用。
+ *
+ * @author RePlugin Team
+ */
+public final class BinderStats {
+
+    /**
+     * 耗时分布的上限（毫秒），最后一档为超过 256ms
+     */
+    private static final int[] BUCKETS = {1, 2, 4, 8, 16, 32, 64, 128, 256};
+
+    private static volatile boolean sEnabled;
+
+    private static final ConcurrentHashMap<Class<?>, InterfaceStats> sInterfaces = new ConcurrentHashMap<>();
+
+    /**
+     * [HIDE] 外界请不要调用此方法
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * 服务端开始处理一次调用
+     *
+     * @return 开始时间，未开启统计时为 0
+     */
+    public static long begin() {
+        return sEnabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * 服务端处理完一次调用
+     *
+     * @param stub  接口的 Stub 类，如 IPluginHost.Stub.class
+     * @param start begin() 的返回值
+     */
+    public static void endIncoming(Class<?> stub, int code, Parcel data, Parcel reply, long start) {
+        if (start == 0) {
+            return;
+        }
+        MethodStats m = getMethod(stub, code);
+        if (m == null) {
+            return;
+        }
+        m.record(System.nanoTime() - start, data, reply);
+        m.recordCaller(Binder.getCallingPid());
+    }
+
+    /**
+     * 包装远程 Binder，统计通过它发出的调用。未开启统计、或为本进程内的 Binder 时原样返回
+     * <p>
+     * 注意：返回值（以及用它创建的接口）只能在本进程内调用，不能再写入 Parcel（如作为 AIDL 方法的返回值或参数）。
+     * 包装类既不是 Binder 也不是 BinderProxy，writeStrongBinder 会写入 null。需要传出去时请使用原始的 Binder
+     *
+     * @param stub 接口的 Stub 类，如 IPluginHost.Stub.class
+     */
+    public static IBinder wrap(IBinder remote, Class<?> stub) {
+        if (!sEnabled || remote == null || remote instanceof Binder || remote instanceof OutgoingBinder) {
+            return remote;
+        }
+        return new OutgoingBinder(remote, stub);
+    }
+
+    /**
+     * 输出统计结果
+     */
+    public static void dump(PrintWriter writer) {
+        writer.println("--- BinderStats enabled=" + sEnabled + " ---");
+        for (Map.Entry<Class<?>, InterfaceStats> e : sInterfaces.entrySet()) {
+            for (MethodStats m : e.getValue().methods) {
+                if (m != null && m.count > 0) {
+                    writer.println(m.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * 清空统计结果
+     */
+    public static void reset() {
+        sInterfaces.clear();
+    }
+
+    private static MethodStats getMethod(Class<?> stub, int code) {
+        if (code < IBinder.FIRST_CALL_TRANSACTION || code > IBinder.LAST_CALL_TRANSACTION) {
+            // 系统调用（如 INTERFACE_TRANSACTION、PING_TRANSACTION）
+            return null;
+        }
+        InterfaceStats is = sInterfaces.get(stub);
+        if (is == null) {
+            is = new InterfaceStats(stub);
+            InterfaceStats exist = sInterfaces.putIfAbsent(stub, is);
+            if (exist != null) {
+                is = exist;
+            }
+        }
+        return is.get(code);
+    }
+
+    private static final class InterfaceStats {
+
+        /**
+         * 下标为 code - FIRST_CALL_TRANSACTION
+         */
+        final MethodStats[] methods;
+
+        InterfaceStats(Class<?> stub) {
+            // 根据 Stub 中的 TRANSACTION_xxx 常量得到方法名
+            String iface = stub.getEnclosingClass() != null ? stub.getEnclosingClass().getSimpleName() : stub.getSimpleName();
+            int max = 0;
+            Field[] fields = stub.getDeclaredFields();
+            for (Field f : fields) {
+                if (isTransactionField(f)) {
+                    max = Math.max(max, readCode(f) - IBinder.FIRST_CALL_TRANSACTION + 1);
+                }
+            }
+            methods = new MethodStats[max];
+            for (Field f : fields) {
+                if (isTransactionField(f)) {
+                    int index = readCode(f) - IBinder.FIRST_CALL_TRANSACTION;
+                    if (index >= 0 && index < max) {
+                        methods[index] = new MethodStats(iface + "." + f.getName().substring("TRANSACTION_".length()));
+                    }
+                }
+            }
+        }
+
+        MethodStats get(int code) {
+            int index = code - IBinder.FIRST_CALL_TRANSACTION;
+            return index < methods.length ? methods[index] : null;
+        }
+
+        private static boolean isTransactionField(Field f) {
+            return Modifier.isStatic(f.getModifiers()) && f.getType() == int.class && f.getName().startsWith("TRANSACTION_");
+        }
+
+        private static int readCode(Field f) {
+            try {
+                f.setAccessible(true);
+                return f.getInt(null);
+            } catch (Throwable e) {
+                return -1;
+            }
+        }
+    }
+
+    private static final class MethodStats {
+
+        final String name;
+
+        int count;
+
+        int mainThreadCalls;
+
+        long totalNanos;
+
+        long maxNanos;
+
+        final int[] histogram = new int[BUCKETS.length + 1];
+
+        long requestBytes;
+
+        long replyBytes;
+
+        /**
+         * SparseIntArray<调用方 pid, 次数>，只在服务端统计
+         */
+        SparseIntArray callers;
+
+        MethodStats(String name) {
+            this.name = name;
+        }
+
+        synchronized void record(long nanos, Parcel data, Parcel reply) {
+            count++;
+            totalNanos += nanos;
+            if (nanos > maxNanos) {
+                maxNanos = nanos;
+            }
+            long ms = nanos / 1000000;
+            int b = 0;
+            while (b < BUCKETS.length && ms >= BUCKETS[b]) {
+                b++;
+            }
+            histogram[b]++;
+            if (data != null) {
+                requestBytes += data.dataSize();
+            }
+            if (reply != null) {
+                replyBytes += reply.dataSize();
+            }
+        }
+
+        synchronized void recordCaller(int pid) {
+            if (callers == null) {
+                callers = new SparseIntArray(4);
+            }
+            callers.put(pid, callers.get(pid) + 1);
+        }
+
+        synchronized void recordMainThread() {
+            mainThreadCalls++;
+        }
+
+        @Override
+        public synchronized String toString() {
+            StringBuilder b = new StringBuilder(name);
+            b.append(": count=").append(count);
+            b.append(" avg=").append(count > 0 ? totalNanos / count / 1000 : 0).append("us");
+            b.append(" max=").append(maxNanos / 1000).append("us");
+            b.append(" req=").append(count > 0 ? requestBytes / count : 0).append("B");
+            b.append(" reply=").append(count > 0 ? replyBytes / count : 0).append("B");
+            if (mainThreadCalls > 0) {
+                b.append(" main=").append(mainThreadCalls);
+            }
+            b.append(" hist(ms)=[");
+            for (int i = 0; i < histogram.length; i++) {
+                if (i > 0) {
+                    b.append(' ');
+                }
+                b.append(i < BUCKETS.length ? "<" + BUCKETS[i] : ">=" + BUCKETS[BUCKETS.length - 1]).append(':').append(histogram[i]);
+            }
+            b.append(']');
+            if (callers != null) {
+                b.append(" callers={");
+                for (int i = 0; i < callers.size(); i++) {
+                    if (i > 0) {
+                        b.append(' ');
+                    }
+                    b.append(callers.keyAt(i)).append(':').append(callers.valueAt(i));
+                }
+                b.append('}');
+            }
+            return b.toString();
+        }
+    }
+
+    /**
+     * 统计发出调用的 Binder 包装类，其余方法直接转给远程 Binder
+     */
+    private static final class OutgoingBinder implements IBinder {
+
+        private final IBinder mRemote;
+
+        private final Class<?> mStub;
+
+        OutgoingBinder(IBinder remote, Class<?> stub) {
+            mRemote = remote;
+            mStub = stub;
+        }
+
+        @Override
+        public boolean transact(int code, Parcel data, Parcel reply, int flags) throws RemoteException {
+            long start = begin();
+            try {
+                return mRemote.transact(code, data, reply, flags);
+            } finally {
+                if (start != 0) {
+                    MethodStats m = getMethod(mStub, code);
+                    if (m != null) {
+                        m.record(System.nanoTime() - start, data, reply);
+                        if (Looper.myLooper() == Looper.getMainLooper()) {
+                            m.recordMainThread();
+                        }
+                    }
+                }
+            }
+        }
+
+        @Override
+        public String getInterfaceDescriptor() throws RemoteException {
+            return mRemote.getInterfaceDescriptor();
+        }
+
+        @Override
+        public boolean pingBinder() {
+            return mRemote.pingBinder();
+        }
+
+        @Override
+        public boolean isBinderAlive() {
+            return mRemote.isBinderAlive();
+        }
+
+        @Override
+        public IInterface queryLocalInterface(String descriptor) {
+            // 必须返回 null，asInterface 才会使用本类创建 Proxy
+            return null;
+        }
+
+        @Override
+        public void dump(FileDescriptor fd, String[] args) throws RemoteException {
+            mRemote.dump(fd, args);
+        }
+
+        @Override
+        public void dumpAsync(FileDescriptor fd, String[] args) throws RemoteException {
+            mRemote.dumpAsync(fd, args);
+        }
+
+        @Override
+        public void linkToDeath(DeathRecipient recipient, int flags) throws RemoteException {
+            mRemote.linkToDeath(recipient, flags);
+        }
+
+        @Override
+        public boolean unlinkToDeath(DeathRecipient recipient, int flags) {
+            return mRemote.unlinkToDeath(recipient, flags);
+        }
+    }
+}
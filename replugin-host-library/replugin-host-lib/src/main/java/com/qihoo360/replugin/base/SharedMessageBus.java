@@ -0,0 +1,620 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.qihoo360.replugin.base;
+
+import android.content.Context;
+import android.os.Binder;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.RemoteException;
+import android.text.TextUtils;
+
+import com.qihoo360.loader2.PluginProcessMain;
+import com.qihoo360.replugin.helper.LogDebug;
+import com.qihoo360.replugin.helper.LogRelease;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static com.qihoo360.replugin.helper.LogDebug.LOG;
+import static com.qihoo360.replugin.helper.LogRelease.LOGR;
+
+/**
+ * 基于共享内存的跨进程消息通道，适用于频繁发送的小消息
+ * <p>
+ * IPC.sendLocalBroadcast2Process 等方法每条消息都要经过常驻进程中转（两次 Binder 调用），且需要序列化整个 Intent。
+ * 本类中，每个注册了监听的进程拥有一个环形缓冲区（应用私有目录下的内存映射文件，各进程映射同一个文件），
+ * 发送方直接把消息写入目标进程的缓冲区，只在缓冲区由空变为非空时，通过一次 oneway 的 Binder 调用唤醒目标进程（“门铃”）。
+ * 门铃 Binder 通过常驻进程的 installBinder 发布，发送方只在第一次发送时获取，之后缓存，消息本身不再经过常驻进程。
+ * 常驻进程重启后，门铃会在重新连接时再次发布（见 {@link #onHostDied()}）。
+ * <p>
+ * 宿主直接使用本类；插件通过 replugin-plugin-lib 中同名的类使用（内部反射调用本类）。
+ * <p>
+ * 消息由一个 int 类型和最多 {@link #MAX_PAYLOAD} 字节的内容组成；缓冲区已满、目标进程未注册或已退出时发送失败，由调用方决定是否改用广播。
+ * 收到的消息在本进程的后台线程中按写入顺序回调给 {@link Listener}。
+ *
+ * @author RePlugin Team
+ */
+public final class SharedMessageBus {
+
+    private static final String TAG = "SharedMessageBus";
+
+    /**
+     * 单条消息内容的最大长度
+     */
+    public static final int MAX_PAYLOAD = 1024;
+
+    /**
+     * 缓冲区文件存放目录
+     */
+    private static final String BUS_DIR = "plugins_v3_bus";
+
+    private static final String DOORBELL_PREFIX = "replugin.bus:";
+
+    private static final int MAGIC = 0x52504253;
+
+    /**
+     * 缓冲区（数据区）大小
+     */
+    private static final int CAPACITY = 64 * 1024;
+
+    /**
+     * 文件头：magic(int) capacity(int) head(long，累计写入字节数) tail(long，累计读取字节数)
+     */
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_CAPACITY = 4;
+    private static final int OFFSET_HEAD = 8;
+    private static final int OFFSET_TAIL = 16;
+    private static final int HEADER_SIZE = 24;
+
+    /**
+     * 每条消息：length(int) what(int) pid(int) payload
+     */
+    private static final int RECORD_HEADER_SIZE = 12;
+
+    private static final int DOORBELL_RING = IBinder.FIRST_CALL_TRANSACTION;
+
+    /**
+     * 消息监听
+     */
+    public interface Listener {
+
+        /**
+         * 收到消息（在后台线程中调用）
+         *
+         * @param pid     发送方进程的 pid
+         * @param what    消息类型
+         * @param payload 消息内容，可能为空数组
+         */
+        void onMessage(int pid, int what, byte[] payload);
+    }
+
+    private static final Object LOCKER = new Object();
+
+    /**
+     * HashMap<进程名, 该进程的缓冲区>，本进程自己的缓冲区也在其中，保证同一文件在本进程内只映射一次
+     */
+    private static final HashMap<String, Ring> sRings = new HashMap<>();
+
+    /**
+     * HashMap<进程名, 该进程的门铃>
+     */
+    private static final HashMap<String, IBinder> sDoorbells = new HashMap<>();
+
+    private static final ArrayList<Listener> sListeners = new ArrayList<>();
+
+    private static Context sContext;
+
+    private static Handler sHandler;
+
+    /**
+     * 本进程的门铃，第一次注册时创建
+     */
+    private static Doorbell sDoorbell;
+
+    /**
+     * 门铃是否已在（当前的）常驻进程中发布
+     */
+    private static boolean sPublished;
+
+    /**
+     * 常驻进程重启后重新发布门铃的重试次数
+     */
+    private static final int REPUBLISH_RETRIES = 3;
+
+    private static final long REPUBLISH_DELAY = 1000;
+
+    private static final Runnable DRAIN = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * 注册监听。第一次注册时会建立本进程的缓冲区，并发布门铃，此后其它进程才能向本进程发送
+     *
+     * @return 是否成功
+     */
+    public static boolean register(Context context, Listener listener) {
+        boolean added;
+        synchronized (LOCKER) {
+            added = !sListeners.contains(listener);
+            if (added) {
+                sListeners.add(listener);
+            }
+            if (sPublished) {
+                return true;
+            }
+            sContext = context.getApplicationContext();
+
+            if (sHandler == null) {
+                Ring ring = openRing(IPC.getCurrentProcessName(), true);
+                if (ring == null) {
+                    if (added) {
+                        sListeners.remove(listener);
+                    }
+                    return false;
+                }
+
+                HandlerThread thread = new HandlerThread(TAG);
+                thread.start();
+                sHandler = new Handler(thread.getLooper());
+                sDoorbell = new Doorbell();
+            }
+        }
+
+        if (publish()) {
+            return true;
+        }
+
+        // 发布失败：撤销本次注册，下次注册时重新发布
+        synchronized (LOCKER) {
+            if (added) {
+                sListeners.remove(listener);
+            }
+            if (!sPublished && sListeners.isEmpty() && sHandler != null) {
+                sHandler.getLooper().quit();
+                sHandler = null;
+                sDoorbell = null;
+            }
+        }
+        return false;
+    }
+
+    public static void unregister(Listener listener) {
+        synchronized (LOCKER) {
+            sListeners.remove(listener);
+        }
+    }
+
+    /**
+     * [HIDE] 常驻进程已退出（非常驻进程调用）。门铃只登记在常驻进程中，随之丢失，稍后重新连接并发布
+     */
+    public static void onHostDied() {
+        Handler h;
+        synchronized (LOCKER) {
+            if (!sPublished) {
+                return;
+            }
+            sPublished = false;
+            h = sHandler;
+        }
+        if (h != null) {
+            h.postDelayed(new Republish(REPUBLISH_RETRIES), REPUBLISH_DELAY);
+        }
+    }
+
+    /**
+     * 在常驻进程中发布本进程的门铃
+     */
+    private static boolean publish() {
+        Doorbell doorbell;
+        synchronized (LOCKER) {
+            doorbell = sDoorbell;
+        }
+        if (doorbell == null) {
+            return false;
+        }
+        try {
+            PluginProcessMain.getPluginHost().installBinder(DOORBELL_PREFIX + IPC.getCurrentProcessName(), doorbell);
+        } catch (Throwable e) {
+            if (LOGR) {
+                LogRelease.e(TAG, "publish: i.b e=" + e.getMessage(), e);
+            }
+            return false;
+        }
+        synchronized (LOCKER) {
+            if (sDoorbell == doorbell) {
+                sPublished = true;
+            }
+        }
+        return true;
+    }
+
+    private static final class Republish implements Runnable {
+
+        private final int mRetries;
+
+        Republish(int retries) {
+            mRetries = retries;
+        }
+
+        @Override
+        public void run() {
+            Handler h;
+            synchronized (LOCKER) {
+                if (sPublished || sListeners.isEmpty()) {
+                    return;
+                }
+                h = sHandler;
+            }
+            if (publish() || h == null || mRetries <= 1) {
+                return;
+            }
+            h.postDelayed(new Republish(mRetries - 1), REPUBLISH_DELAY * (REPUBLISH_RETRIES - mRetries + 2));
+        }
+    }
+
+    /**
+     * 向目标进程发送消息，不等待对方处理
+     *
+     * @param target  目标进程名
+     * @param what    消息类型
+     * @param payload 消息内容，可以为 null，长度不能超过 {@link #MAX_PAYLOAD}
+     * @return 是否已写入目标进程的缓冲区
+     */
+    public static boolean post(Context context, String target, int what, byte[] payload) {
+        if (TextUtils.isEmpty(target)) {
+            return false;
+        }
+        if (payload == null) {
+            payload = new byte[0];
+        }
+        if (payload.length > MAX_PAYLOAD) {
+            throw new IllegalArgumentException("payload too large: " + payload.length);
+        }
+        synchronized (LOCKER) {
+            if (sContext == null) {
+                sContext = context.getApplicationContext();
+            }
+        }
+
+        IBinder doorbell = fetchDoorbell(target);
+        if (doorbell == null) {
+            // 目标进程没有注册
+            return false;
+        }
+        Ring ring = openRing(target, false);
+        if (ring == null) {
+            return false;
+        }
+
+        int rc = ring.write(IPC.getCurrentProcessId(), what, payload);
+        if (rc < 0) {
+            if (LOGR) {
+                LogRelease.w(TAG, "post: full or invalid, t=" + target);
+            }
+            return false;
+        }
+        if (rc == 0) {
+            // 缓冲区原本不为空，对方正在（或即将）处理，无需再唤醒
+            return true;
+        }
+
+        Parcel data = Parcel.obtain();
+        try {
+            doorbell.transact(DOORBELL_RING, data, null, IBinder.FLAG_ONEWAY);
+        } catch (RemoteException e) {
+            if (LOG) {
+                LogDebug.d(TAG, "post: doorbell dead, t=" + target);
+            }
+            synchronized (LOCKER) {
+                sDoorbells.remove(target);
+            }
+            return false;
+        } finally {
+            data.recycle();
+        }
+        return true;
+    }
+
+    private static IBinder fetchDoorbell(final String target) {
+        synchronized (LOCKER) {
+            IBinder b = sDoorbells.get(target);
+            if (b != null) {
+                return b;
+            }
+        }
+
+        final IBinder b;
+        try {
+            b = PluginProcessMain.getPluginHost().fetchBinder(DOORBELL_PREFIX + target);
+            if (b == null) {
+                return null;
+            }
+            b.linkToDeath(new IBinder.DeathRecipient() {
+                @Override
+                public void binderDied() {
+                    synchronized (LOCKER) {
+                        if (sDoorbells.get(target) == b) {
+                            sDoorbells.remove(target);
+                        }
+                    }
+                }
+            }, 0);
+        } catch (Throwable e) {
+            if (LOGR) {
+                LogRelease.e(TAG, "f.d: e=" + e.getMessage(), e);
+            }
+            return null;
+        }
+
+        synchronized (LOCKER) {
+            sDoorbells.put(target, b);
+        }
+        return b;
+    }
+
+    /**
+     * @param owner true 表示本进程自己的缓冲区，会创建文件并清空旧数据（上一个同名进程留下的）
+     */
+    private static Ring openRing(String process, boolean owner) {
+        synchronized (LOCKER) {
+            Ring ring = sRings.get(process);
+            if (ring == null) {
+                File file = new File(sContext.getDir(BUS_DIR, 0), process);
+                if (!owner && !file.exists()) {
+                    return null;
+                }
+                try {
+                    ring = new Ring(file);
+                } catch (IOException e) {
+                    if (LOGR) {
+                        LogRelease.e(TAG, "o.r: p=" + process + " e=" + e.getMessage(), e);
+                    }
+                    return null;
+                }
+                sRings.put(process, ring);
+            }
+            if (owner && !ring.reset()) {
+                return null;
+            }
+            return ring;
+        }
+    }
+
+    private static void drain() {
+        Ring ring;
+        synchronized (LOCKER) {
+            ring = sRings.get(IPC.getCurrentProcessName());
+        }
+        if (ring == null) {
+            return;
+        }
+
+        ArrayList<Message> messages = new ArrayList<>();
+        while (true) {
+            messages.clear();
+            ring.readAll(messages);
+            if (messages.isEmpty()) {
+                return;
+            }
+
+            Listener[] listeners;
+            synchronized (LOCKER) {
+                listeners = sListeners.toArray(new Listener[sListeners.size()]);
+            }
+            for (Message m : messages) {
+                for (Listener l : listeners) {
+                    try {
+                        l.onMessage(m.pid, m.what, m.payload);
+                    } catch (Throwable e) {
+                        if (LOGR) {
+                            LogRelease.e(TAG, "drain: l=" + l + " e=" + e.getMessage(), e);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 门铃：其它进程写入消息后通知本进程读取
+     */
+    private static final class Doorbell extends Binder {
+
+        @Override
+        protected boolean onTransact(int code, Parcel data, Parcel reply, int flags) throws RemoteException {
+            if (code != DOORBELL_RING) {
+                return super.onTransact(code, data, reply, flags);
+            }
+            Handler h;
+            synchronized (LOCKER) {
+                h = sHandler;
+            }
+            if (h != null) {
+                h.removeCallbacks(DRAIN);
+                h.post(DRAIN);
+            }
+            return true;
+        }
+    }
+
+    private static final class Message {
+
+        final int pid;
+
+        final int what;
+
+        final byte[] payload;
+
+        Message(int pid, int what, byte[] payload) {
+            this.pid = pid;
+            this.what = what;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * 一个进程的环形缓冲区。进程间通过文件锁互斥，本进程内通过对象锁互斥（文件锁对同一进程内的线程无效）
+     */
+    private static final class Ring {
+
+        private final FileChannel mChannel;
+
+        private final MappedByteBuffer mBuffer;
+
+        Ring(File file) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            mChannel = raf.getChannel();
+            mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + CAPACITY);
+        }
+
+        synchronized boolean reset() {
+            FileLock lock = null;
+            try {
+                lock = mChannel.lock(0, HEADER_SIZE, false);
+                mBuffer.putInt(OFFSET_CAPACITY, CAPACITY);
+                mBuffer.putLong(OFFSET_HEAD, 0);
+                mBuffer.putLong(OFFSET_TAIL, 0);
+                mBuffer.putInt(OFFSET_MAGIC, MAGIC);
+                return true;
+            } catch (IOException e) {
+                if (LOGR) {
+                    LogRelease.e(TAG, "r.r: e=" + e.getMessage(), e);
+                }
+                return false;
+            } finally {
+                release(lock);
+            }
+        }
+
+        /**
+         * @return -1 表示缓冲区已满或无效；1 表示写入前缓冲区为空，需要唤醒读取方；0 表示其它情况
+         */
+        synchronized int write(int pid, int what, byte[] payload) {
+            FileLock lock = null;
+            try {
+                lock = mChannel.lock(0, HEADER_SIZE, false);
+                if (mBuffer.getInt(OFFSET_MAGIC) != MAGIC || mBuffer.getInt(OFFSET_CAPACITY) != CAPACITY) {
+                    return -1;
+                }
+                long head = mBuffer.getLong(OFFSET_HEAD);
+                long tail = mBuffer.getLong(OFFSET_TAIL);
+                int size = RECORD_HEADER_SIZE + payload.length;
+                if (head - tail + size > CAPACITY) {
+                    return -1;
+                }
+
+                ByteBuffer record = ByteBuffer.allocate(size);
+                record.putInt(payload.length).putInt(what).putInt(pid).put(payload);
+                copyIn(head, record.array());
+                mBuffer.putLong(OFFSET_HEAD, head + size);
+                return head == tail ? 1 : 0;
+            } catch (IOException e) {
+                if (LOGR) {
+                    LogRelease.e(TAG, "r.w: e=" + e.getMessage(), e);
+                }
+                return -1;
+            } finally {
+                release(lock);
+            }
+        }
+
+        /**
+         * 取出所有未读的消息
+         */
+        synchronized void readAll(ArrayList<Message> out) {
+            FileLock lock = null;
+            try {
+                lock = mChannel.lock(0, HEADER_SIZE, false);
+                long head = mBuffer.getLong(OFFSET_HEAD);
+                long tail = mBuffer.getLong(OFFSET_TAIL);
+                while (tail < head) {
+                    ByteBuffer rh = ByteBuffer.wrap(copyOut(tail, RECORD_HEADER_SIZE));
+                    int length = rh.getInt();
+                    int what = rh.getInt();
+                    int pid = rh.getInt();
+                    if (length < 0 || length > MAX_PAYLOAD || tail + RECORD_HEADER_SIZE + length > head) {
+                        // 数据已损坏，丢弃剩余的消息
+                        if (LOGR) {
+                            LogRelease.w(TAG, "r.r: corrupted, len=" + length);
+                        }
+                        tail = head;
+                        break;
+                    }
+                    out.add(new Message(pid, what, copyOut(tail + RECORD_HEADER_SIZE, length)));
+                    tail += RECORD_HEADER_SIZE + length;
+                }
+                mBuffer.putLong(OFFSET_TAIL, tail);
+            } catch (IOException e) {
+                if (LOGR) {
+                    LogRelease.e(TAG, "r.r: e=" + e.getMessage(), e);
+                }
+            } finally {
+                release(lock);
+            }
+        }
+
+        private void copyIn(long position, byte[] src) {
+            int offset = (int) (position % CAPACITY);
+            int first = Math.min(src.length, CAPACITY - offset);
+            ByteBuffer dst = mBuffer.duplicate();
+            dst.position(HEADER_SIZE + offset);
+            dst.put(src, 0, first);
+            if (first < src.length) {
+                dst.position(HEADER_SIZE);
+                dst.put(src, first, src.length - first);
+            }
+        }
+
+        private byte[] copyOut(long position, int length) {
+            byte[] dst = new byte[length];
+            int offset = (int) (position % CAPACITY);
+            int first = Math.min(length, CAPACITY - offset);
+            ByteBuffer src = mBuffer.duplicate();
+            src.position(HEADER_SIZE + offset);
+            src.get(dst, 0, first);
+            if (first < length) {
+                src.position(HEADER_SIZE);
+                src.get(dst, first, length - first);
+            }
+            return dst;
+        }
+
+        private static void release(FileLock lock) {
+            if (lock == null) {
+                return;
+            }
+            try {
+                lock.release();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
@@ -18,7 +18,6 @@ package com.qihoo360.replugin.component;
 
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.pm.ActivityInfo;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageInfo;
@@ -31,16 +30,13 @@ import android.util.Pair;
 import com.qihoo360.i.Factory;
 import com.qihoo360.mobilesafe.parser.manifest.ManifestParser;
 import com.qihoo360.replugin.component.utils.ApkCommentReader;
-import com.qihoo360.replugin.component.utils.IntentMatcherHelper;
-import com.qihoo360.replugin.ext.parser.ApkParser;
+import com.qihoo360.replugin.component.utils.IntentResolveCache;
 import com.qihoo360.replugin.helper.LogDebug;
 import com.qihoo360.replugin.model.PluginInfo;
 
 import java.io.File;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import static com.qihoo360.replugin.helper.LogDebug.LOG;
@@ -154,15 +150,8 @@ public class ComponentList {
             }
         }
 
-        // 解析 Apk 中的 AndroidManifest.xml
-        String manifest = getManifestFromApk(path);
-
-        if (LOG) {
-            LogDebug.d(PLUGIN_TAG, "\n解析插件 " + pli.getName() + " : " + path + "\nAndroidManifest: \n" + manifest);
-        }
-
-        // 生成组件与 IntentFilter 的对应关系
-        ManifestParser.INS.parse(pli, manifest);
+        // 解析 Apk 中的 AndroidManifest.xml，生成组件与 IntentFilter 的对应关系
+        parseManifest(path, pli);
 
         mApplication = pi.applicationInfo;
 
@@ -176,48 +165,41 @@ public class ComponentList {
     }
 
     /**
-     * 从 APK 中获取 Manifest 内容
+     * 解析 APK 中的 Manifest，生成组件与 IntentFilter 的对应关系
      *
      * @param apkFile apk 文件路径
-     * @return apk 中 AndroidManifest 中的内容
+     * @param pli     插件信息
      */
-    private static String getManifestFromApk(String apkFile) {
+    private static void parseManifest(String apkFile, PluginInfo pli) {
 
-        // 先从 Apk comment 中解析 AndroidManifest
-        String manifest = ApkCommentReader.readComment(apkFile);
-        if (!TextUtils.isEmpty(manifest)) {
+        // 优先使用编译期写入 Apk comment 的二进制组件索引
+        ByteBuffer index = ApkCommentReader.readManifestIndex(apkFile);
+        if (index != null && ManifestParser.INS.parseIndex(pli, index)) {
             if (LOG) {
-                LogDebug.d(PLUGIN_TAG, "从 apk comment 中解析 xml:\n " + manifest);
+                LogDebug.d(PLUGIN_TAG, "\n解析插件 " + pli.getName() + " : " + apkFile + "\n从 apk comment 中读取组件索引, size=" + index.remaining());
             }
-            return manifest;
+            return;
         }
 
-        // 解析失败时，再从 apk 中解析
-        ApkParser parser = null;
-        try {
-            parser = new ApkParser(apkFile);
+        // 再从 Apk comment 中解析 AndroidManifest
+        String manifest = ApkCommentReader.readComment(apkFile);
+        if (!TextUtils.isEmpty(manifest)) {
             if (LOG) {
-                long begin = System.currentTimeMillis();
-                manifest = parser.getManifestXml();
-                long end = System.currentTimeMillis();
-                LogDebug.d(PLUGIN_TAG, "从 apk 中解析 xml 耗时 " + (end - begin) + " 毫秒");
-            } else {
-                manifest = parser.getManifestXml();
-            }
-            return manifest;
-
-        } catch (IOException t) {
-            t.printStackTrace();
-        } finally {
-            if (parser != null) {
-                try {
-                    parser.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+                LogDebug.d(PLUGIN_TAG, "\n解析插件 " + pli.getName() + " : " + apkFile + "\n从 apk comment 中解析 xml:\n " + manifest);
             }
+            ManifestParser.INS.parse(pli, manifest);
+            return;
+        }
+
+        // 最后打开 apk：先读 assets 中的组件索引（v2 签名的 apk 不能修改 comment，索引只写在这里），没有时再解析二进制的 AndroidManifest
+        if (LOG) {
+            long begin = System.currentTimeMillis();
+            ManifestParser.INS.parseFromApk(pli, apkFile);
+            long end = System.currentTimeMillis();
+            LogDebug.d(PLUGIN_TAG, "\n解析插件 " + pli.getName() + " : " + apkFile + "\n从 apk 中解析 AndroidManifest 耗时 " + (end - begin) + " 毫秒");
+        } else {
+            ManifestParser.INS.parseFromApk(pli, apkFile);
         }
-        return "";
     }
 
     /**
@@ -265,7 +247,7 @@ public class ComponentList {
     /**
      * 根据 Intent 匹配 Service
      * <p>
-     * 遍历 plugin 插件中，所有保存的 Service 的 IntentFilter 数据，进行匹配，
+     * 先通过 action 找到可能包含该 Service 的插件，再通过插件的 IntentFilter 索引进行匹配，
      * 返回第一个符合条件的 ServiceInfo 对象.
      *
      * @param context Context
@@ -275,16 +257,24 @@ public class ComponentList {
     public Pair<ServiceInfo, String> getServiceAndPluginByIntent(Context context, Intent intent) {
         String action = intent.getAction();
         if (!TextUtils.isEmpty(action)) {
+            IntentResolveCache.Result cached = IntentResolveCache.get(IntentResolveCache.KIND_SERVICE, IntentResolveCache.SCOPE_ALL, intent);
+            if (cached != null) {
+                return new Pair<>((ServiceInfo) cached.info, cached.plugin);
+            }
+
+            int generation = IntentResolveCache.generation();
             Set<String> plugins = ManifestParser.INS.getPluginsByActionWhenStartService(action);
             if (plugins != null) {
 
                 for (String plugin : plugins) {
-                    // 获取 plugin 插件中，所有的 Service 和 IntentFilter 的对应关系
-                    Map<String, List<IntentFilter>> filters = ManifestParser.INS.getServiceFilterMap(plugin);
-                    // 找到 plugin 插件中，IntentFilter 匹配成功的 Service
-                    String service = IntentMatcherHelper.doMatchIntent(context, intent, filters);
+                    // 通过 plugin 插件的 IntentFilter 索引，找到匹配成功的 Service
+                    String service = ManifestParser.INS.matchService(context, plugin, intent);
+                    if (service == null) {
+                        continue;
+                    }
                     ServiceInfo info = Factory.queryServiceInfo(plugin, service);
                     if (info != null) {
+                        IntentResolveCache.put(IntentResolveCache.KIND_SERVICE, IntentResolveCache.SCOPE_ALL, intent, generation, plugin, info);
                         return new Pair<>(info, plugin);
                     }
                 }
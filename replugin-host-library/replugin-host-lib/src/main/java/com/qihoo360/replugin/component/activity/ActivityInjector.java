@@ -16,6 +16,7 @@
 
 package com.qihoo360.replugin.component.activity;
 
+import android.annotation.TargetApi;
 import android.app.Activity;
 import android.app.ActivityManager;
 import android.content.Context;
@@ -29,6 +30,7 @@ import android.os.Build;
 import android.text.TextUtils;
 
 import com.qihoo360.loader2.MP;
+import com.qihoo360.mobilesafe.api.Tasks;
 import com.qihoo360.replugin.RePlugin;
 import com.qihoo360.replugin.RePluginInternal;
 import com.qihoo360.replugin.component.ComponentList;
@@ -67,14 +69,45 @@ public class ActivityInjector {
         }
 
         ActivityInfo ai = cl.getActivity(realActivity);
-        return ai != null && inject(activity, ai, pi.getFrameworkVersion());
+        return ai != null && inject(activity, plugin, ai, pi.getFrameworkVersion());
     }
 
-    private static boolean inject(Activity activity, ActivityInfo ai, int frameworkVer) {
+    /**
+     * 插件加载完成后，在后台线程提前生成所有 Activity 的 TaskDescription（解析 label、取图标），
+     * 使 Activity 创建时可直接使用缓存，不必在 onCreate 中处理
+     *
+     * @param plugin       插件名
+     * @param res          插件的 Resources
+     * @param cl           插件的组件列表
+     * @param frameworkVer 插件的框架版本
+     */
+    public static void prefetch(final String plugin, final Resources res, final ComponentList cl, int frameworkVer) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP || frameworkVer < 4) {
+            return;
+        }
+        if (res == null || cl == null) {
+            return;
+        }
+        Tasks.post2Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (ActivityInfo ai : cl.getActivities()) {
+                    if (!TaskDescriptionCache.contains(plugin, ai)) {
+                        createTaskDescription(plugin, res, ai);
+                    }
+                }
+                if (LOG) {
+                    LogDebug.d(TAG, "prefetch task descriptions done: plugin=" + plugin);
+                }
+            }
+        });
+    }
+
+    private static boolean inject(Activity activity, String plugin, ActivityInfo ai, int frameworkVer) {
         // 可根据插件Activity的描述（android:label、android:icon）来设置Task在“最近应用程序”中的显示
         // 注意：框架版本需 >= 4，否则仍沿用Application的Label和Icon
         if (frameworkVer >= 4) {
-            injectTaskDescription(activity, ai);
+            injectTaskDescription(activity, plugin, ai);
         }
         return true;
     }
@@ -84,7 +117,7 @@ public class ActivityInjector {
      * 注意：Android 4.x及以下暂不支持 <p>
      * Author: Jiongxuan Zhang
      */
-    private static void injectTaskDescription(Activity activity, ActivityInfo ai) {
+    private static void injectTaskDescription(Activity activity, String plugin, ActivityInfo ai) {
         // Android 4.x及以下暂不支持
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
             return;
@@ -99,15 +132,38 @@ public class ActivityInjector {
             LogDebug.d(TAG, "ai = " + ai);
         }
 
-        // 获取 activity label
-        String label = getLabel(activity, ai);
+        // 通常已在插件加载时生成（见 prefetch）
+        ActivityManager.TaskDescription td = TaskDescriptionCache.get(plugin, ai);
+        if (td == null) {
+            td = createTaskDescription(plugin, activity.getResources(), ai);
+        }
         // 如果获取 label 失败（可能性极小），则不修改 TaskDescription
-        if (TextUtils.isEmpty(label)) {
+        if (td == null) {
             return;
         }
 
+        if (LOG) {
+            LogDebug.d(TAG, "td = " + td);
+        }
+
+        activity.setTaskDescription(td);
+    }
+
+    /**
+     * 生成 TaskDescription 并放入缓存
+     *
+     * @return TaskDescription，获取 label 失败时返回 null
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static ActivityManager.TaskDescription createTaskDescription(String plugin, Resources res, ActivityInfo ai) {
+        // 获取 activity label
+        String label = getLabel(res, ai);
+        if (TextUtils.isEmpty(label)) {
+            return null;
+        }
+
         // 获取 ICON
-        Bitmap bitmap = getIcon(activity, ai);
+        Bitmap bitmap = getIcon(res, ai);
 
         // FIXME color的透明度需要在Theme中的colorPrimary中获取，先不实现
         ActivityManager.TaskDescription td;
@@ -117,19 +173,15 @@ public class ActivityInjector {
             td = new ActivityManager.TaskDescription(label);
         }
 
-        if (LOG) {
-            LogDebug.d(TAG, "td = " + td);
-        }
-
-        activity.setTaskDescription(td);
+        TaskDescriptionCache.put(plugin, ai, td, bitmap);
+        return td;
     }
 
     /**
      * 获取 activity 的 label 属性
      */
-    private static String getLabel(Activity activity, ActivityInfo ai) {
+    private static String getLabel(Resources res, ActivityInfo ai) {
         String label;
-        Resources res = activity.getResources();
 
         // 获取 Activity label（如有）
         label = getLabelById(res, ai.labelRes);
@@ -168,9 +220,8 @@ public class ActivityInjector {
     /**
      * 获取 activity 的 icon 属性
      */
-    private static Bitmap getIcon(Activity activity, ActivityInfo ai) {
+    private static Bitmap getIcon(Resources res, ActivityInfo ai) {
         Drawable iconDrawable;
-        Resources res = activity.getResources();
 
         // 获取 Activity icon
         iconDrawable = getIconById(res, ai.icon);
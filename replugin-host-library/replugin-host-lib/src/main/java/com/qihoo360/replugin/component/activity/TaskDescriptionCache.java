@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.qihoo360.replugin.component.activity;
+
+import android.annotation.TargetApi;
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.pm.ActivityInfo;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import com.qihoo360.replugin.RePluginInternal;
+import com.qihoo360.replugin.helper.LogDebug;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static com.qihoo360.replugin.helper.LogDebug.LOG;
+
+/**
+ * 插件 Activity 的 TaskDescription 缓存（见 ActivityInjector）
+ * <p>
+ * 按插件分组，每个插件内以 Activity 名称为 key，并校验 ActivityInfo 是否为同一对象（插件重新加载后会重新生成）。
+ * 图标 Bitmap 来自插件 Resources，同一插件内多个 Activity 往往共用同一个图标，按 Bitmap 对象去重后统计占用。
+ * 总占用超过 {@link #MAX_BYTES} 时，按最近最少使用的顺序整组淘汰插件；系统内存紧张时全部清空。
+ *
+ * @author RePlugin Team
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+final class TaskDescriptionCache {
+
+    private static final String TAG = ActivityInjector.TAG;
+
+    /**
+     * 所有插件的图标最多占用的内存
+     */
+    private static final int MAX_BYTES = 2 * 1024 * 1024;
+
+    private static final Object LOCKER = new Object();
+
+    /**
+     * LinkedHashMap<插件名, 该插件的缓存>，按访问顺序排列
+     */
+    private static final LinkedHashMap<String, PluginEntries> sPlugins = new LinkedHashMap<>(16, 0.75f, true);
+
+    private static int sBytes;
+
+    private static boolean sCallbacksRegistered;
+
+    /**
+     * 缓存的 label 所对应的语言
+     */
+    private static Locale sLocale;
+
+    /**
+     * @return 缓存的 TaskDescription，没有时返回 null
+     */
+    static ActivityManager.TaskDescription get(String plugin, ActivityInfo ai) {
+        synchronized (LOCKER) {
+            PluginEntries entries = sPlugins.get(plugin);
+            if (entries == null) {
+                return null;
+            }
+            Entry entry = entries.items.get(ai.name);
+            if (entry == null || entry.ai != ai) {
+                return null;
+            }
+            return entry.td;
+        }
+    }
+
+    static boolean contains(String plugin, ActivityInfo ai) {
+        return get(plugin, ai) != null;
+    }
+
+    static void put(String plugin, ActivityInfo ai, ActivityManager.TaskDescription td, Bitmap icon) {
+        registerCallbacksIfNeeded();
+        synchronized (LOCKER) {
+            PluginEntries entries = sPlugins.get(plugin);
+            if (entries == null) {
+                entries = new PluginEntries();
+                sPlugins.put(plugin, entries);
+            }
+            entries.items.put(ai.name, new Entry(ai, td));
+            if (icon != null && entries.icons.add(icon)) {
+                int bytes = icon.getByteCount();
+                entries.bytes += bytes;
+                sBytes += bytes;
+            }
+            trimToSizeLocked();
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    static void clear() {
+        synchronized (LOCKER) {
+            sPlugins.clear();
+            sBytes = 0;
+        }
+        if (LOG) {
+            LogDebug.d(TAG, "task description cache cleared");
+        }
+    }
+
+    private static void trimToSizeLocked() {
+        Iterator<Map.Entry<String, PluginEntries>> it = sPlugins.entrySet().iterator();
+        // 至少保留最近使用的一个插件
+        while (sBytes > MAX_BYTES && sPlugins.size() > 1 && it.hasNext()) {
+            PluginEntries eldest = it.next().getValue();
+            sBytes -= eldest.bytes;
+            it.remove();
+        }
+    }
+
+    private static void registerCallbacksIfNeeded() {
+        synchronized (LOCKER) {
+            if (sCallbacksRegistered) {
+                return;
+            }
+            sCallbacksRegistered = true;
+            sLocale = RePluginInternal.getAppContext().getResources().getConfiguration().locale;
+        }
+        RePluginInternal.getAppContext().registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                if (level >= TRIM_MEMORY_RUNNING_LOW && level != TRIM_MEMORY_UI_HIDDEN) {
+                    clear();
+                }
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+                // 语言变化后 label 也会变化
+                synchronized (LOCKER) {
+                    if (newConfig.locale == null || newConfig.locale.equals(sLocale)) {
+                        return;
+                    }
+                    sLocale = newConfig.locale;
+                }
+                clear();
+            }
+
+            @Override
+            public void onLowMemory() {
+                clear();
+            }
+        });
+    }
+
+    private static final class PluginEntries {
+
+        /**
+         * HashMap<Activity 名称, Entry>
+         */
+        final HashMap<String, Entry> items = new HashMap<>();
+
+        /**
+         * 已计入占用的图标
+         */
+        final Set<Bitmap> icons = Collections.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>());
+
+        int bytes;
+    }
+
+    private static final class Entry {
+
+        final ActivityInfo ai;
+
+        final ActivityManager.TaskDescription td;
+
+        Entry(ActivityInfo ai, ActivityManager.TaskDescription td) {
+            this.ai = ai;
+            this.td = td;
+        }
+    }
+}
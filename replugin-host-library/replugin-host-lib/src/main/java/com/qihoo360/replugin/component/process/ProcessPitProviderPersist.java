@@ -20,6 +20,7 @@ import android.content.ContentProvider;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Bundle;
 
 import com.qihoo360.loader2.PluginProviderStub;
 import com.qihoo360.replugin.base.IPC;
@@ -53,6 +54,12 @@ public class ProcessPitProviderPersist extends ContentProvider {
         return PluginProviderStub.stubMain(uri, projection, selection, selectionArgs, sortOrder);
     }
 
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        sInvoked = true;
+        return PluginProviderStub.stubCall(method, arg, extras);
+    }
+
     @Override
     public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
         return 0;
@@ -18,6 +18,7 @@ package com.qihoo360.replugin.component.provider;
 
 import android.annotation.TargetApi;
 import android.content.ContentProviderClient;
+import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.pm.ProviderInfo;
@@ -41,6 +42,7 @@ import com.qihoo360.replugin.helper.LogRelease;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.qihoo360.replugin.helper.LogDebug.LOG;
 import static com.qihoo360.replugin.helper.LogDebug.PLUGIN_TAG;
@@ -56,6 +58,12 @@ public class PluginProviderClient {
     private static final String TAG = "PluginProviderClient";
     private static final int PROCESS_UNKNOWN = Integer.MAX_VALUE;
 
+    /**
+     * 插件名 -> (插件Provider的Authority -> 所在进程)
+     * 每次调用Provider都要确定进程，而查ComponentList的结果在插件加载后不会再变，故缓存下来。只缓存查到的结果
+     */
+    private static final ConcurrentHashMap<String, ConcurrentHashMap<String, Integer>> sProcessByAuthority = new ConcurrentHashMap<>();
+
     /**
      * 调用插件里的Provider
      * @see android.content.ContentResolver#acquireContentProviderClient(String)
@@ -312,8 +320,15 @@ public class PluginProviderClient {
 
         // from => content://                                                  com.qihoo360.contacts.abc/people?id=9
         // to   => content://com.qihoo360.mobilesafe.Plugin.NP.UIP/plugin_name/com.qihoo360.contacts.abc/people?id=9
-        String newUri = String.format("content://%s/%s/%s", au, plugin, uri.toString().replace("content://", ""));
-        return Uri.parse(newUri);
+        // 直接使用已解析好的各部分（均为编码后的原文）来拼装，不再把整个Uri转成字符串后重新解析
+        String path = uri.getEncodedPath();
+        return new Uri.Builder()
+                .scheme(ContentResolver.SCHEME_CONTENT)
+                .encodedAuthority(au)
+                .encodedPath("/" + plugin + "/" + uri.getEncodedAuthority() + (path != null ? path : ""))
+                .encodedQuery(uri.getEncodedQuery())
+                .encodedFragment(uri.getEncodedFragment())
+                .build();
     }
 
     // 根据Context所带的插件信息，来获取插件名。若获取不到，或者为主程序，则返回Null
@@ -343,6 +358,28 @@ public class PluginProviderClient {
     }
 
     private static int getProcessByAuthority(String pn, String authority) {
+        ConcurrentHashMap<String, Integer> processes = sProcessByAuthority.get(pn);
+        if (processes != null) {
+            Integer p = processes.get(authority);
+            if (p != null) {
+                return p;
+            }
+        }
+        int p = queryProcessByAuthority(pn, authority);
+        if (p != PROCESS_UNKNOWN) {
+            if (processes == null) {
+                processes = new ConcurrentHashMap<>();
+                ConcurrentHashMap<String, Integer> exist = sProcessByAuthority.putIfAbsent(pn, processes);
+                if (exist != null) {
+                    processes = exist;
+                }
+            }
+            processes.put(authority, p);
+        }
+        return p;
+    }
+
+    private static int queryProcessByAuthority(String pn, String authority) {
         // 开始尝试获取插件的ServiceInfo
         ComponentList col = Factory.queryPluginComponentList(pn);
         if (col == null) {
@@ -28,9 +28,8 @@ import com.qihoo360.replugin.RePlugin;
 import com.qihoo360.replugin.component.ComponentList;
 import com.qihoo360.replugin.helper.LogDebug;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 和安装、加载、缓存插件Provider有关的帮助类。
@@ -39,7 +38,7 @@ import java.util.Map;
  */
 public class PluginProviderHelper {
     private static final String TAG = "PluginProviderHelper";
-    private static final String SCHEME_AND_SSP = "content://";
+    private static final String SCHEME = "content";
 
     private final String mAuthority;
 
@@ -47,7 +46,11 @@ public class PluginProviderHelper {
         mAuthority = authority;
     }
 
-    Map<String, ContentProvider> mProviderAuthorityMap = new HashMap<>();
+    // Binder线程池中的多个线程会同时读写，故用ConcurrentHashMap；读取时不加锁
+    final ConcurrentHashMap<String, ContentProvider> mProviderAuthorityMap = new ConcurrentHashMap<>();
+
+    // 安装Provider（会调用其onCreate）时的锁，防止同一个Provider被创建多次
+    private final Object mInstallLock = new Object();
 
     // 将从系统传过来的URI转化成插件里的URI。例如：
     // Before: content://com.qihoo360.mobilesafe.PluginTransferP/contacts/com.qihoo360.contacts.abc/people
@@ -84,12 +87,9 @@ public class PluginProviderHelper {
         }
 
         // 剔除Uri中开头的内容
-        String ut = uri.toString();
-        String tut = removeHostAuthorityAndInfo(ut, pn);
-
         PluginUri pu = new PluginUri();
         pu.plugin = pn;
-        pu.transferredUri = Uri.parse(tut);
+        pu.transferredUri = removeHostAuthorityAndInfo(uri);
         if (LogDebug.LOG) {
             Log.i(TAG, "toPluginUri(): End! t-uri=" + pu);
         }
@@ -112,17 +112,25 @@ public class PluginProviderHelper {
             return cp;
         }
 
-        // 开始构建插件里的ContentProvider对象
-        cp = installProvider(pu, auth);
-        if (cp == null) {
-            if (LogDebug.LOG) {
-                Log.e(TAG, "getProvider(): Install fail!");
+        synchronized (mInstallLock) {
+            // 等锁期间可能已被其它线程安装好了
+            cp = mProviderAuthorityMap.get(auth);
+            if (cp != null) {
+                return cp;
+            }
+
+            // 开始构建插件里的ContentProvider对象
+            cp = installProvider(pu, auth);
+            if (cp == null) {
+                if (LogDebug.LOG) {
+                    Log.e(TAG, "getProvider(): Install fail!");
+                }
+                return null;
             }
-            return null;
-        }
 
-        // 加入列表。下次直接读缓存
-        mProviderAuthorityMap.put(auth, cp);
+            // 加入列表。下次直接读缓存
+            mProviderAuthorityMap.put(auth, cp);
+        }
 
         if (LogDebug.LOG) {
             Log.i(TAG, "getProvider(): Okay! pu=" + pu + "; cp=" + cp);
@@ -130,10 +138,28 @@ public class PluginProviderHelper {
         return cp;
     }
 
-    private String removeHostAuthorityAndInfo(String uri, String plugin) {
-        // content:// --- com.qihoo360.mobilesafe.PluginTransferP --- /(1) --- shakeoff --- /(1) ---
-        int startsWith = SCHEME_AND_SSP.length() + mAuthority.length() + 1 + plugin.length() + 1;
-        return SCHEME_AND_SSP + uri.substring(startsWith, uri.length());
+    private static Uri removeHostAuthorityAndInfo(Uri uri) {
+        // content:// --- com.qihoo360.mobilesafe.PluginTransferP --- /shakeoff --- /com.qihoo360.contacts.abc --- /people
+        // 直接使用已解析好的Path、Query和Fragment（均为编码后的原文）来拼装，不再把整个Uri转成字符串后重新解析
+        String path = uri.getEncodedPath();
+        int authStart = path.indexOf('/', 1) + 1;
+        int pathStart = path.indexOf('/', authStart);
+        String auth;
+        String newPath;
+        if (pathStart < 0) {
+            auth = path.substring(authStart);
+            newPath = "";
+        } else {
+            auth = path.substring(authStart, pathStart);
+            newPath = path.substring(pathStart);
+        }
+        return new Uri.Builder()
+                .scheme(SCHEME)
+                .encodedAuthority(auth)
+                .encodedPath(newPath)
+                .encodedQuery(uri.getEncodedQuery())
+                .encodedFragment(uri.getEncodedFragment())
+                .build();
     }
 
     private ContentProvider installProvider(PluginUri pu, String auth) {
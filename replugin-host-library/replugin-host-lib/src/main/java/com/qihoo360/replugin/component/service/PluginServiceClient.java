@@ -37,6 +37,8 @@ import com.qihoo360.replugin.component.utils.PluginClientHelper;
 import com.qihoo360.replugin.helper.LogDebug;
 import com.qihoo360.replugin.helper.LogRelease;
 
+import java.util.Arrays;
+
 import static com.qihoo360.replugin.helper.LogDebug.LOG;
 import static com.qihoo360.replugin.helper.LogDebug.PLUGIN_TAG;
 import static com.qihoo360.replugin.helper.LogRelease.LOGR;
@@ -112,6 +114,57 @@ public class PluginServiceClient {
         return null;
     }
 
+    /**
+     * 批量开启插件的服务。结果与逐个调用startService相同，但相邻且在同一进程中的服务只需一次跨进程调用，
+     * 其onStartCommand也会在目标进程的一次主线程调度中依次执行
+     * <p>
+     * 所有服务（包括直接调用系统方法的非插件服务）都按intents的顺序启动
+     *
+     * @param context Context对象
+     * @param intents 要打开的服务。如何填写请参见类的说明
+     * @return 与intents一一对应，最终打开哪个服务的ComponentName，失败为null
+     * @see #startService(Context, Intent)
+     */
+    public static ComponentName[] startServices(Context context, Intent[] intents) {
+        ComponentName[] result = new ComponentName[intents.length];
+        int[] processes = getProcessesByIntents(context, intents, true);
+
+        // 目标进程相同的连续一段合并为一次调用，各段按intents的顺序依次处理
+        for (int start = 0, end; start < intents.length; start = end) {
+            int process = processes[start];
+            end = getRunEnd(processes, start);
+            if (process == PROCESS_UNKNOWN) {
+                for (int i = start; i < end; i++) {
+                    if (LOG) {
+                        LogDebug.d(PLUGIN_TAG, "PSS.startServices(): Call SystemAPI: in=" + intents[i]);
+                    }
+                    result[i] = context.startService(intents[i]);
+                }
+                continue;
+            }
+
+            IPluginServiceServer pss = sServerFetcher.fetchByProcess(process);
+            if (pss == null) {
+                if (LOGR) {
+                    LogRelease.e(PLUGIN_TAG, "psc.sss: pss n");
+                }
+                continue;
+            }
+            Intent[] batch = Arrays.copyOfRange(intents, start, end);
+            try {
+                ComponentName[] r = pss.startServices(batch, sClientMessenger);
+                for (int j = 0; j < r.length && j < batch.length; j++) {
+                    result[start + j] = r[j];
+                }
+            } catch (Throwable e) {
+                if (LOGR) {
+                    LogRelease.e(PLUGIN_TAG, "psc.sss: pss e", e);
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * 停止指定插件的服务。近似于Context.stopService
      *
@@ -223,6 +276,60 @@ public class PluginServiceClient {
         return false;
     }
 
+    /**
+     * 使用同一个ServiceConnection批量绑定插件服务。结果与逐个调用bindService相同，但相邻且在同一进程中的服务只需一次跨进程调用，
+     * 各服务的onServiceConnected也会在一次主线程调度中依次回调
+     * <p>
+     * 所有服务（包括直接调用系统方法的非插件服务）都按intents的顺序绑定
+     *
+     * @param context Context对象
+     * @param intents 要绑定的服务。如何填写请参见类的说明
+     * @param sc      ServiceConnection对象（等同于系统）
+     * @param flags   flags对象。目前仅支持BIND_AUTO_CREATE标志
+     * @return 与intents一一对应，是否成功绑定服务
+     * @see #bindService(Context, Intent, ServiceConnection, int)
+     */
+    public static boolean[] bindServices(Context context, Intent[] intents, ServiceConnection sc, int flags) {
+        boolean[] result = new boolean[intents.length];
+        int[] processes = getProcessesByIntents(context, intents, false);
+
+        // 目标进程相同的连续一段合并为一次调用，各段按intents的顺序依次处理
+        for (int start = 0, end; start < intents.length; start = end) {
+            int process = processes[start];
+            end = getRunEnd(processes, start);
+            if (process == PROCESS_UNKNOWN) {
+                for (int i = start; i < end; i++) {
+                    if (LOG) {
+                        LogDebug.d(PLUGIN_TAG, "PSS.bindServices(): Call SystemAPI: in=" + intents[i]);
+                    }
+                    result[i] = context.bindService(intents[i], sc, flags);
+                }
+                continue;
+            }
+
+            IPluginServiceServer pss = sServerFetcher.fetchByProcess(process);
+            if (pss == null) {
+                if (LOGR) {
+                    LogRelease.e(PLUGIN_TAG, "psc.bss: pss n");
+                }
+                continue;
+            }
+            Intent[] batch = Arrays.copyOfRange(intents, start, end);
+            try {
+                ServiceDispatcher sd = sDispatcherManager.get(sc, context, sClientHandler, flags, process);
+                int[] r = pss.bindServices(batch, sd.getIServiceConnection(), flags, sClientMessenger);
+                for (int j = 0; j < r.length && j < batch.length; j++) {
+                    result[start + j] = r[j] != 0;
+                }
+            } catch (Throwable e) {
+                if (LOGR) {
+                    LogRelease.e(PLUGIN_TAG, "psc.bss: pss e", e);
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * 解除对插件服务的绑定
      *
@@ -291,6 +398,37 @@ public class PluginServiceClient {
         }
     }
 
+    /**
+     * 获取批量调用中每个服务所在的进程，插件的服务会同时填入其ComponentName
+     *
+     * @param fromAction 是否和startService一样，在没有ComponentName时根据action查找插件的服务
+     * @return 与intents一一对应，非插件的服务为PROCESS_UNKNOWN
+     */
+    private static int[] getProcessesByIntents(Context context, Intent[] intents, boolean fromAction) {
+        int[] processes = new int[intents.length];
+        for (int i = 0; i < intents.length; i++) {
+            Intent intent = intents[i];
+            ComponentName cn = fromAction ? getServiceComponentFromIntent(context, intent)
+                    : PluginClientHelper.getComponentNameByContext(context, intent.getComponent());
+            processes[i] = getProcessByComponentName(cn);
+            if (processes[i] != PROCESS_UNKNOWN) {
+                intent.setComponent(cn);
+            }
+        }
+        return processes;
+    }
+
+    /**
+     * @return 从start开始、目标进程相同的连续一段的结束下标（不含）
+     */
+    private static int getRunEnd(int[] processes, int start) {
+        int end = start + 1;
+        while (end < processes.length && processes[end] == processes[start]) {
+            end++;
+        }
+        return end;
+    }
+
     private static int getProcessByComponentName(ComponentName cn) {
         if (cn == null) {
             // 如果Intent里面没有带ComponentName，则我们不支持此特性，直接返回null
@@ -24,10 +24,11 @@ import com.qihoo360.loader2.IPluginHost;
 import com.qihoo360.loader2.MP;
 import com.qihoo360.loader2.PluginBinderInfo;
 import com.qihoo360.loader2.PluginProcessMain;
-import com.qihoo360.replugin.utils.basic.ArrayMap;
+import com.qihoo360.replugin.base.BinderStats;
 import com.qihoo360.replugin.component.service.server.IPluginServiceServer;
 import com.qihoo360.replugin.helper.LogDebug;
 import com.qihoo360.replugin.helper.LogRelease;
+import com.qihoo360.replugin.utils.basic.ConcurrentIntObjectMap;
 
 import static com.qihoo360.replugin.helper.LogDebug.LOG;
 import static com.qihoo360.replugin.helper.LogDebug.PLUGIN_TAG;
@@ -39,23 +40,20 @@ import static com.qihoo360.replugin.helper.LogRelease.LOGR;
  * @author RePlugin Team
  */
 public class PluginServiceServerFetcher {
-    private ArrayMap<Integer, IPluginServiceServer> mServiceManagerByProcessMap = new ArrayMap<>();
-    private static final byte[] PSS_LOCKER = new byte[0];
+    // 每次使用插件服务都会读取，写入很少，故用写时复制的Map，读取时无需加锁
+    private final ConcurrentIntObjectMap<IPluginServiceServer> mServiceManagerByProcessMap = new ConcurrentIntObjectMap<>();
 
     public IPluginServiceServer fetchByProcess(int process) {
         if (process == PluginServiceClient.PROCESS_UNKNOWN) {
             return null;
         }
         // 取之前的缓存
-        IPluginServiceServer pss;
-        synchronized (PSS_LOCKER) {
-            pss = mServiceManagerByProcessMap.get(process);
-            if (pss != null) {
-                if (LOG) {
-                    LogDebug.d(PLUGIN_TAG, "PluginServiceClient.fsmbp(): Exists! p=" + process);
-                }
-                return pss;
+        IPluginServiceServer pss = mServiceManagerByProcessMap.get(process);
+        if (pss != null) {
+            if (LOG) {
+                LogDebug.d(PLUGIN_TAG, "PluginServiceClient.fsmbp(): Exists! p=" + process);
             }
+            return pss;
         }
 
         // 缓存没有？则去目标进程获取新的
@@ -71,6 +69,9 @@ public class PluginServiceServerFetcher {
                 IPluginClient pc = MP.startPluginProcess(null, process, pbi);
                 pss = pc.fetchServiceServer();
             }
+            if (pss != null) {
+                pss = IPluginServiceServer.Stub.asInterface(BinderStats.wrap(pss.asBinder(), IPluginServiceServer.Stub.class));
+            }
 
             // 挂死亡周期，如果出问题了就置空重来，防止外界调用psm出现DeadObject问题
             pss.asBinder().linkToDeath(new PSSDeathMonitor(process, pss.asBinder()), 0);
@@ -80,9 +81,7 @@ public class PluginServiceServerFetcher {
             }
         }
         if (pss != null) {
-            synchronized (PSS_LOCKER) {
-                mServiceManagerByProcessMap.put(process, pss);
-            }
+            mServiceManagerByProcessMap.put(process, pss);
         }
         return pss;
     }
@@ -98,8 +97,10 @@ public class PluginServiceServerFetcher {
             if (LOGR) {
                 LogRelease.e(PLUGIN_TAG, "psc.dm: d, rm p " + mProcess);
             }
-            synchronized (PSS_LOCKER) {
-                mServiceManagerByProcessMap.remove(mProcess);
+            // 只移除本监听对应的那个（期间可能已重新获取）
+            IPluginServiceServer pss = mServiceManagerByProcessMap.get(mProcess);
+            if (pss != null && pss.asBinder() == mService) {
+                mServiceManagerByProcessMap.remove(mProcess, pss);
             }
         }
 
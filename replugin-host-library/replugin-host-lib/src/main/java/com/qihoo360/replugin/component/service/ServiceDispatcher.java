@@ -28,6 +28,7 @@ import com.qihoo360.loader2.mgr.IServiceConnection;
 import com.qihoo360.replugin.utils.basic.ArrayMap;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 
 /**
  * 用来在Client端管理、调度Service的类。仅Client端可用
@@ -78,6 +79,23 @@ final class ServiceDispatcher {
 
     private final ArrayMap<ComponentName, ConnectionInfo> mActiveConnections = new ArrayMap<>();
 
+    // 等待在mActivityThread中执行的回调。连续到达的多个回调（如批量绑定）只post一次，在一次调度中按顺序执行
+    private final ArrayList<RunConnection> mPendingConnections = new ArrayList<>();
+
+    private final Runnable mRunPendingConnections = new Runnable() {
+        @Override
+        public void run() {
+            ArrayList<RunConnection> batch;
+            synchronized (mPendingConnections) {
+                batch = new ArrayList<>(mPendingConnections);
+                mPendingConnections.clear();
+            }
+            for (RunConnection rc : batch) {
+                rc.run();
+            }
+        }
+    };
+
     ServiceDispatcher(ServiceConnection conn,
                       Context context, Handler activityThread, int flags, int process) {
         mIServiceConnection = new InnerConnection(this);
@@ -146,7 +164,7 @@ final class ServiceDispatcher {
 
     public void connected(ComponentName name, IBinder service) {
         if (mActivityThread != null) {
-            mActivityThread.post(new RunConnection(name, service, 0));
+            postConnection(new RunConnection(name, service, 0));
         } else {
             doConnected(name, service);
         }
@@ -167,12 +185,23 @@ final class ServiceDispatcher {
         }
 
         if (mActivityThread != null) {
-            mActivityThread.post(new RunConnection(name, service, 1));
+            postConnection(new RunConnection(name, service, 1));
         } else {
             doDeath(name, service);
         }
     }
 
+    private void postConnection(RunConnection rc) {
+        boolean post;
+        synchronized (mPendingConnections) {
+            post = mPendingConnections.isEmpty();
+            mPendingConnections.add(rc);
+        }
+        if (post) {
+            mActivityThread.post(mRunPendingConnections);
+        }
+    }
+
     public void doConnected(ComponentName name, IBinder service) {
         ServiceDispatcher.ConnectionInfo old;
         ServiceDispatcher.ConnectionInfo info;
@@ -32,6 +32,7 @@ class ConnectionBindRecord {
     final int flags;                    // 绑定的Flags
 
     boolean serviceDead;                // 连接即将被unbind，标记此开关是防止重复unbind
+    boolean pending;                    // 服务尚未创建完成，待创建后再回调connected
 
     private String stringName;
 
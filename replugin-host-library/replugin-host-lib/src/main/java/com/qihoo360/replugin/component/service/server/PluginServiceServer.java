@@ -23,27 +23,31 @@ import android.content.ContextWrapper;
 import android.content.Intent;
 import android.content.pm.ServiceInfo;
 import android.os.Binder;
-import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
 import android.os.Message;
 import android.os.Messenger;
+import android.os.Parcel;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.util.Log;
+import android.util.Pair;
 
 import com.qihoo360.i.Factory;
 import com.qihoo360.loader2.mgr.IServiceConnection;
+import com.qihoo360.mobilesafe.api.Tasks;
 import com.qihoo360.mobilesafe.core.BuildConfig;
 import com.qihoo360.replugin.RePlugin;
+import com.qihoo360.replugin.base.BinderStats;
 import com.qihoo360.replugin.base.IPC;
-import com.qihoo360.replugin.base.ThreadUtils;
 import com.qihoo360.replugin.component.ComponentList;
 import com.qihoo360.replugin.component.utils.PluginClientHelper;
 import com.qihoo360.replugin.helper.JSONHelper;
 import com.qihoo360.replugin.helper.LogDebug;
 import com.qihoo360.replugin.helper.LogRelease;
 import com.qihoo360.replugin.utils.basic.ArrayMap;
+import com.qihoo360.replugin.utils.basic.IntObjectMap;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -53,7 +57,6 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Map;
-import java.util.concurrent.Callable;
 
 import static com.qihoo360.replugin.helper.LogDebug.LOG;
 import static com.qihoo360.replugin.helper.LogDebug.PLUGIN_TAG;
@@ -61,6 +64,10 @@ import static com.qihoo360.replugin.helper.LogRelease.LOGR;
 
 /**
  * 负责Server端的服务调度、提供等工作，是服务的提供方，核心类之一
+ * <p>
+ * 每个服务（ServiceRecord）有自己的锁，一个服务的操作不会阻塞其它服务；LOCKER 只保护各服务共用的表，且只短暂持有。
+ * 需要创建服务时，onCreate 交给主线程执行，Binder 线程立即返回：startService 的 onStartCommand、bindService 的 connected 都在创建完成后再进行。
+ * 主线程不获取 ServiceRecord.lock（Binder 线程持锁时可能正在执行插件的 onBind 等代码），需要加锁的后续处理交给后台线程。
  *
  * @author RePlugin Team
  */
@@ -68,6 +75,10 @@ public class PluginServiceServer {
 
     private static final String TAG = "PluginServiceServer";
 
+    /**
+     * 保护 mProcesses、mServiceConnections、mServicesByName、mServicesByIntent 等共用的表
+     * 同时需要 ServiceRecord.lock 时，必须先持有 ServiceRecord.lock
+     */
     private static final byte[] LOCKER = new byte[0];
 
     /**
@@ -75,6 +86,11 @@ public class PluginServiceServer {
      */
     private static final int WHAT_ON_START_COMMAND = 1;
 
+    /**
+     * 创建Service（onCreate）超过此时间仍未完成时，输出诊断信息
+     */
+    private static final int INSTALL_TIMEOUT = 6000;
+
     private final Context mContext;
 
     private final Stub mStub;
@@ -84,7 +100,7 @@ public class PluginServiceServer {
     /**
      * PID -> ProcessRecord对象
      */
-    final ArrayMap<Integer, ProcessRecord> mProcesses = new ArrayMap<>();
+    final IntObjectMap<ProcessRecord> mProcesses = new IntObjectMap<>();
 
     /**
      * K：IServiceConnection（ServiceConnect）对象
@@ -95,6 +111,12 @@ public class PluginServiceServer {
     private final ArrayMap<ComponentName, ServiceRecord> mServicesByName = new ArrayMap<>();
     private final ArrayMap<Intent.FilterComparison, ServiceRecord> mServicesByIntent = new ArrayMap<>();
 
+    /**
+     * 等待在主线程中执行的onStartCommand，按请求的顺序排列
+     * 连续到达的多个请求只投递一次消息，在一次主线程调度中依次执行
+     */
+    private final ArrayList<Pair<ServiceRecord, Intent>> mPendingStarts = new ArrayList<>();
+
     private Handler mHandler = new Handler(Looper.getMainLooper()) {
         @Override
         public void handleMessage(Message msg) {
@@ -102,18 +124,7 @@ public class PluginServiceServer {
 
             switch (msg.what) {
                 case WHAT_ON_START_COMMAND:
-                    Bundle data = msg.getData();
-                    Intent intent = data.getParcelable("intent");
-
-                    ServiceRecord sr = (ServiceRecord)msg.obj;
-
-                    if (intent != null && sr != null) {
-                        sr.service.onStartCommand(intent, 0, 0);
-                    }else{
-                        if (LOG) {
-                            LogDebug.e(PLUGIN_TAG, "pss.onStartCommand fail.");
-                        }
-                    }
+                    dispatchStartCommands();
                     break;
             }
         }
@@ -125,47 +136,106 @@ public class PluginServiceServer {
     }
 
     // 启动插件Service。说明见PluginServiceClient的定义
-    ComponentName startServiceLocked(Intent intent, Messenger client) {
-        intent = cloneIntentLocked(intent);
+    ComponentName startServiceInner(Intent intent, Messenger client) {
+        intent = cloneIntent(intent);
         ComponentName cn = intent.getComponent();
 //        ProcessRecord callerPr = retrieveProcessRecordLocked(client);
-        final ServiceRecord sr = retrieveServiceLocked(intent);
-        if (sr == null) {
-            return null;
-        }
-        if (!installServiceIfNeededLocked(sr)) {
-            return null;
+        ServiceRecord sr;
+        for (;;) {
+            sr = retrieveService(intent);
+            if (sr == null) {
+                return null;
+            }
+            synchronized (sr.lock) {
+                if (sr.destroyed) {
+                    // 刚被回收，重新获取
+                    continue;
+                }
+                installServiceIfNeededLocked(sr);
+                if (sr.destroyed) {
+                    // 创建失败
+                    return null;
+                }
+                sr.startRequested = true;
+            }
+            break;
         }
 
-        sr.startRequested = true;
-
-        // 加入到列表中，统一管理
-        mServicesByName.put(cn, sr);
-
         if (LOG) {
             LogDebug.i(PLUGIN_TAG, "PSM.startService(): Start! in=" + intent + "; sr=" + sr);
         }
 
         // 从binder线程post到ui线程，去执行Service的onStartCommand操作
-        Message message = mHandler.obtainMessage(WHAT_ON_START_COMMAND);
-        Bundle data = new Bundle();
-        data.putParcelable("intent", intent);
-        message.setData(data);
-        message.obj = sr;
-        mHandler.sendMessage(message);
+        // 若Service正在主线程中创建，则会排在创建之后执行
+        boolean post;
+        synchronized (mPendingStarts) {
+            post = mPendingStarts.isEmpty();
+            mPendingStarts.add(new Pair<>(sr, intent));
+        }
+        if (post) {
+            mHandler.sendEmptyMessage(WHAT_ON_START_COMMAND);
+        }
 
         return cn;
     }
 
+    // 批量启动插件Service，结果与intents一一对应
+    ComponentName[] startServicesInner(Intent[] intents, Messenger client) {
+        if (intents == null) {
+            return new ComponentName[0];
+        }
+        ComponentName[] result = new ComponentName[intents.length];
+        for (int i = 0; i < intents.length; i++) {
+            result[i] = startServiceInner(intents[i], client);
+        }
+        return result;
+    }
+
+    // 在主线程中，按顺序执行排队的onStartCommand
+    private void dispatchStartCommands() {
+        for (;;) {
+            Pair<ServiceRecord, Intent> p;
+            synchronized (mPendingStarts) {
+                if (mPendingStarts.isEmpty()) {
+                    return;
+                }
+                p = mPendingStarts.get(0);
+            }
+            ServiceRecord sr = p.first;
+            if (!sr.created) {
+                // 该Service的创建排在本消息之后，创建完成后会再次调用本方法，以保证顺序
+                return;
+            }
+            synchronized (mPendingStarts) {
+                mPendingStarts.remove(0);
+            }
+            // 创建失败，或在此之前已被回收，则不再调用
+            Service service = sr.destroyed ? null : sr.createdService;
+
+            if (service != null) {
+                service.onStartCommand(p.second, 0, 0);
+            } else {
+                if (LOG) {
+                    LogDebug.e(PLUGIN_TAG, "pss.onStartCommand fail.");
+                }
+            }
+        }
+    }
+
     // 停止插件的Service。说明见PluginServiceClient的定义
-    int stopServiceLocked(Intent intent) {
-        intent = cloneIntentLocked(intent);
-        ServiceRecord sr = getServiceLocked(intent);
+    int stopServiceInner(Intent intent) {
+        intent = cloneIntent(intent);
+        ServiceRecord sr = getService(intent);
         if (sr == null) {
             return 0;
         }
-        sr.startRequested = false;
-        recycleServiceIfNeededLocked(sr);
+        synchronized (sr.lock) {
+            if (sr.destroyed) {
+                return 0;
+            }
+            sr.startRequested = false;
+            recycleServiceIfNeededLocked(sr);
+        }
 
         if (LOG) {
             LogDebug.i(PLUGIN_TAG, "PSM.stopService(): Stop! in=" + intent + "; sr=" + sr);
@@ -174,27 +244,67 @@ public class PluginServiceServer {
     }
 
     // 绑定插件Service。说明见PluginServiceClient的定义
-    int bindServiceLocked(Intent intent, IServiceConnection connection, int flags, Messenger client) {
-        intent = cloneIntentLocked(intent);
-        ComponentName cn = intent.getComponent();
-        ProcessRecord callerPr = retrieveProcessRecordLocked(client);
-        ServiceRecord sr = retrieveServiceLocked(intent);
-        if (sr == null) {
-            return 0;
+    int bindServiceInner(Intent intent, IServiceConnection connection, int flags, Messenger client) {
+        intent = cloneIntent(intent);
+        ProcessRecord callerPr;
+        synchronized (LOCKER) {
+            callerPr = retrieveProcessRecordLocked(client);
+        }
+        for (;;) {
+            ServiceRecord sr = retrieveService(intent);
+            if (sr == null) {
+                return 0;
+            }
+            synchronized (sr.lock) {
+                if (sr.destroyed) {
+                    // 刚被回收，重新获取
+                    continue;
+                }
+                boolean ready = installServiceIfNeededLocked(sr);
+                if (sr.destroyed) {
+                    // 创建失败
+                    return 0;
+                }
+
+                // 将ServiceConnection连接加入各种表中
+                ProcessBindRecord b = sr.retrieveAppBindingLocked(intent, callerPr);
+                ConnectionBindRecord c = insertConnectionToRecordsLocked(sr, b, connection, flags);
+
+                if (ready) {
+                    callBindLocked(sr, c, intent);
+                } else {
+                    // Service正在主线程中创建，创建完成后再调用onBind和connected
+                    c.pending = true;
+                }
+                if (LOG) {
+                    LogDebug.i(PLUGIN_TAG, "PSM.bindService(): Bind! inb=" + b + "; fl=" + flags + "; pending=" + c.pending + "; sr=" + sr);
+                }
+            }
+            return 1;
         }
-        if (!installServiceIfNeededLocked(sr)) {
-            return 0;
+    }
+
+    // 批量绑定插件Service，结果与intents一一对应
+    int[] bindServicesInner(Intent[] intents, IServiceConnection connection, int flags, Messenger client) {
+        if (intents == null) {
+            return new int[0];
+        }
+        int[] result = new int[intents.length];
+        for (int i = 0; i < intents.length; i++) {
+            result[i] = bindServiceInner(intents[i], connection, flags, client);
         }
+        return result;
+    }
 
-        // 将ServiceConnection连接加入各种表中
-        ProcessBindRecord b = sr.retrieveAppBindingLocked(intent, callerPr);
-        insertConnectionToRecords(sr, b, connection, flags);
+    // 按需调用onBind，并回调Client端的ServiceConnection。需持有 sr.lock
+    private void callBindLocked(ServiceRecord sr, ConnectionBindRecord c, Intent intent) {
+        ProcessBindRecord b = c.binding;
 
         // 判断是否已经绑定过
         if (b.intent.hasBound) {
             // 之前此Intent已绑定过，则直接返回。像系统那样
             // 注意：不管哪个进程，只要第一次绑定过了，其后直接返回。像系统那样
-            callConnectedMethodLocked(connection, cn, b.intent.binder);
+            callConnectedMethodLocked(c.conn, sr.name, b.intent.binder);
         } else {
             // 没有绑定，则直接调用onBind，且记录绑定状态
             if (b.intent.apps.size() > 0) {
@@ -203,17 +313,14 @@ public class PluginServiceServer {
                 b.intent.binder = bd;
                 if (bd != null) {
                     // 为空就不会回调，但仍算绑定成功。像系统那样
-                    callConnectedMethodLocked(connection, cn, bd);
+                    callConnectedMethodLocked(c.conn, sr.name, bd);
                 }
             }
         }
-        if (LOG) {
-            LogDebug.i(PLUGIN_TAG, "PSM.bindService(): Bind! inb=" + b + "; fl=" + flags + "; sr=" + sr);
-        }
-        return 1;
     }
 
-    private void insertConnectionToRecords(ServiceRecord sr, ProcessBindRecord b, IServiceConnection connection, int flags) {
+    // 需持有 sr.lock
+    private ConnectionBindRecord insertConnectionToRecordsLocked(ServiceRecord sr, ProcessBindRecord b, IServiceConnection connection, int flags) {
         ConnectionBindRecord c = new ConnectionBindRecord(b, connection, flags);
         IBinder binder = connection.asBinder();
 
@@ -228,41 +335,49 @@ public class PluginServiceServer {
         // ProcessBindRecord.connections<List>
         b.connections.add(c);
 
-        // ProcessRecord.connections<List>
-        b.client.connections.add(c);
+        synchronized (LOCKER) {
+            // ProcessRecord.connections<List>
+            b.client.connections.add(c);
 
-        // PluginServiceServer.mServiceConnections<Map - Key:IBinder>
-        clist = mServiceConnections.get(binder);
-        if (clist == null) {
-            clist = new ArrayList<>();
-            mServiceConnections.put(binder, clist);
+            // PluginServiceServer.mServiceConnections<Map - Key:IBinder>
+            clist = mServiceConnections.get(binder);
+            if (clist == null) {
+                clist = new ArrayList<>();
+                mServiceConnections.put(binder, clist);
+            }
+            clist.add(c);
         }
-        clist.add(c);
+        return c;
     }
 
     // 取消插件Service的绑定。说明见PluginServiceClient的定义
-    boolean unbindServiceLocked(IServiceConnection connection) {
+    boolean unbindServiceInner(IServiceConnection connection) {
         // ServiceConnection可以绑定多个服务，这次需逐一解绑
         IBinder binder = connection.asBinder();
-        ArrayList<ConnectionBindRecord> clist = mServiceConnections.get(binder);
+        ArrayList<ConnectionBindRecord> clist;
+        synchronized (LOCKER) {
+            clist = mServiceConnections.get(binder);
+            if (clist != null) {
+                // 各服务的锁需先于LOCKER获取，故复制一份后在锁外逐一处理
+                clist = new ArrayList<>(clist);
+            }
+        }
         if (clist == null) {
             if (LOG) {
                 LogDebug.i(PLUGIN_TAG, "PSM.unbindService(): clist is null!");
             }
             return false;
         }
-        while (clist.size() > 0) {
-            ConnectionBindRecord r = clist.get(0);
-            removeConnectionLocked(r);
-            if (clist.size() > 0 && clist.get(0) == r) {
-                // In case it didn't get removed above, do it now.
-                clist.remove(0);
+        for (ConnectionBindRecord r : clist) {
+            ServiceRecord sr = r.binding.service;
+            synchronized (sr.lock) {
+                removeConnectionLocked(r);
             }
         }
         return true;
     }
 
-    // 将此Connection（ServiceConnection）从各种表中清除，并按需调用onUnbind方法
+    // 将此Connection（ServiceConnection）从各种表中清除，并按需调用onUnbind方法。需持有 sr.lock
     // NOTE 有点像ActiveServices.removeConnectionLocked，但在处理逻辑上有不同
     private void removeConnectionLocked(ConnectionBindRecord c) {
         IBinder binder = c.conn.asBinder();
@@ -271,24 +386,27 @@ public class PluginServiceServer {
 
         // ServiceRecord.connections<Map - Key:IBinder>
         ArrayList<ConnectionBindRecord> clist = s.connections.get(binder);
-        if (clist != null) {
-            clist.remove(c);
-            if (clist.size() == 0) {
-                s.connections.remove(binder);
-            }
+        if (clist == null || !clist.remove(c)) {
+            // 已被移除过（如同一个连接被并发地解绑）
+            return;
+        }
+        if (clist.size() == 0) {
+            s.connections.remove(binder);
         }
         // ProcessBindRecord.connections<List>
         b.connections.remove(c);
 
-        // ProcessRecord.connections<List>
-        b.client.connections.remove(c);
+        synchronized (LOCKER) {
+            // ProcessRecord.connections<List>
+            b.client.connections.remove(c);
 
-        // PluginServiceServer.mServiceConnections<Map - Key:IBinder>
-        clist = mServiceConnections.get(binder);
-        if (clist != null) {
-            clist.remove(c);
-            if (clist.size() == 0) {
-                mServiceConnections.remove(binder);
+            // PluginServiceServer.mServiceConnections<Map - Key:IBinder>
+            clist = mServiceConnections.get(binder);
+            if (clist != null) {
+                clist.remove(c);
+                if (clist.size() == 0) {
+                    mServiceConnections.remove(binder);
+                }
             }
         }
 
@@ -328,28 +446,33 @@ public class PluginServiceServer {
     // 若Client和Server在同一进程，则两者的intent对象完全相同
     // 换言之，如果Client端修改了intent对象，则对应的，server端也会被修改，这不符合预期
     // 故，所有的Intent操作都必须Clone一份
-    private Intent cloneIntentLocked(Intent intent) {
+    private Intent cloneIntent(Intent intent) {
         return new Intent(intent);
     }
 
     // 通过Intent获取ServiceRecord服务，如无则直接返回Null
-    private ServiceRecord getServiceLocked(Intent service) {
+    private ServiceRecord getService(Intent service) {
         ComponentName cn = service.getComponent();
-        return mServicesByName.get(cn);
+        synchronized (LOCKER) {
+            return mServicesByName.get(cn);
+        }
     }
 
-    // 通过Intent对象创建或获取ServiceRecord服务。涉及到插件信息的获取
-    private ServiceRecord retrieveServiceLocked(Intent service) {
+    // 通过Intent对象创建或获取ServiceRecord服务。涉及到插件信息的获取，这部分不持有LOCKER
+    private ServiceRecord retrieveService(Intent service) {
         ComponentName cn = service.getComponent();
-        ServiceRecord sr = mServicesByName.get(cn);
-        if (sr != null) {
-            return sr;
-        }
-
         Intent.FilterComparison fi = new Intent.FilterComparison(service);
-        sr = mServicesByIntent.get(fi);
-        if (sr != null) {
-            return sr;
+        ServiceRecord sr;
+        synchronized (LOCKER) {
+            sr = mServicesByName.get(cn);
+            if (sr != null) {
+                return sr;
+            }
+
+            sr = mServicesByIntent.get(fi);
+            if (sr != null) {
+                return sr;
+            }
         }
         String pn = cn.getPackageName();
         String name = cn.getClassName();
@@ -379,55 +502,133 @@ public class PluginServiceServer {
         }
 
         // 构建，放入表中
-
-        sr = new ServiceRecord(cn, fi, si);
-        mServicesByName.put(cn, sr);
-        mServicesByIntent.put(fi, sr);
+        synchronized (LOCKER) {
+            // 其它线程可能已抢先构建
+            ServiceRecord exist = mServicesByName.get(cn);
+            if (exist != null) {
+                return exist;
+            }
+            sr = new ServiceRecord(cn, fi, si);
+            mServicesByName.put(cn, sr);
+            mServicesByIntent.put(fi, sr);
+        }
         return sr;
     }
 
-    // 判断是否已加载过Service对象，如无则创建它
+    // 判断是否已加载过Service对象，如无则创建它。需持有 sr.lock
+    // 不在主线程时，创建（onCreate）交给主线程，本方法立即返回，不阻塞Binder线程；创建完成后由 onServiceInstalledLocked 继续处理
+    // 返回Service是否已可用；创建失败时 sr.destroyed 为 true
     private boolean installServiceIfNeededLocked(final ServiceRecord sr) {
         if (sr.service != null) {
             return true;
         }
+        if (sr.installing) {
+            return false;
+        }
 
-        try {
-            Boolean result = ThreadUtils.syncToMainThread(new Callable<Boolean>() {
-                @Override
-                public Boolean call() {
-                    return installServiceLocked(sr);
-                }
-            }, 6000);
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            // 同进程内在主线程中调用，直接创建
+            Service s = createService(sr);
+            sr.created = true;
+            sr.createdService = s;
+            onServiceInstalledLocked(sr, s);
+            return s != null;
+        }
+
+        final long startAt = SystemClock.elapsedRealtime();
+        sr.installing = true;
+        sr.installStartAt = startAt;
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                // onCreate 在锁外执行，其间本服务的其它请求也不会被阻塞
+                final Service s = createService(sr);
+                sr.created = true;
+                sr.createdService = s;
+
+                // 登记结果、处理创建期间到达的绑定请求需持有 sr.lock，交给后台线程，主线程不等待
+                Tasks.post2Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        synchronized (sr.lock) {
+                            sr.installing = false;
+                            onServiceInstalledLocked(sr, s);
+                            if (!sr.destroyed) {
+                                // 创建期间可能已被stopService或unbindService
+                                recycleServiceIfNeededLocked(sr);
+                            }
+                        }
+                        if (LOG) {
+                            LogDebug.d(PLUGIN_TAG, "pss.install: done " + sr.shortName + " ok=" + (s != null) + " cost=" + (SystemClock.elapsedRealtime() - startAt));
+                        }
+                    }
+                });
 
-            if (result == null) {
-                return false;
+                // 执行等待本服务创建的 onStartCommand
+                dispatchStartCommands();
             }
-            return result;
-        } catch (Throwable e) {
-            if (LOG) {
-                LogDebug.e(PLUGIN_TAG, "pss.isinl e:", e);
+        });
+        Tasks.postDelayed2Thread(new InstallWatchdog(sr, startAt), INSTALL_TIMEOUT);
+        return false;
+    }
+
+    // Service创建完成（s为空表示失败），继续处理创建期间到达的绑定请求。需持有 sr.lock
+    private void onServiceInstalledLocked(ServiceRecord sr, Service s) {
+        if (s == null) {
+            abandonServiceLocked(sr);
+            return;
+        }
+        sr.service = s;
+
+        // 开启“坑位”服务，防止进程被杀
+        ComponentName pitCN = getPitComponentName();
+        sr.pitComponentName = pitCN;
+        startPitService(pitCN);
+
+        for (int conni = sr.connections.size() - 1; conni >= 0; conni--) {
+            ArrayList<ConnectionBindRecord> clist = sr.connections.valueAt(conni);
+            for (int i = 0; i < clist.size(); i++) {
+                ConnectionBindRecord c = clist.get(i);
+                if (c.pending) {
+                    c.pending = false;
+                    callBindLocked(sr, c, c.binding.intent.intent.getIntent());
+                }
             }
-            return false;
         }
     }
 
-    // 加载插件，获取Service对象，并将其缓存起来
-    private boolean installServiceLocked(ServiceRecord sr) {
+    // Service创建失败：清除等待中的连接，并移除此记录。需持有 sr.lock
+    private void abandonServiceLocked(ServiceRecord sr) {
+        if (LOGR) {
+            LogRelease.e(PLUGIN_TAG, "pss.abandon: " + sr.shortName);
+        }
+        sr.startRequested = false;
+        ArrayList<ConnectionBindRecord> all = new ArrayList<>();
+        for (int conni = sr.connections.size() - 1; conni >= 0; conni--) {
+            all.addAll(sr.connections.valueAt(conni));
+        }
+        for (ConnectionBindRecord c : all) {
+            removeConnectionLocked(c);
+        }
+        recycleServiceLocked(sr);
+    }
+
+    // 加载插件，创建Service对象并调用onCreate。须在主线程中调用，失败时返回null
+    private Service createService(ServiceRecord sr) {
         // 通过ServiceInfo创建Service对象
         Context plgc = Factory.queryPluginContext(sr.plugin);
         if (plgc == null) {
             if (LogDebug.LOG) {
                 Log.e(TAG, "installServiceLocked(): Fetch Context Error! pn=" + sr.plugin);
             }
-            return false;
+            return null;
         }
         ClassLoader cl = plgc.getClassLoader();
         if (cl == null) {
             if (LOGR) {
                 LogRelease.e(PLUGIN_TAG, "psm.is: cl n " + sr.className);
             }
-            return false;
+            return null;
         }
 
         // 构建Service对象
@@ -438,26 +639,27 @@ public class PluginServiceServer {
             if (LOGR) {
                 LogRelease.e(TAG, "isl: ni f " + sr.plugin, e);
             }
-            return false;
+            return null;
         }
 
         // 只复写Context，别的都不做
         try {
-            attachBaseContextLocked(s, plgc);
+            attachBaseContext(s, plgc);
         } catch (Throwable e) {
             if (LOGR) {
                 LogRelease.e(PLUGIN_TAG, "psm.is: abc e", e);
             }
-            return false;
+            return null;
         }
-        s.onCreate();
-        sr.service = s;
-
-        // 开启“坑位”服务，防止进程被杀
-        ComponentName pitCN = getPitComponentName();
-        sr.pitComponentName = pitCN;
-        startPitService(pitCN);
-        return true;
+        try {
+            s.onCreate();
+        } catch (Throwable e) {
+            if (LOGR) {
+                LogRelease.e(PLUGIN_TAG, "psm.is: oc e " + sr.shortName, e);
+            }
+            return null;
+        }
+        return s;
     }
 
     // 最终会调用Client端的ServiceConnection
@@ -471,9 +673,16 @@ public class PluginServiceServer {
         }
     }
 
-    // 判断是否绑定或启动服务，根据情况来释放Service
+    // 判断是否绑定或启动服务，根据情况来释放Service。需持有 sr.lock
     // NOTE 有点像ActiveServices.bringDownServiceIfNeededLocked，但在处理逻辑上有不同
     private void recycleServiceIfNeededLocked(ServiceRecord sr) {
+        // 正在创建？创建完成后会再次判断
+        if (sr.installing) {
+            if (LOG) {
+                LogDebug.i(PLUGIN_TAG, "PSM.recycleServiceIfNeededLocked(): Not Recycle because installing! sr=" + sr);
+            }
+            return;
+        }
         // 是否已被startService开启？
         if (sr.startRequested) {
             if (LOG) {
@@ -493,12 +702,14 @@ public class PluginServiceServer {
         recycleServiceLocked(sr);
     }
 
-    // 释放Service的全部资源，调用onDestroy方法，并停止“坑位服务”
+    // 释放Service的全部资源，调用onDestroy方法，并停止“坑位服务”。需持有 r.lock
     // NOTE 有点像ActiveServices.bringDownServiceLocked，但在处理逻辑上有不同
     private void recycleServiceLocked(ServiceRecord r) {
         if (LOG) {
             LogDebug.i(PLUGIN_TAG, "PSM.recycleServiceLocked(): Recycle Now!");
         }
+        r.destroyed = true;
+
         // Report to all of the connections that the service is no longer
         // available.
         for (int conni = r.connections.size() - 1; conni >= 0; conni--) {
@@ -511,13 +722,24 @@ public class PluginServiceServer {
                 callConnectedMethodLocked(cr.conn, r.name, null);
             }
         }
-        mServicesByName.remove(r.name);
-        mServicesByIntent.remove(r.intent);
+        synchronized (LOCKER) {
+            if (mServicesByName.get(r.name) == r) {
+                mServicesByName.remove(r.name);
+            }
+            if (mServicesByIntent.get(r.intent) == r) {
+                mServicesByIntent.remove(r.intent);
+            }
+        }
 
         if (r.bindings.size() > 0) {
             r.bindings.clear();
         }
 
+        if (r.service == null) {
+            // 创建失败的，无需再销毁
+            return;
+        }
+
         r.service.onDestroy();
 
         // 停止“坑位”服务，系统可以根据需要来回收了
@@ -527,7 +749,7 @@ public class PluginServiceServer {
     }
 
     // 通过反射调用Service.attachBaseContext方法（Protected的）
-    private void attachBaseContextLocked(ContextWrapper cw, Context c) throws NoSuchMethodException, InvocationTargetException, IllegalAccessException, NoSuchFieldException {
+    private void attachBaseContext(ContextWrapper cw, Context c) throws NoSuchMethodException, InvocationTargetException, IllegalAccessException, NoSuchFieldException {
         if (mAttachBaseContextMethod == null) {
             mAttachBaseContextMethod = ContextWrapper.class.getDeclaredMethod("attachBaseContext", Context.class);
             mAttachBaseContextMethod.setAccessible(true);
@@ -542,34 +764,71 @@ public class PluginServiceServer {
         }
     }
 
+    /**
+     * 创建Service超时后的诊断：输出是哪个服务在等待主线程，以及主线程当前的调用栈（通常是其它插件的 onCreate 或主线程中的耗时操作）
+     * 创建完成之前，每隔 INSTALL_TIMEOUT 输出一次
+     */
+    private static final class InstallWatchdog implements Runnable {
+
+        private final ServiceRecord mRecord;
+
+        private final long mStartAt;
+
+        InstallWatchdog(ServiceRecord sr, long startAt) {
+            mRecord = sr;
+            mStartAt = startAt;
+        }
+
+        @Override
+        public void run() {
+            synchronized (mRecord.lock) {
+                if (!mRecord.installing || mRecord.installStartAt != mStartAt) {
+                    return;
+                }
+            }
+            if (LOGR) {
+                StringBuilder sb = new StringBuilder();
+                StackTraceElement[] stack = Looper.getMainLooper().getThread().getStackTrace();
+                for (int i = 0; i < stack.length && i < 12; i++) {
+                    sb.append("\n    at ").append(stack[i]);
+                }
+                LogRelease.e(PLUGIN_TAG, "pss.iw: " + mRecord.shortName + " not created after " + (SystemClock.elapsedRealtime() - mStartAt) + "ms, main:" + sb);
+            }
+            Tasks.postDelayed2Thread(this, INSTALL_TIMEOUT);
+        }
+    }
+
     class Stub extends IPluginServiceServer.Stub {
 
         @Override
-        public ComponentName startService(Intent intent, Messenger client) throws RemoteException {
-            synchronized (LOCKER) {
-                return PluginServiceServer.this.startServiceLocked(intent, client);
+        public boolean onTransact(int code, Parcel data, Parcel reply, int flags) throws RemoteException {
+            // 统计每个方法的调用次数与耗时（见 BinderStats）
+            long start = BinderStats.begin();
+            try {
+                return super.onTransact(code, data, reply, flags);
+            } finally {
+                BinderStats.endIncoming(IPluginServiceServer.Stub.class, code, data, reply, start);
             }
         }
 
+        @Override
+        public ComponentName startService(Intent intent, Messenger client) throws RemoteException {
+            return PluginServiceServer.this.startServiceInner(intent, client);
+        }
+
         @Override
         public int stopService(Intent intent, Messenger client) throws RemoteException {
-            synchronized (LOCKER) {
-                return PluginServiceServer.this.stopServiceLocked(intent);
-            }
+            return PluginServiceServer.this.stopServiceInner(intent);
         }
 
         @Override
         public int bindService(Intent intent, IServiceConnection conn, int flags, Messenger client) throws RemoteException {
-            synchronized (LOCKER) {
-                return PluginServiceServer.this.bindServiceLocked(intent, conn, flags, client);
-            }
+            return PluginServiceServer.this.bindServiceInner(intent, conn, flags, client);
         }
 
         @Override
         public boolean unbindService(IServiceConnection conn) throws RemoteException {
-            synchronized (LOCKER) {
-                return PluginServiceServer.this.unbindServiceLocked(conn);
-            }
+            return PluginServiceServer.this.unbindServiceInner(conn);
         }
 
         @Override
@@ -578,6 +837,16 @@ public class PluginServiceServer {
                 return PluginServiceServer.this.dump();
             }
         }
+
+        @Override
+        public ComponentName[] startServices(Intent[] intents, Messenger client) throws RemoteException {
+            return PluginServiceServer.this.startServicesInner(intents, client);
+        }
+
+        @Override
+        public int[] bindServices(Intent[] intents, IServiceConnection conn, int flags, Messenger client) throws RemoteException {
+            return PluginServiceServer.this.bindServicesInner(intents, conn, flags, client);
+        }
     }
 
     // 通过Client端传来的IBinder（Messenger）来获取Pid，以及进程信息
@@ -658,7 +927,13 @@ public class PluginServiceServer {
             JSONHelper.putNoThrows(serviceObj, "className", key.getClassName());
             JSONHelper.putNoThrows(serviceObj, "process", value.getServiceInfo().processName);
             JSONHelper.putNoThrows(serviceObj, "plugin", value.getPlugin());
-            JSONHelper.putNoThrows(serviceObj, "pitClassName", value.getPitComponentName().getClassName());
+            if (value.getPitComponentName() != null) {
+                JSONHelper.putNoThrows(serviceObj, "pitClassName", value.getPitComponentName().getClassName());
+            }
+            if (value.installing) {
+                // 正在主线程中创建，输出已等待的时间
+                JSONHelper.putNoThrows(serviceObj, "installing", SystemClock.elapsedRealtime() - value.installStartAt);
+            }
 
             jsonArray.put(serviceObj);
         }
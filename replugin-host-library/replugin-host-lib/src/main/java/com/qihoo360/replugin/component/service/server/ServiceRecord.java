@@ -51,9 +51,29 @@ class ServiceRecord {
     // 可用来创建Service的ServiceInfo对象
     final ServiceInfo serviceInfo;
 
+    // 保护本服务的各项状态（绑定、连接、生命周期）。不同服务之间互不阻塞
+    // 需要同时持有 PluginServiceServer.LOCKER 时，必须先持有此锁
+    final byte[] lock = new byte[0];
+
     // Service对象
     Service service;
 
+    // 是否正在主线程中创建（onCreate）
+    boolean installing;
+
+    // 开始创建的时间，用于诊断主线程被阻塞的情况
+    long installStartAt;
+
+    // 是否已被回收（或创建失败）。已回收的记录不能再使用，需重新获取
+    // 主线程不获取 lock，会直接读取此值
+    volatile boolean destroyed;
+
+    // 主线程是否已执行过创建（无论成功与否）。只在主线程中读写
+    boolean created;
+
+    // 主线程创建的结果，失败时为空。只在主线程中读写，供 onStartCommand 使用
+    Service createdService;
+
     // 替当前 "插件服务" 在AMS中占坑的组件
     ComponentName pitComponentName;
 
@@ -18,8 +18,11 @@ package com.qihoo360.replugin.component.utils;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import java.util.zip.GZIPInputStream;
 
@@ -28,6 +31,9 @@ import java.util.zip.GZIPInputStream;
  * <p>
  * 读取 apk 文件的 comment。
  * apk 的 comment 段为【内容(content)+内容长度(LITTLE_ENDIAN两字节)+魔法标记(MAGIC)】，
+ * 其中内容有两种，二者同时存在时组件索引在后：
+ * 1. 魔法标记为 (MS-PLG)：gzip 压缩过的 AndroidManifest 文本（旧格式，仍然支持）
+ * 2. 魔法标记为 (RP-IDX)：由 replugin-plugin-gradle 生成的二进制组件索引，见 ManifestIndexReader
  *
  * @author RePlugin Team
  */
@@ -38,6 +44,92 @@ public class ApkCommentReader {
      */
     private static final byte[] MAGIC = new byte[]{0x28, 0x4d, 0x53, 0x2d, 0x50, 0x4c, 0x47, 0x29}; // (MS-PLG)
 
+    /**
+     * 组件索引的魔法标记
+     */
+    private static final byte[] INDEX_MAGIC = new byte[]{0x28, 0x52, 0x50, 0x2d, 0x49, 0x44, 0x58, 0x29}; // (RP-IDX)
+
+    /**
+     * 读取组件索引时，一次性预读的文件尾部长度
+     */
+    private static final int INDEX_READ_AHEAD = 8 * 1024;
+
+    /**
+     * 读取 apk comment 中的二进制组件索引
+     * <p>
+     * 通常只需对文件尾部做一次定位读即可同时拿到魔法标记、长度和索引内容；
+     * 返回的 ByteBuffer 直接指向读到的数据，不做额外拷贝。
+     *
+     * @param path apk 文件路径
+     * @return 索引内容，没有索引时返回 null
+     */
+    public static ByteBuffer readManifestIndex(String path) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(path, "r");
+            FileChannel channel = raf.getChannel();
+            long fileLen = channel.size();
+
+            int tailLen = (int) Math.min(fileLen, INDEX_READ_AHEAD);
+            ByteBuffer tail = ByteBuffer.allocate(tailLen);
+            readFully(channel, tail, fileLen - tailLen);
+
+            /* 判断文件结尾是否具有索引的魔法标记 */
+            int magicPos = tailLen - INDEX_MAGIC.length;
+            if (magicPos < 2) {
+                return null;
+            }
+            for (int i = 0; i < INDEX_MAGIC.length; i++) {
+                if (tail.get(magicPos + i) != INDEX_MAGIC[i]) {
+                    return null;
+                }
+            }
+
+            /* 内容长度，和 zip 定义一致，为 LITTLE_ENDIAN 2字节 */
+            int length = (tail.get(magicPos - 1) << 8 & 0xFF00) | (tail.get(magicPos - 2) & 0xFF);
+            if (length <= 0) {
+                return null;
+            }
+
+            int start = magicPos - 2 - length;
+            if (start >= 0) {
+                tail.limit(start + length);
+                tail.position(start);
+                return tail.slice();
+            }
+
+            // 索引比预读的部分还大，按确切位置再读一次
+            long contentPos = fileLen - INDEX_MAGIC.length - 2 - length;
+            if (contentPos < 0) {
+                return null;
+            }
+            ByteBuffer content = ByteBuffer.allocate(length);
+            readFully(channel, content, contentPos);
+            content.flip();
+            return content;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
     /**
      * 读取 apk 的注释
      *
@@ -78,6 +170,19 @@ public class ApkCommentReader {
             raf.seek(index);
             byte[] magicBuffer = new byte[MAGIC.length];
             raf.readFully(magicBuffer);
+            if (Arrays.equals(magicBuffer, INDEX_MAGIC)) {
+                // 组件索引是追加在原有 comment 之后的，跳过它再看前面是否还有 (MS-PLG)
+                index -= 2;
+                raf.seek(index);
+                byte[] indexLen = new byte[2];
+                raf.readFully(indexLen);
+                index -= ((indexLen[1] << 8 & 0xFF00) | (indexLen[0] & 0xFF)) + MAGIC.length;
+                if (index < 0) {
+                    return null;
+                }
+                raf.seek(index);
+                raf.readFully(magicBuffer);
+            }
             if (!Arrays.equals(magicBuffer, MAGIC)) {
                 return null;
             }
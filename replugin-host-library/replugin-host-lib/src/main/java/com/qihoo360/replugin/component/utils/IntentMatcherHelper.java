@@ -44,8 +44,8 @@ public class IntentMatcherHelper {
     /**
      * 根据 Intent 以及 plugin 匹配 Activity
      * <p>
-     * 遍历plugin插件中，保存的 Activity 的 IntentFilter 数据，进行匹配，
-     * 返回第一个符合条件的 ActivityInfo 对象.
+     * 通过 plugin 插件的 IntentFilter 索引查找候选的 Activity，进行匹配，
+     * 返回第一个（按 priority 从高到低）符合条件的 ActivityInfo 对象.
      *
      * @param context Context
      * @param plugin  插件名称
@@ -57,8 +57,19 @@ public class IntentMatcherHelper {
             return null;
         }
 
-        String activity = doMatchIntent(context, intent, ManifestParser.INS.getActivityFilterMap(plugin));
-        return Factory.queryActivityInfo(plugin, activity);
+        IntentResolveCache.Result cached = IntentResolveCache.get(IntentResolveCache.KIND_ACTIVITY, plugin, intent);
+        if (cached != null) {
+            return (ActivityInfo) cached.info;
+        }
+
+        int generation = IntentResolveCache.generation();
+        String activity = ManifestParser.INS.matchActivity(context, plugin, intent);
+        if (activity == null) {
+            return null;
+        }
+        ActivityInfo info = Factory.queryActivityInfo(plugin, activity);
+        IntentResolveCache.put(IntentResolveCache.KIND_ACTIVITY, plugin, intent, generation, plugin, info);
+        return info;
     }
 
     /**
@@ -68,7 +79,9 @@ public class IntentMatcherHelper {
      * @param intent     调用方传来的 Intent
      * @param filtersMap 插件中声明的所有组件和 IntentFilter
      * @return ComponentInfo
+     * @deprecated 插件的组件已建立 IntentFilter 索引，请使用 {@link #getActivityInfo}；此方法仅为兼容旧的调用方而保留
      */
+    @Deprecated
     public static String doMatchIntent(Context context, Intent intent, Map<String, List<IntentFilter>> filtersMap) {
         if (filtersMap == null) {
             return null;
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.qihoo360.replugin.component.utils;
+
+import android.content.Intent;
+import android.content.pm.ComponentInfo;
+
+import com.qihoo360.replugin.helper.LogDebug;
+
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.qihoo360.replugin.helper.LogDebug.LOG;
+
+/**
+ * 隐式 Intent 解析结果的 LRU 缓存
+ * <p>
+ * 插件经常反复发出相同的隐式 Intent（如 DeepLink、分享），每次都要重新匹配 IntentFilter 并查询 ComponentInfo。
+ * 这里以 Intent.FilterComparison（action、data、type、categories 等）及查找范围（插件名）为 key 缓存解析结果。
+ * <p>
+ * 缓存通过“代”来失效：有插件安装、卸载，或 ManifestParser 中的组件信息更新时，调用 {@link #invalidate()} 使代数加一，
+ * 之前的所有结果（包括正在解析、稍后才放入的结果）都会被丢弃。
+ *
+ * @author RePlugin Team
+ */
+public class IntentResolveCache {
+
+    private static final String TAG = "IntentResolveCache";
+
+    /**
+     * 解析 Activity
+     */
+    public static final int KIND_ACTIVITY = 1;
+
+    /**
+     * 解析 Service
+     */
+    public static final int KIND_SERVICE = 2;
+
+    /**
+     * 在所有插件中查找时使用的范围
+     */
+    public static final String SCOPE_ALL = "";
+
+    /**
+     * 最多缓存的条目数
+     */
+    private static final int MAX_ENTRIES = 64;
+
+    private static final AtomicInteger sGeneration = new AtomicInteger();
+
+    private static final AtomicLong sHits = new AtomicLong();
+    private static final AtomicLong sMisses = new AtomicLong();
+    private static final AtomicLong sEvictions = new AtomicLong();
+    private static final AtomicLong sInvalidations = new AtomicLong();
+
+    /**
+     * 按访问顺序排列的 LinkedHashMap，所有访问都需要在 sCache 上加锁
+     */
+    private static final Map<Key, Result> sCache = new LinkedHashMap<Key, Result>(MAX_ENTRIES * 4 / 3 + 1, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Result> eldest) {
+            if (size() > MAX_ENTRIES) {
+                sEvictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * 解析结果
+     */
+    public static final class Result {
+
+        /**
+         * 组件所在的插件
+         */
+        public final String plugin;
+
+        /**
+         * ActivityInfo 或 ServiceInfo
+         */
+        public final ComponentInfo info;
+
+        final int generation;
+
+        Result(String plugin, ComponentInfo info, int generation) {
+            this.plugin = plugin;
+            this.info = info;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * 获取当前的代数。应在开始解析之前获取，并在 {@link #put} 时传入
+     */
+    public static int generation() {
+        return sGeneration.get();
+    }
+
+    /**
+     * 使所有缓存失效
+     */
+    public static void invalidate() {
+        sGeneration.incrementAndGet();
+        sInvalidations.incrementAndGet();
+        synchronized (sCache) {
+            sCache.clear();
+        }
+        if (LOG) {
+            LogDebug.d(TAG, "invalidate: generation=" + sGeneration.get());
+        }
+    }
+
+    /**
+     * 查询缓存
+     *
+     * @param kind   {@link #KIND_ACTIVITY} 或 {@link #KIND_SERVICE}
+     * @param scope  查找范围（插件名），在所有插件中查找时为 {@link #SCOPE_ALL}
+     * @param intent 隐式 Intent
+     * @return 缓存的解析结果，没有缓存或已失效时返回 null
+     */
+    public static Result get(int kind, String scope, Intent intent) {
+        Key key = new Key(kind, scope, new Intent.FilterComparison(intent));
+        Result result;
+        synchronized (sCache) {
+            result = sCache.get(key);
+            if (result != null && result.generation != sGeneration.get()) {
+                sCache.remove(key);
+                result = null;
+            }
+        }
+        if (result != null) {
+            sHits.incrementAndGet();
+        } else {
+            sMisses.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * 放入解析结果
+     *
+     * @param generation 开始解析前通过 {@link #generation()} 获取的代数，若解析期间缓存已失效则不放入
+     */
+    public static void put(int kind, String scope, Intent intent, int generation, String plugin, ComponentInfo info) {
+        if (info == null || generation != sGeneration.get()) {
+            return;
+        }
+        // 只保留参与匹配的字段，不持有调用方的 extras
+        Key key = new Key(kind, scope, new Intent.FilterComparison(intent.cloneFilter()));
+        synchronized (sCache) {
+            sCache.put(key, new Result(plugin, info, generation));
+        }
+    }
+
+    /**
+     * 输出缓存的命中率等信息
+     */
+    public static void dump(PrintWriter writer) {
+        long hits = sHits.get();
+        long misses = sMisses.get();
+        long total = hits + misses;
+        int size;
+        synchronized (sCache) {
+            size = sCache.size();
+        }
+        writer.println("--- Intent Resolve Cache ---");
+        writer.println("size=" + size + "/" + MAX_ENTRIES + " generation=" + sGeneration.get());
+        writer.println("hits=" + hits + " misses=" + misses
+                + " hitRate=" + (total > 0 ? (hits * 100 / total) + "%" : "n/a"));
+        writer.println("evictions=" + sEvictions.get() + " invalidations=" + sInvalidations.get());
+    }
+
+    private static final class Key {
+
+        private final int mKind;
+
+        private final String mScope;
+
+        private final Intent.FilterComparison mIntent;
+
+        private final int mHash;
+
+        Key(int kind, String scope, Intent.FilterComparison intent) {
+            mKind = kind;
+            mScope = scope != null ? scope : SCOPE_ALL;
+            mIntent = intent;
+            mHash = 31 * (31 * kind + mScope.hashCode()) + intent.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return mKind == key.mKind && mScope.equals(key.mScope) && mIntent.equals(key.mIntent);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+    }
+}
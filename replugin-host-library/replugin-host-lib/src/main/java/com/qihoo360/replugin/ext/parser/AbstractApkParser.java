@@ -64,13 +64,19 @@ public abstract class AbstractApkParser implements Closeable {
      */
     private void parseManifestXml() throws IOException {
         XmlTranslator xmlTranslator = new XmlTranslator();
+        parseManifest(xmlTranslator);
+        this.manifestXml = xmlTranslator.getXml();
+    }
 
+    /**
+     * parse manifest.xml, feed the binary xml events to xmlStreamer directly, without decoding it to xml text.
+     */
+    public void parseManifest(XmlStreamer xmlStreamer) throws IOException {
         byte[] data = getFileData(MANIFEST_FILE);
         if (data == null) {
             throw new ParserException("Manifest file not found");
         }
-        transBinaryXml(data, xmlTranslator);
-        this.manifestXml = xmlTranslator.getXml();
+        transBinaryXml(data, xmlStreamer);
     }
 
     /**
@@ -28,6 +28,7 @@ package com.qihoo360.replugin.ext.parser;
 
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -62,6 +63,11 @@ public class ApkParser extends AbstractApkParser implements Closeable {
         }
 
         InputStream inputStream = zf.getInputStream(entry);
+        long size = entry.getSize();
+        if (size >= 0 && size <= Integer.MAX_VALUE) {
+            // size is known from the central directory, read into one exactly sized buffer
+            return readFully(inputStream, (int) size);
+        }
         return toByteArray(inputStream);
     }
 
@@ -71,6 +77,23 @@ public class ApkParser extends AbstractApkParser implements Closeable {
         zf.close();
     }
 
+    private static byte[] readFully(InputStream in, int size) throws IOException {
+        try {
+            byte[] data = new byte[size];
+            int offset = 0;
+            while (offset < size) {
+                int len = in.read(data, offset, size - offset);
+                if (len == -1) {
+                    throw new EOFException("Unexpected end of zip entry, read " + offset + " of " + size + " bytes");
+                }
+                offset += len;
+            }
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+
     private static byte[] toByteArray(InputStream in) throws IOException {
         try {
             byte[] buf = new byte[1024 * 8];
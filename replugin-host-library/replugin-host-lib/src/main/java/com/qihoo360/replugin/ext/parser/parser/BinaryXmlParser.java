@@ -28,6 +28,7 @@ package com.qihoo360.replugin.ext.parser.parser;
 
 import com.qihoo360.replugin.ext.parser.struct.ChunkHeader;
 import com.qihoo360.replugin.ext.parser.struct.ChunkType;
+import com.qihoo360.replugin.ext.parser.struct.ResourceValue;
 import com.qihoo360.replugin.ext.parser.struct.StringPool;
 import com.qihoo360.replugin.ext.parser.struct.StringPoolHeader;
 import com.qihoo360.replugin.ext.parser.struct.xml.Attribute;
@@ -46,6 +47,7 @@ import com.qihoo360.replugin.ext.parser.utils.Buffers;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 
 /**
  * Android Binary XML format
@@ -66,6 +68,12 @@ public class BinaryXmlParser {
     private ByteBuffer buffer;
     private XmlStreamer xmlStreamer;
 
+    // holders reused for every node, see XmlStreamer
+    private final XmlNodeStartTag xmlNodeStartTag = new XmlNodeStartTag();
+    private final XmlNodeEndTag xmlNodeEndTag = new XmlNodeEndTag();
+    // attributes holders indexed by attribute count
+    private Attributes[] attributesPool = new Attributes[16];
+
     public BinaryXmlParser(ByteBuffer buffer) {
         this.buffer = buffer.duplicate();
         this.buffer.order(byteOrder);
@@ -140,12 +148,9 @@ public class BinaryXmlParser {
     }
 
     private XmlNodeEndTag readXmlNodeEndTag() {
-        XmlNodeEndTag xmlNodeEndTag = new XmlNodeEndTag();
         int nsRef = buffer.getInt();
         int nameRef = buffer.getInt();
-        if (nsRef > 0) {
-            xmlNodeEndTag.setNamespace(stringPool.get(nsRef));
-        }
+        xmlNodeEndTag.setNamespace(nsRef > 0 ? stringPool.get(nsRef) : null);
         xmlNodeEndTag.setName(stringPool.get(nameRef));
         if (xmlStreamer != null) {
             xmlStreamer.onEndTag(xmlNodeEndTag);
@@ -156,10 +161,7 @@ public class BinaryXmlParser {
     private XmlNodeStartTag readXmlNodeStartTag() {
         int nsRef = buffer.getInt();
         int nameRef = buffer.getInt();
-        XmlNodeStartTag xmlNodeStartTag = new XmlNodeStartTag();
-        if (nsRef > 0) {
-            xmlNodeStartTag.setNamespace(stringPool.get(nsRef));
-        }
+        xmlNodeStartTag.setNamespace(nsRef > 0 ? stringPool.get(nsRef) : null);
         xmlNodeStartTag.setName(stringPool.get(nameRef));
 
         // read attributes.
@@ -172,14 +174,13 @@ public class BinaryXmlParser {
         int styleIndex = Buffers.readUShort(buffer);
 
         // read attributes
-        Attributes attributes = new Attributes(attributeCount);
+        Attributes attributes = obtainAttributes(attributeCount);
+        Attribute[] holders = attributes.value();
         for (int count = 0; count < attributeCount; count++) {
-            Attribute attribute = readAttribute();
-            if (xmlStreamer != null) {
-                String value = attribute.getRawValue();
-                attribute.setValue(value);
-                attributes.set(count, attribute);
+            if (holders[count] == null) {
+                holders[count] = new Attribute();
             }
+            readAttribute(holders[count]);
         }
         xmlNodeStartTag.setAttributes(attributes);
 
@@ -190,13 +191,22 @@ public class BinaryXmlParser {
         return xmlNodeStartTag;
     }
 
-    private Attribute readAttribute() {
+    private Attributes obtainAttributes(int count) {
+        if (count >= attributesPool.length) {
+            attributesPool = Arrays.copyOf(attributesPool, count + 1);
+        }
+        Attributes attributes = attributesPool[count];
+        if (attributes == null) {
+            attributes = new Attributes(count);
+            attributesPool[count] = attributes;
+        }
+        return attributes;
+    }
+
+    private void readAttribute(Attribute attribute) {
         int nsRef = buffer.getInt();
         int nameRef = buffer.getInt();
-        Attribute attribute = new Attribute();
-        if (nsRef > 0) {
-            attribute.setNamespace(stringPool.get(nsRef));
-        }
+        attribute.setNamespace(nsRef > 0 ? stringPool.get(nsRef) : null);
 
         attribute.setName(stringPool.get(nameRef));
         if (attribute.getName().isEmpty() && resourceMap != null && nameRef < resourceMap.length) {
@@ -206,12 +216,16 @@ public class BinaryXmlParser {
         }
 
         int rawValueRef = buffer.getInt();
-        if (rawValueRef > 0) {
-            attribute.setRawValue(stringPool.get(rawValueRef));
+        attribute.setRawValue(rawValueRef > 0 ? stringPool.get(rawValueRef) : null);
+        ResourceValue resValue = ParseUtils.readResValue(buffer, stringPool);
+        // typed values (such as android:priority) have no raw string, use the typed data instead
+        if (attribute.getRawValue() != null) {
+            attribute.setValue(attribute.getRawValue());
+        } else if (rawValueRef < 0) {
+            attribute.setValue(resValue.toStringValue());
+        } else {
+            attribute.setValue(null);
         }
-        ParseUtils.readResValue(buffer, stringPool);
-
-        return attribute;
     }
 
     private XmlNamespaceStartTag readXmlNamespaceStartTag() {
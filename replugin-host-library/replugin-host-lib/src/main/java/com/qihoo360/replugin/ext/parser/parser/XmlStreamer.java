@@ -33,6 +33,9 @@ import com.qihoo360.replugin.ext.parser.struct.xml.XmlNodeStartTag;
 
 /**
  * callback interface for parse binary xml file.
+ * <p>
+ * The tag and attribute objects passed to {@link #onStartTag} and {@link #onEndTag} are reused by the parser
+ * for the following nodes, copy the values out if they are needed after the callback returns.
  *
  * @author dongliu
  */
@@ -33,6 +33,11 @@ package com.qihoo360.replugin.ext.parser.struct;
  * @author dongliu
  */
 public abstract class ResourceValue {
+    // Res_value data types, see ResourceTypes.h
+    public static final short TYPE_INT_DEC = 0x10;
+    public static final short TYPE_INT_HEX = 0x11;
+    public static final short TYPE_INT_BOOLEAN = 0x12;
+
     protected final int value;
 
     protected ResourceValue(int value) {
@@ -77,7 +82,15 @@ public abstract class ResourceValue {
 
         @Override
         public String toStringValue() {
-            return "{" + dataType + ":" + (value & 0xFFFFFFFFL) + "}";
+            switch (dataType) {
+                case TYPE_INT_DEC:
+                case TYPE_INT_HEX:
+                    return String.valueOf(value);
+                case TYPE_INT_BOOLEAN:
+                    return String.valueOf(value != 0);
+                default:
+                    return "{" + dataType + ":" + (value & 0xFFFFFFFFL) + "}";
+            }
         }
     }
 }
@@ -26,23 +26,55 @@
 
 package com.qihoo360.replugin.ext.parser.struct;
 
+import com.qihoo360.replugin.ext.parser.utils.ParseUtils;
+
+import java.nio.ByteBuffer;
+
 /**
  * String pool.
+ * <p>
+ * Strings are decoded on first access and then cached, so a streamer that only looks at
+ * a few tags does not pay for decoding the whole pool.
  *
  * @author dongliu
  */
 public class StringPool {
     private String[] pool;
 
+    // lazy mode: a private view of the chunk data and the absolute offset of every string
+    private ByteBuffer buffer;
+    private long[] offsets;
+    private boolean utf8;
+
     public StringPool(int poolSize) {
         pool = new String[poolSize];
     }
 
+    public StringPool(ByteBuffer buffer, long[] offsets, boolean utf8) {
+        this.pool = new String[offsets.length];
+        // use our own view, the parser keeps moving the position of the original one
+        this.buffer = buffer.duplicate();
+        this.buffer.order(buffer.order());
+        this.offsets = offsets;
+        this.utf8 = utf8;
+    }
+
     public String get(int idx) {
-        return pool[idx];
+        String str = pool[idx];
+        if (str == null && offsets != null) {
+            str = decode(idx);
+        }
+        return str;
     }
 
     public void set(int idx, String value) {
         pool[idx] = value;
     }
+
+    private String decode(int idx) {
+        buffer.position((int) offsets[idx]);
+        String str = ParseUtils.readString(buffer, utf8);
+        pool[idx] = str;
+        return str;
+    }
 }
@@ -26,7 +26,6 @@
 
 package com.qihoo360.replugin.ext.parser.utils;
 
-import com.qihoo360.replugin.ext.parser.parser.StringPoolEntry;
 import com.qihoo360.replugin.ext.parser.struct.ResourceValue;
 import com.qihoo360.replugin.ext.parser.struct.StringPool;
 import com.qihoo360.replugin.ext.parser.struct.StringPoolHeader;
@@ -123,26 +122,11 @@ public class ParseUtils {
         long stringPos = beginPos + stringPoolHeader.getStringsStart() - stringPoolHeader.getHeaderSize();
         buffer.position((int) stringPos);
 
-        StringPoolEntry[] entries = new StringPoolEntry[offsets.length];
+        // strings are decoded on demand, see StringPool#get
         for (int i = 0; i < offsets.length; i++) {
-            entries[i] = new StringPoolEntry(i, stringPos + offsets[i]);
-        }
-
-        String lastStr = null;
-        long lastOffset = -1;
-        StringPool stringPool = new StringPool((int) stringPoolHeader.getStringCount());
-        for (StringPoolEntry entry : entries) {
-            if (entry.getOffset() == lastOffset) {
-                stringPool.set(entry.getIdx(), lastStr);
-                continue;
-            }
-
-            buffer.position((int) entry.getOffset());
-            lastOffset = entry.getOffset();
-            String str = ParseUtils.readString(buffer, utf8);
-            lastStr = str;
-            stringPool.set(entry.getIdx(), str);
+            offsets[i] += stringPos;
         }
+        StringPool stringPool = new StringPool(buffer, offsets, utf8);
 
         // read styles
         if (stringPoolHeader.getStyleCount() > 0) {
@@ -767,6 +767,13 @@ public class PluginInfo implements Serializable, Parcelable, Cloneable {
         mParentInfo = parent;
     }
 
+    /**
+     * 与 Parcel 中的 JSON 文本还原方式相同（见 PluginInfoPage）
+     */
+    static PluginInfo createFromJO(JSONObject jo) {
+        return new PluginInfo(jo);
+    }
+
     static PluginInfo createByJO(JSONObject jo) {
         if (jo == null || jo.length() == 0) return null;
         PluginInfo pi = new PluginInfo(jo);
@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.qihoo360.replugin.model;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import com.qihoo360.replugin.helper.LogDebug;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 插件列表的一页，用于跨进程分页传输（见 PluginInfoSnapshots、PluginInfoPager）
+ * <p>
+ * 以前整个 List&lt;PluginInfo&gt; 在一个 Parcel 中传输，每个 PluginInfo 都写成一段 JSON 文本，插件较多时接近 Binder 1M 的限制。
+ * 现在每页最多约 {@link #MAX_BYTES} 字节，使用紧凑的二进制编码：每页的字段名只写一次（字典），字段值按类型直接写入，不再转成 JSON 文本。
+ * 接收方在遍历时才逐个解码，不必同时持有所有 PluginInfo。
+ *
+ * @author RePlugin Team
+ */
+public final class PluginInfoPage implements Parcelable {
+
+    private static final String TAG = "PluginInfoPage";
+
+    /**
+     * 每页编码后的最大字节数（超过时截止到当前这一项）
+     */
+    static final int MAX_BYTES = 128 * 1024;
+
+    private static final int T_NULL = 0;
+    private static final int T_STRING = 1;
+    private static final int T_INT = 2;
+    private static final int T_LONG = 3;
+    private static final int T_BOOLEAN = 4;
+    private static final int T_DOUBLE = 5;
+    private static final int T_OBJECT = 6;
+    private static final int T_ARRAY = 7;
+
+    /**
+     * 快照 ID，取下一页时带上；0 表示快照已失效
+     */
+    public final long snapshot;
+
+    /**
+     * 快照中插件的总数
+     */
+    public final int total;
+
+    /**
+     * 本页第一项在快照中的位置
+     */
+    public final int offset;
+
+    /**
+     * 本页的项数
+     */
+    public final int count;
+
+    /**
+     * 编码后的内容
+     */
+    private final byte[] mData;
+
+    public static final Creator<PluginInfoPage> CREATOR = new Creator<PluginInfoPage>() {
+        @Override
+        public PluginInfoPage createFromParcel(Parcel source) {
+            return new PluginInfoPage(source);
+        }
+
+        @Override
+        public PluginInfoPage[] newArray(int size) {
+            return new PluginInfoPage[size];
+        }
+    };
+
+    private PluginInfoPage(long snapshot, int total, int offset, int count, byte[] data) {
+        this.snapshot = snapshot;
+        this.total = total;
+        this.offset = offset;
+        this.count = count;
+        mData = data;
+    }
+
+    private PluginInfoPage(Parcel source) {
+        snapshot = source.readLong();
+        total = source.readInt();
+        offset = source.readInt();
+        count = source.readInt();
+        mData = source.createByteArray();
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeLong(snapshot);
+        dest.writeInt(total);
+        dest.writeInt(offset);
+        dest.writeInt(count);
+        dest.writeByteArray(mData);
+    }
+
+    /**
+     * @return 下一页的起始位置，已是最后一页时返回 -1
+     */
+    public int nextOffset() {
+        int next = offset + count;
+        return next < total ? next : -1;
+    }
+
+    /**
+     * 表示快照已失效（例如常驻进程重启或快照过期），需要重新获取
+     */
+    public boolean isExpired() {
+        return snapshot == 0;
+    }
+
+    /**
+     * 表示服务端编码失败：本页一项也没有，却不是最后一页。按 nextOffset 继续取只会再次得到同一页，调用方应按失败处理
+     */
+    public boolean isFailed() {
+        return snapshot != 0 && count == 0 && offset < total;
+    }
+
+    static PluginInfoPage expired() {
+        return new PluginInfoPage(0, 0, 0, 0, new byte[0]);
+    }
+
+    /**
+     * 从 list 的 offset 处开始编码一页
+     */
+    static PluginInfoPage encode(long snapshot, List<PluginInfo> list, int offset) {
+        ArrayList<String> keys = new ArrayList<>();
+        HashMap<String, Integer> keyIndex = new HashMap<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        int count = 0;
+        try {
+            for (int i = offset; i < list.size(); i++) {
+                writeObject(out, list.get(i).getJSON(), keys, keyIndex);
+                count++;
+                // 至少一项，保证能前进
+                if (out.size() >= MAX_BYTES) {
+                    break;
+                }
+            }
+
+            ByteArrayOutputStream page = new ByteArrayOutputStream(out.size() + keys.size() * 8 + 8);
+            DataOutputStream po = new DataOutputStream(page);
+            po.writeShort(keys.size());
+            for (String k : keys) {
+                writeString(po, k);
+            }
+            body.writeTo(po);
+            po.flush();
+            return new PluginInfoPage(snapshot, list.size(), offset, count, page.toByteArray());
+        } catch (IOException | JSONException e) {
+            // 返回一项也没有的页，客户端据此判断为失败（见 isFailed），不会反复取同一页
+            if (LogDebug.LOG) {
+                LogDebug.e(TAG, "encode: e=" + e.getMessage(), e);
+            }
+            return new PluginInfoPage(snapshot, list.size(), offset, 0, new byte[0]);
+        }
+    }
+
+    /**
+     * 逐个解码本页的 PluginInfo
+     */
+    public Iterator<PluginInfo> iterator() {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(mData));
+        final String[] keys;
+        try {
+            keys = count > 0 ? readKeys(in) : new String[0];
+        } catch (IOException e) {
+            if (LogDebug.LOG) {
+                LogDebug.e(TAG, "iterator: e=" + e.getMessage(), e);
+            }
+            return new ArrayList<PluginInfo>(0).iterator();
+        }
+        return new Iterator<PluginInfo>() {
+            private int mIndex;
+
+            @Override
+            public boolean hasNext() {
+                return mIndex < count;
+            }
+
+            @Override
+            public PluginInfo next() {
+                mIndex++;
+                try {
+                    return PluginInfo.createFromJO((JSONObject) readValue(in, T_OBJECT, keys));
+                } catch (IOException | JSONException e) {
+                    throw new IllegalStateException("corrupted page", e);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static String[] readKeys(DataInputStream in) throws IOException {
+        String[] keys = new String[in.readUnsignedShort()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = readString(in);
+        }
+        return keys;
+    }
+
+    /**
+     * 写入长度（int）+ UTF-8 字节。不使用 writeUTF，因为它限制在 64KB 以内，超过时会抛出异常
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) {
+            throw new IOException("bad string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static void writeObject(DataOutputStream out, JSONObject jo, ArrayList<String> keys, HashMap<String, Integer> keyIndex) throws IOException, JSONException {
+        out.writeShort(jo.length());
+        Iterator<String> it = jo.keys();
+        while (it.hasNext()) {
+            String k = it.next();
+            Integer index = keyIndex.get(k);
+            if (index == null) {
+                index = keys.size();
+                keys.add(k);
+                keyIndex.put(k, index);
+            }
+            out.writeShort(index);
+            writeValue(out, jo.get(k), keys, keyIndex);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object v, ArrayList<String> keys, HashMap<String, Integer> keyIndex) throws IOException, JSONException {
+        if (v == null || v == JSONObject.NULL) {
+            out.writeByte(T_NULL);
+        } else if (v instanceof String) {
+            out.writeByte(T_STRING);
+            writeString(out, (String) v);
+        } else if (v instanceof Integer) {
+            out.writeByte(T_INT);
+            out.writeInt((Integer) v);
+        } else if (v instanceof Long) {
+            out.writeByte(T_LONG);
+            out.writeLong((Long) v);
+        } else if (v instanceof Boolean) {
+            out.writeByte(T_BOOLEAN);
+            out.writeBoolean((Boolean) v);
+        } else if (v instanceof Number) {
+            out.writeByte(T_DOUBLE);
+            out.writeDouble(((Number) v).doubleValue());
+        } else if (v instanceof JSONObject) {
+            // 如 upinfo 等嵌套的 PluginInfo
+            out.writeByte(T_OBJECT);
+            writeObject(out, (JSONObject) v, keys, keyIndex);
+        } else if (v instanceof JSONArray) {
+            out.writeByte(T_ARRAY);
+            writeString(out, v.toString());
+        } else {
+            out.writeByte(T_STRING);
+            writeString(out, v.toString());
+        }
+    }
+
+    private static Object readValue(DataInputStream in, int type, String[] keys) throws IOException, JSONException {
+        switch (type) {
+            case T_NULL:
+                return JSONObject.NULL;
+            case T_STRING:
+                return readString(in);
+            case T_INT:
+                return in.readInt();
+            case T_LONG:
+                return in.readLong();
+            case T_BOOLEAN:
+                return in.readBoolean();
+            case T_DOUBLE:
+                return in.readDouble();
+            case T_OBJECT: {
+                int n = in.readUnsignedShort();
+                JSONObject jo = new JSONObject();
+                for (int i = 0; i < n; i++) {
+                    String k = keys[in.readUnsignedShort()];
+                    jo.put(k, readValue(in, in.readUnsignedByte(), keys));
+                }
+                return jo;
+            }
+            case T_ARRAY:
+                return new JSONArray(readString(in));
+            default:
+                throw new IOException("unknown type " + type);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.qihoo360.replugin.model;
+
+import android.os.RemoteException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 分页传输插件列表的客户端：遍历时按需取下一页，并逐个解码（见 PluginInfoPage）
+ * <p>
+ * 若中途快照失效（如常驻进程重启），会重新建立快照并从原来的位置继续，此时前后两部分可能来自不同的列表版本。
+ * 服务端编码某页失败时（见 PluginInfoPage.isFailed）按取页失败处理，不会反复重试同一页。
+ *
+ * @author RePlugin Team
+ */
+public final class PluginInfoPager implements Iterable<PluginInfo> {
+
+    /**
+     * 取页的方式，通常为一次 IPC
+     */
+    public interface PageSource {
+
+        /**
+         * @param snapshot 快照 ID，为 0 时表示建立新的快照并返回第一页
+         * @param offset   起始位置
+         */
+        PluginInfoPage fetch(long snapshot, int offset) throws RemoteException;
+    }
+
+    private final PageSource mSource;
+
+    public PluginInfoPager(PageSource source) {
+        mSource = source;
+    }
+
+    /**
+     * 取出所有插件
+     */
+    public static List<PluginInfo> load(PageSource source) throws RemoteException {
+        List<PluginInfo> list = new ArrayList<>();
+        Iterator<PluginInfo> it = new PluginInfoPager(source).iterate();
+        try {
+            while (it.hasNext()) {
+                list.add(it.next());
+            }
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof RemoteException) {
+                throw (RemoteException) e.getCause();
+            }
+            throw e;
+        }
+        return list;
+    }
+
+    /**
+     * 与 iterator() 相同，但取第一页失败时直接抛出 RemoteException；之后取页失败时仍抛出 IllegalStateException
+     */
+    public Iterator<PluginInfo> iterate() throws RemoteException {
+        return new PageIterator(checkPage(mSource.fetch(0, 0)));
+    }
+
+    private static PluginInfoPage checkPage(PluginInfoPage page) throws RemoteException {
+        if (page != null && page.isFailed()) {
+            // RemoteException(String) 需要 API 15
+            throw new RemoteException();
+        }
+        return page;
+    }
+
+    /**
+     * 取页失败时抛出 IllegalStateException
+     */
+    @Override
+    public Iterator<PluginInfo> iterator() {
+        try {
+            return iterate();
+        } catch (RemoteException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final class PageIterator implements Iterator<PluginInfo> {
+
+        private PluginInfoPage mPage;
+
+        private Iterator<PluginInfo> mItems;
+
+        PageIterator(PluginInfoPage first) {
+            setPage(first);
+        }
+
+        private void setPage(PluginInfoPage page) {
+            mPage = page;
+            mItems = page != null ? page.iterator() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (mItems != null && !mItems.hasNext()) {
+                int next = mPage.nextOffset();
+                if (next < 0) {
+                    mItems = null;
+                    break;
+                }
+                try {
+                    PluginInfoPage page = checkPage(mSource.fetch(mPage.snapshot, next));
+                    if (page == null || page.isExpired()) {
+                        // 快照已失效，重新建立后跳到原来的位置
+                        page = checkPage(mSource.fetch(0, 0));
+                        while (page != null && page.nextOffset() >= 0 && page.offset + page.count <= next) {
+                            page = checkPage(mSource.fetch(page.snapshot, page.nextOffset()));
+                        }
+                        setPage(page);
+                        skipTo(next);
+                    } else {
+                        setPage(page);
+                    }
+                } catch (RemoteException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return mItems != null && mItems.hasNext();
+        }
+
+        private void skipTo(int position) {
+            if (mPage == null) {
+                return;
+            }
+            for (int i = mPage.offset; i < position && mItems.hasNext(); i++) {
+                mItems.next();
+            }
+        }
+
+        @Override
+        public PluginInfo next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return mItems.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
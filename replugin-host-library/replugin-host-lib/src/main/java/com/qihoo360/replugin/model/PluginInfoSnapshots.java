@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.qihoo360.replugin.model;
+
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分页传输插件列表的服务端（常驻进程）：为每次列表请求保存一份快照，各页都从同一份快照中编码，保证分页期间列表一致
+ * <p>
+ * 快照在最后一次访问后 {@link #EXPIRE} 内有效，最多保留 {@link #MAX_SNAPSHOTS} 份；失效后请求的页会被标记为过期，由客户端重新获取。
+ *
+ * @author RePlugin Team
+ */
+public final class PluginInfoSnapshots {
+
+    private static final long EXPIRE = 30 * 1000;
+
+    private static final int MAX_SNAPSHOTS = 8;
+
+    /**
+     * 快照 ID 的起始值，以进程启动时间区分，避免常驻进程重启后 ID 重复
+     */
+    private long mNextId = SystemClock.elapsedRealtime() << 8;
+
+    private final LinkedHashMap<Long, Snapshot> mSnapshots = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * 建立快照，并返回第一页
+     */
+    public synchronized PluginInfoPage open(List<PluginInfo> list) {
+        trimLocked();
+        long id = ++mNextId;
+        Snapshot s = new Snapshot(new ArrayList<>(list));
+        mSnapshots.put(id, s);
+        PluginInfoPage page = PluginInfoPage.encode(id, list, 0);
+        if (page.nextOffset() < 0) {
+            // 只有一页，无需保留
+            mSnapshots.remove(id);
+        }
+        return page;
+    }
+
+    /**
+     * 从已有快照中取一页
+     */
+    public synchronized PluginInfoPage page(long snapshot, int offset) {
+        trimLocked();
+        Snapshot s = mSnapshots.get(snapshot);
+        if (s == null || offset < 0 || offset > s.list.size()) {
+            return PluginInfoPage.expired();
+        }
+        s.accessAt = SystemClock.elapsedRealtime();
+        PluginInfoPage page = PluginInfoPage.encode(snapshot, s.list, offset);
+        if (page.nextOffset() < 0) {
+            // 最后一页已取走
+            mSnapshots.remove(snapshot);
+        }
+        return page;
+    }
+
+    private void trimLocked() {
+        long now = SystemClock.elapsedRealtime();
+        Iterator<Map.Entry<Long, Snapshot>> it = mSnapshots.entrySet().iterator();
+        while (it.hasNext()) {
+            Snapshot s = it.next().getValue();
+            if (mSnapshots.size() >= MAX_SNAPSHOTS || now - s.accessAt > EXPIRE) {
+                it.remove();
+            }
+        }
+    }
+
+    private static final class Snapshot {
+
+        final List<PluginInfo> list;
+
+        long accessAt = SystemClock.elapsedRealtime();
+
+        Snapshot(List<PluginInfo> list) {
+            this.list = list;
+        }
+    }
+}
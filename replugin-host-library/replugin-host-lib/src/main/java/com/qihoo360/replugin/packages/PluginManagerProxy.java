@@ -21,10 +21,13 @@ import android.text.TextUtils;
 
 import com.qihoo360.loader2.IPluginHost;
 import com.qihoo360.loader2.MP;
+import com.qihoo360.replugin.base.BinderStats;
 import com.qihoo360.replugin.base.IPC;
 import com.qihoo360.replugin.helper.LogDebug;
 import com.qihoo360.replugin.helper.LogRelease;
 import com.qihoo360.replugin.model.PluginInfo;
+import com.qihoo360.replugin.model.PluginInfoPage;
+import com.qihoo360.replugin.model.PluginInfoPager;
 
 import java.util.List;
 
@@ -64,7 +67,8 @@ public class PluginManagerProxy {
             return;
         }
 
-        sRemote = host.fetchManagerServer();
+        IPluginManagerServer s = host.fetchManagerServer();
+        sRemote = s != null ? IPluginManagerServer.Stub.asInterface(BinderStats.wrap(s.asBinder(), IPluginManagerServer.Stub.class)) : null;
     }
 
     /**
@@ -88,7 +92,7 @@ public class PluginManagerProxy {
      */
     public static List<PluginInfo> load() throws RemoteException {
         // 不判断sRemote在不在，因为本应该在sRemote获取后就马上调用
-        return sRemote.load();
+        return PluginInfoPager.load(LOAD_PAGES);
     }
 
     /**
@@ -99,9 +103,29 @@ public class PluginManagerProxy {
      */
     public static List<PluginInfo> updateAllPlugins() throws RemoteException {
         // 不判断sRemote在不在，因为本应该在sRemote获取后就马上调用
-        return sRemote.load();
+        return PluginInfoPager.load(UPDATE_ALL_PAGES);
     }
 
+    /**
+     * 分页获取插件列表，避免插件较多时单次传输过大
+     */
+    private static final PluginInfoPager.PageSource LOAD_PAGES = new PluginInfoPager.PageSource() {
+        @Override
+        public PluginInfoPage fetch(long snapshot, int offset) throws RemoteException {
+            return sRemote.loadPage(snapshot, offset);
+        }
+    };
+
+    /**
+     * 分页获取更新后的插件列表，只在取第一页时执行更新
+     */
+    private static final PluginInfoPager.PageSource UPDATE_ALL_PAGES = new PluginInfoPager.PageSource() {
+        @Override
+        public PluginInfoPage fetch(long snapshot, int offset) throws RemoteException {
+            return sRemote.updateAllPage(snapshot, offset);
+        }
+    };
+
     /**
      * 去常驻进程更新isUsed状态，并发送到所有进程中更新
      *
@@ -20,6 +20,7 @@ import android.content.Context;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.os.Build;
+import android.os.Parcel;
 import android.os.RemoteException;
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
@@ -30,10 +31,13 @@ import com.qihoo360.loader2.PluginNativeLibsHelper;
 import com.qihoo360.replugin.RePlugin;
 import com.qihoo360.replugin.RePluginEventCallbacks;
 import com.qihoo360.replugin.RePluginInternal;
+import com.qihoo360.replugin.base.BinderStats;
 import com.qihoo360.replugin.helper.LogDebug;
 import com.qihoo360.replugin.helper.LogRelease;
 import com.qihoo360.replugin.model.PluginInfo;
 import com.qihoo360.replugin.model.PluginInfoList;
+import com.qihoo360.replugin.model.PluginInfoPage;
+import com.qihoo360.replugin.model.PluginInfoSnapshots;
 import com.qihoo360.replugin.utils.FileUtils;
 import com.qihoo360.replugin.utils.pkg.PackageFilesUtil;
 
@@ -72,6 +76,9 @@ public class PluginManagerServer {
 
     private IPluginManagerServer mStub;
 
+    // 分页传输插件列表时的快照
+    private final PluginInfoSnapshots mSnapshots = new PluginInfoSnapshots();
+
     public PluginManagerServer(Context context) {
         mContext = context;
         mStub = new Stub();
@@ -610,6 +617,17 @@ public class PluginManagerServer {
 
     private class Stub extends IPluginManagerServer.Stub {
 
+        @Override
+        public boolean onTransact(int code, Parcel data, Parcel reply, int flags) throws RemoteException {
+            // 统计每个方法的调用次数与耗时（见 BinderStats）
+            long start = BinderStats.begin();
+            try {
+                return super.onTransact(code, data, reply, flags);
+            } finally {
+                BinderStats.endIncoming(IPluginManagerServer.Stub.class, code, data, reply, start);
+            }
+        }
+
         @Override
         public PluginInfo install(String path) throws RemoteException {
             synchronized (LOCKER) {
@@ -631,6 +649,30 @@ public class PluginManagerServer {
             }
         }
 
+        @Override
+        public PluginInfoPage loadPage(long snapshot, int offset) throws RemoteException {
+            if (snapshot != 0) {
+                return mSnapshots.page(snapshot, offset);
+            }
+            List<PluginInfo> list;
+            synchronized (LOCKER) {
+                list = PluginManagerServer.this.loadLocked();
+            }
+            return mSnapshots.open(list);
+        }
+
+        @Override
+        public PluginInfoPage updateAllPage(long snapshot, int offset) throws RemoteException {
+            if (snapshot != 0) {
+                return mSnapshots.page(snapshot, offset);
+            }
+            List<PluginInfo> list;
+            synchronized (LOCKER) {
+                list = PluginManagerServer.this.updateAllLocked();
+            }
+            return mSnapshots.open(list);
+        }
+
         @Override
         public void updateUsed(String pluginName, boolean used) throws RemoteException {
             synchronized (LOCKER) {
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.qihoo360.replugin.utils.basic;
+
+/**
+ * 线程安全的 IntObjectMap，适合读多写少的场景（如按进程缓存的 Binder）
+ * <p>
+ * 写时复制：每次修改都复制出新的 IntObjectMap 再整体替换，读操作不加锁，也不产生任何对象。
+ *
+ * @author RePlugin Team
+ */
+public final class ConcurrentIntObjectMap<E> {
+
+    private volatile IntObjectMap<E> mMap = new IntObjectMap<>();
+
+    public E get(int key) {
+        return mMap.get(key);
+    }
+
+    public boolean containsKey(int key) {
+        return mMap.containsKey(key);
+    }
+
+    public synchronized E put(int key, E value) {
+        IntObjectMap<E> map = mMap.clone();
+        E old = map.put(key, value);
+        mMap = map;
+        return old;
+    }
+
+    /**
+     * 没有 key 时才放入，返回已有的值（没有时为 null）
+     */
+    public synchronized E putIfAbsent(int key, E value) {
+        E old = mMap.get(key);
+        if (old != null) {
+            return old;
+        }
+        put(key, value);
+        return null;
+    }
+
+    public synchronized E remove(int key) {
+        if (!mMap.containsKey(key)) {
+            return null;
+        }
+        IntObjectMap<E> map = mMap.clone();
+        E old = map.remove(key);
+        mMap = map;
+        return old;
+    }
+
+    /**
+     * 仅当 key 对应的值为 value（按 == 比较）时才删除
+     */
+    public synchronized boolean remove(int key, E value) {
+        if (mMap.get(key) != value) {
+            return false;
+        }
+        remove(key);
+        return true;
+    }
+
+    public synchronized void clear() {
+        mMap = new IntObjectMap<>();
+    }
+
+    public int size() {
+        return mMap.size();
+    }
+
+    /**
+     * 返回当前内容的快照，用于遍历。快照不会再被修改，调用方也不应修改它
+     */
+    public IntObjectMap<E> snapshot() {
+        return mMap;
+    }
+
+    @Override
+    public String toString() {
+        return mMap.toString();
+    }
+}
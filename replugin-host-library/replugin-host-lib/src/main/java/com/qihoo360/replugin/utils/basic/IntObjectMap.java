@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.qihoo360.replugin.utils.basic;
+
+/**
+ * 以 int 为 Key 的 Map，用于 PID、进程编号等，避免 HashMap&lt;Integer, V&gt; 的装箱和 Entry 对象
+ * <p>
+ * 与 android.util.SparseArray 类似：Key 有序存放在 int 数组中，查找为二分查找，适合几百项以内的数据。
+ * 不同之处在于删除时直接移动数组，不留“已删除”标记，因此所有读操作都不会修改内部状态，可作为 ConcurrentIntObjectMap 的不可变快照。
+ * <p>
+ * 非线程安全。
+ *
+ * @author RePlugin Team
+ */
+public class IntObjectMap<E> implements Cloneable {
+
+    private int[] mKeys;
+
+    private Object[] mValues;
+
+    private int mSize;
+
+    public IntObjectMap() {
+        this(0);
+    }
+
+    public IntObjectMap(int initialCapacity) {
+        if (initialCapacity == 0) {
+            mKeys = ContainerHelpers.EMPTY_INTS;
+            mValues = ContainerHelpers.EMPTY_OBJECTS;
+        } else {
+            initialCapacity = ContainerHelpers.idealIntArraySize(initialCapacity);
+            mKeys = new int[initialCapacity];
+            mValues = new Object[initialCapacity];
+        }
+        mSize = 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public IntObjectMap<E> clone() {
+        IntObjectMap<E> clone;
+        try {
+            clone = (IntObjectMap<E>) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+        clone.mKeys = mKeys.clone();
+        clone.mValues = mValues.clone();
+        return clone;
+    }
+
+    /**
+     * 获取 key 对应的值，没有时返回 null
+     */
+    public E get(int key) {
+        return get(key, null);
+    }
+
+    /**
+     * 获取 key 对应的值，没有时返回 valueIfKeyNotFound
+     */
+    @SuppressWarnings("unchecked")
+    public E get(int key, E valueIfKeyNotFound) {
+        int i = ContainerHelpers.binarySearch(mKeys, mSize, key);
+        if (i < 0) {
+            return valueIfKeyNotFound;
+        }
+        return (E) mValues[i];
+    }
+
+    public boolean containsKey(int key) {
+        return ContainerHelpers.binarySearch(mKeys, mSize, key) >= 0;
+    }
+
+    /**
+     * 放入 key 对应的值，返回原来的值
+     */
+    @SuppressWarnings("unchecked")
+    public E put(int key, E value) {
+        int i = ContainerHelpers.binarySearch(mKeys, mSize, key);
+        if (i >= 0) {
+            E old = (E) mValues[i];
+            mValues[i] = value;
+            return old;
+        }
+
+        i = ~i;
+        if (mSize >= mKeys.length) {
+            int n = ContainerHelpers.idealIntArraySize(mSize + 1);
+            int[] nkeys = new int[n];
+            Object[] nvalues = new Object[n];
+            System.arraycopy(mKeys, 0, nkeys, 0, mKeys.length);
+            System.arraycopy(mValues, 0, nvalues, 0, mValues.length);
+            mKeys = nkeys;
+            mValues = nvalues;
+        }
+        if (mSize - i != 0) {
+            System.arraycopy(mKeys, i, mKeys, i + 1, mSize - i);
+            System.arraycopy(mValues, i, mValues, i + 1, mSize - i);
+        }
+        mKeys[i] = key;
+        mValues[i] = value;
+        mSize++;
+        return null;
+    }
+
+    /**
+     * 删除 key 对应的值，返回原来的值
+     */
+    public E remove(int key) {
+        int i = ContainerHelpers.binarySearch(mKeys, mSize, key);
+        if (i < 0) {
+            return null;
+        }
+        return removeAt(i);
+    }
+
+    /**
+     * 删除第 index 项，返回其值
+     */
+    @SuppressWarnings("unchecked")
+    public E removeAt(int index) {
+        E old = (E) mValues[index];
+        if (index < mSize - 1) {
+            System.arraycopy(mKeys, index + 1, mKeys, index, mSize - index - 1);
+            System.arraycopy(mValues, index + 1, mValues, index, mSize - index - 1);
+        }
+        mSize--;
+        mValues[mSize] = null;
+        return old;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * 第 index 项的 Key，按从小到大排列
+     */
+    public int keyAt(int index) {
+        return mKeys[index];
+    }
+
+    /**
+     * 第 index 项的值
+     */
+    @SuppressWarnings("unchecked")
+    public E valueAt(int index) {
+        return (E) mValues[index];
+    }
+
+    public void setValueAt(int index, E value) {
+        mValues[index] = value;
+    }
+
+    /**
+     * 返回 key 所在的位置，没有时返回负数
+     */
+    public int indexOfKey(int key) {
+        return ContainerHelpers.binarySearch(mKeys, mSize, key);
+    }
+
+    /**
+     * 返回 value 所在的位置（按 == 比较），没有时返回 -1
+     */
+    public int indexOfValue(E value) {
+        for (int i = 0; i < mSize; i++) {
+            if (mValues[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public void clear() {
+        for (int i = 0; i < mSize; i++) {
+            mValues[i] = null;
+        }
+        mSize = 0;
+    }
+
+    @Override
+    public String toString() {
+        if (mSize <= 0) {
+            return "{}";
+        }
+        StringBuilder buffer = new StringBuilder(mSize * 28);
+        buffer.append('{');
+        for (int i = 0; i < mSize; i++) {
+            if (i > 0) {
+                buffer.append(", ");
+            }
+            buffer.append(mKeys[i]);
+            buffer.append('=');
+            Object value = mValues[i];
+            if (value != this) {
+                buffer.append(value);
+            } else {
+                buffer.append("(this Map)");
+            }
+        }
+        buffer.append('}');
+        return buffer.toString();
+    }
+}
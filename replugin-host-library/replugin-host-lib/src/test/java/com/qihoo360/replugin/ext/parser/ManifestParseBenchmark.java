@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.qihoo360.replugin.ext.parser;
+
+import com.qihoo360.replugin.ext.parser.parser.BinaryXmlParser;
+import com.qihoo360.replugin.ext.parser.parser.XmlStreamer;
+import com.qihoo360.replugin.ext.parser.struct.xml.Attribute;
+import com.qihoo360.replugin.ext.parser.struct.xml.Attributes;
+import com.qihoo360.replugin.ext.parser.struct.xml.XmlNamespaceEndTag;
+import com.qihoo360.replugin.ext.parser.struct.xml.XmlNamespaceStartTag;
+import com.qihoo360.replugin.ext.parser.struct.xml.XmlNodeEndTag;
+import com.qihoo360.replugin.ext.parser.struct.xml.XmlNodeStartTag;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+/**
+ * 解析插件 AndroidManifest.xml 的耗时及内存分配基准（普通 JVM 程序，不依赖 Android 环境）
+ * <p>
+ * 有两种模式：
+ * <ul>
+ * <li>full：每次打开 apk、读出 AndroidManifest.xml 并解析，与 ManifestParser.parseFromApk 的路径一致</li>
+ * <li>parse：只预先读一次 AndroidManifest.xml，每次只执行 BinaryXmlParser 的解析</li>
+ * </ul>
+ * 运行方式（在 replugin-host-library 目录下）：
+ * <pre>
+ * ./gradlew :replugin-host-lib:compileDebugUnitTestJavaWithJavac
+ * java -cp replugin-host-lib/build/intermediates/classes/debug:replugin-host-lib/build/intermediates/classes/test/debug \
+ *     com.qihoo360.replugin.ext.parser.ManifestParseBenchmark [apk] [full|parse]
+ * </pre>
+ * apk 默认为 replugin-sample/host/app/src/main/assets/external/demo3.apk。
+ * 内存分配通过 com.sun.management.ThreadMXBean 统计，需使用 HotSpot 系的 JVM。
+ *
+ * @author RePlugin Team
+ */
+public class ManifestParseBenchmark {
+
+    private static final String DEFAULT_APK = "../replugin-sample/host/app/src/main/assets/external/demo3.apk";
+
+    private static final String MANIFEST = "AndroidManifest.xml";
+
+    private static final int WARM_UP = 20000;
+
+    private static final int ROUNDS = 15;
+
+    private static final int OPS_PER_ROUND = 20000;
+
+    /**
+     * 读取标签名及属性值，避免解析结果被 JIT 优化掉
+     */
+    private static long sSink;
+
+    private static final XmlStreamer STREAMER = new XmlStreamer() {
+        @Override
+        public void onStartTag(XmlNodeStartTag xmlNodeStartTag) {
+            sSink += xmlNodeStartTag.getName().length();
+            Attributes attributes = xmlNodeStartTag.getAttributes();
+            if (attributes == null) {
+                return;
+            }
+            for (Attribute attribute : attributes.value()) {
+                if (attribute != null && attribute.getValue() != null) {
+                    sSink += attribute.getValue().length();
+                }
+            }
+        }
+
+        @Override
+        public void onEndTag(XmlNodeEndTag xmlNodeEndTag) {
+            sSink++;
+        }
+
+        @Override
+        public void onNamespaceStart(XmlNamespaceStartTag tag) {
+        }
+
+        @Override
+        public void onNamespaceEnd(XmlNamespaceEndTag tag) {
+        }
+    };
+
+    public static void main(String[] args) throws IOException {
+        File apk = new File(args.length > 0 ? args[0] : DEFAULT_APK);
+        boolean parseOnly = args.length > 1 && "parse".equals(args[1]);
+
+        byte[] manifest = null;
+        if (parseOnly) {
+            ApkParser parser = new ApkParser(apk);
+            try {
+                manifest = parser.getFileData(MANIFEST);
+            } finally {
+                parser.close();
+            }
+        }
+
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+
+        for (int i = 0; i < WARM_UP; i++) {
+            runOnce(apk, manifest);
+        }
+
+        long bestNanos = Long.MAX_VALUE;
+        long bytesPerOp = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            long bytes = mx.getThreadAllocatedBytes(tid);
+            long start = System.nanoTime();
+            for (int i = 0; i < OPS_PER_ROUND; i++) {
+                runOnce(apk, manifest);
+            }
+            long nanos = (System.nanoTime() - start) / OPS_PER_ROUND;
+            bytesPerOp = (mx.getThreadAllocatedBytes(tid) - bytes) / OPS_PER_ROUND;
+            bestNanos = Math.min(bestNanos, nanos);
+        }
+
+        System.out.println((parseOnly ? "parse" : "full") + ": " + bestNanos / 1000.0 + " us/op, "
+                + bytesPerOp + " B/op (" + apk.getName() + ", sink=" + sSink + ")");
+    }
+
+    private static void runOnce(File apk, byte[] manifest) throws IOException {
+        if (manifest != null) {
+            BinaryXmlParser parser = new BinaryXmlParser(ByteBuffer.wrap(manifest));
+            parser.setXmlStreamer(STREAMER);
+            parser.parse();
+            return;
+        }
+        ApkParser parser = new ApkParser(apk);
+        try {
+            parser.parseManifest(STREAMER);
+        } finally {
+            parser.close();
+        }
+    }
+}
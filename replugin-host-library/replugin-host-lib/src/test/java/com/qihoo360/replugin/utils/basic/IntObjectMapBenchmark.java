@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.qihoo360.replugin.utils.basic;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+
+/**
+ * 以 pid 为 Key 的容器在查询及增删时的耗时与内存分配基准（普通 JVM 程序）
+ * <p>
+ * 对比 HashMap&lt;Integer&gt;、ArrayMap&lt;Integer&gt; 与 IntObjectMap、ConcurrentIntObjectMap。
+ * pid 取在 Integer 缓存（-128~127）之外，与真实的进程号一致，以便体现装箱的开销。
+ * <p>
+ * 运行方式（在 replugin-host-library 目录下）：
+ * <pre>
+ * ./gradlew :replugin-host-lib:compileDebugUnitTestJavaWithJavac
+ * java -Xint -cp replugin-host-lib/build/intermediates/classes/debug:replugin-host-lib/build/intermediates/classes/test/debug \
+ *     com.qihoo360.replugin.utils.basic.IntObjectMapBenchmark
+ * </pre>
+ * 建议加上 -Xint：解释执行时装箱不会被 JIT 的逃逸分析消除，与 Dalvik 及 ART 解释执行时更接近。
+ * 内存分配通过 com.sun.management.ThreadMXBean 统计，需使用 HotSpot 系的 JVM。
+ *
+ * @author RePlugin Team
+ */
+public class IntObjectMapBenchmark {
+
+    private static final int PIDS = 32;
+
+    private static final int OPS = 1000000;
+
+    private static final int ROUNDS = 3;
+
+    private static final Object VALUE = new Object();
+
+    /**
+     * 保存查询结果，避免被 JIT 优化掉
+     */
+    private static Object sSink;
+
+    private static final com.sun.management.ThreadMXBean MX =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) {
+        int[] pids = new int[PIDS];
+        for (int i = 0; i < pids.length; i++) {
+            pids[i] = 1000 + i * 37;
+        }
+
+        // 前几轮用于预热，只输出最后一轮的结果
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean report = round == ROUNDS - 1;
+
+            HashMap<Integer, Object> hashMap = new HashMap<>();
+            ArrayMap<Integer, Object> arrayMap = new ArrayMap<>();
+            IntObjectMap<Object> intMap = new IntObjectMap<>();
+            ConcurrentIntObjectMap<Object> concurrentMap = new ConcurrentIntObjectMap<>();
+            for (int pid : pids) {
+                hashMap.put(pid, VALUE);
+                arrayMap.put(pid, VALUE);
+                intMap.put(pid, VALUE);
+                concurrentMap.put(pid, VALUE);
+            }
+
+            long bytes = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < OPS; i++) {
+                sSink = hashMap.get(pids[i & (PIDS - 1)]);
+            }
+            print(report, "HashMap<Integer>.get", bytes, start);
+
+            bytes = allocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < OPS; i++) {
+                sSink = arrayMap.get(pids[i & (PIDS - 1)]);
+            }
+            print(report, "ArrayMap<Integer>.get", bytes, start);
+
+            bytes = allocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < OPS; i++) {
+                sSink = intMap.get(pids[i & (PIDS - 1)]);
+            }
+            print(report, "IntObjectMap.get", bytes, start);
+
+            bytes = allocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < OPS; i++) {
+                sSink = concurrentMap.get(pids[i & (PIDS - 1)]);
+            }
+            print(report, "ConcurrentIntObjectMap.get", bytes, start);
+
+            // 进程记录的增删（进程启动、退出）
+            bytes = allocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < OPS; i++) {
+                int pid = 5000 + (i & 63);
+                hashMap.put(pid, VALUE);
+                hashMap.remove(pid);
+            }
+            print(report, "HashMap<Integer>.put+remove", bytes, start);
+
+            bytes = allocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < OPS; i++) {
+                int pid = 5000 + (i & 63);
+                intMap.put(pid, VALUE);
+                intMap.remove(pid);
+            }
+            print(report, "IntObjectMap.put+remove", bytes, start);
+        }
+    }
+
+    private static long allocatedBytes() {
+        return MX.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void print(boolean report, String name, long bytesBefore, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        long bytes = allocatedBytes() - bytesBefore;
+        if (report) {
+            System.out.println(String.format("%-30s %8.2f B/op %8.1f ns/op", name, bytes / (double) OPS, nanos / (double) OPS));
+        }
+    }
+}
@@ -60,6 +60,9 @@ class AppConstant {
     /** 用户Task:安装并运行插件 */
     def static final TASK_INSTALL_AND_RUN_PLUGIN = TASKS_PREFIX + "InstallAndRunPlugin"
 
+    /** Task:生成组件索引 */
+    def static final TASK_GENERATE_MANIFEST_INDEX = TASKS_PREFIX + "GenerateManifestIndex"
+
 
     /** 配置例子 */
     static final String CONFIG_EXAMPLE = '''
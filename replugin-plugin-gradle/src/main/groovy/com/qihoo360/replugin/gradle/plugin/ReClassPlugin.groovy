@@ -23,6 +23,8 @@ import com.qihoo360.replugin.gradle.compat.VariantCompat
 import com.qihoo360.replugin.gradle.plugin.debugger.PluginDebugger
 import com.qihoo360.replugin.gradle.plugin.inner.CommonData
 import com.qihoo360.replugin.gradle.plugin.inner.ReClassTransform
+import com.qihoo360.replugin.gradle.plugin.manifest.ManifestAPI
+import com.qihoo360.replugin.gradle.plugin.manifest.ManifestIndexWriter
 import org.gradle.api.Plugin
 import org.gradle.api.Project
 
@@ -114,6 +116,51 @@ public class ReClassPlugin implements Plugin<Project> {
                     installPluginTask.dependsOn assembleTask
                 }
 
+                // 将组件、进程及 IntentFilter 的二进制索引写入 apk，宿主加载插件时无需再解析 AndroidManifest
+                if (config.manifestIndex) {
+                    // 写入本 Task 自己的生成目录，再作为 variant 的 assets 目录交给 mergeAssets 合并，随 apk 一起签名
+                    def generateManifestIndexTaskName = scope.getTaskName(AppConstant.TASK_GENERATE_MANIFEST_INDEX, "")
+                    def generateManifestIndexTask = project.task(generateManifestIndexTaskName)
+                    def indexAssetsDir = new File(project.buildDir, "generated/assets/replugin/${variant.dirName}")
+
+                    generateManifestIndexTask.inputs.property("indexVersion", ManifestIndexWriter.VERSION)
+                    generateManifestIndexTask.outputs.dir(indexAssetsDir)
+                    def processManifestTask = VariantCompat.getProcessManifestTask(variant)
+                    if (processManifestTask) {
+                        generateManifestIndexTask.dependsOn processManifestTask
+                        generateManifestIndexTask.inputs.files(processManifestTask.outputs.files)
+                    }
+
+                    generateManifestIndexTask.doLast {
+                        project.delete(indexAssetsDir)
+                        def manifestPath = ManifestAPI.manifestPath(project, variant.dirName)
+                        if (manifestPath) {
+                            new ManifestIndexWriter(manifestPath).writeAsset(indexAssetsDir)
+                        }
+                    }
+                    generateManifestIndexTask.group = AppConstant.TASKS_GROUP
+
+                    android.sourceSets.maybeCreate(variant.name).assets.srcDir(indexAssetsDir)
+                    def mergeAssetsTask = VariantCompat.getMergeAssetsTask(variant)
+                    if (mergeAssetsTask) {
+                        mergeAssetsTask.dependsOn generateManifestIndexTask
+                    }
+
+                    // 打包后再追加到 apk comment，宿主读取更快；v2 签名的 apk 会自动跳过
+                    if (assembleTask) {
+                        assembleTask.doLast {
+                            def manifestPath = ManifestAPI.manifestPath(project, variant.dirName)
+                            if (manifestPath) {
+                                def writer = new ManifestIndexWriter(manifestPath)
+                                // 执行时再从 variant 的输出中取 apk，以支持自定义的输出文件名及多个输出
+                                variant.outputs.each { output ->
+                                    writer.writeTo(output.outputFile)
+                                }
+                            }
+                        }
+                    }
+                }
+
                 def runPluginTaskName = scope.getTaskName(AppConstant.TASK_RUN_PLUGIN, "")
                 def runPluginTask = project.task(runPluginTaskName)
                 runPluginTask.doLast {
@@ -166,4 +213,7 @@ class ReClassConfig {
 
     /** 宿主launcherActivity,默认null */
     def hostAppLauncherActivity = null
+
+    /** 是否将组件索引写入 apk 的 assets 及 comment，默认false（apk 使用 v2 签名时只写入 assets） */
+    def manifestIndex = false
 }
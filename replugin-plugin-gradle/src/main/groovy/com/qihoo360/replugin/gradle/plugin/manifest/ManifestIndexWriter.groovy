@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package com.qihoo360.replugin.gradle.plugin.manifest
+
+import com.qihoo360.replugin.gradle.plugin.AppConstant
+
+/**
+ * 将 AndroidManifest 中的组件、进程及 IntentFilter 编译成二进制索引，写入 apk
+ * <p>
+ * 索引有两处存放位置：
+ * 1. assets/{@link #ASSET_NAME}：在打包前写入合并后的 assets 目录，随 apk 一起签名，任何签名方式都可用
+ * 2. apk 的 comment：打包后追加在原有 comment 之后，宿主读取时只需一次定位读；v2 签名会校验 EOCD，此时跳过
+ * <p>
+ * 宿主加载插件时直接读取该索引（见宿主库的 ApkCommentReader、ManifestIndexReader），
+ * 无需再解析 AndroidManifest。两边的格式必须保持一致：
+ * <pre>
+ * comment：   [原有 comment][索引内容][u16 内容长度][(RP-IDX)]
+ * 索引内容：  [u8 版本][u16 字符串个数][[u16 字节数][UTF-8]...][Activity 列表][Service 列表][Receiver 列表]
+ * 组件列表：  [u16 个数][[u16 name][u16 process][u8 filter 个数][filter...]...]
+ * filter：    [i32 priority][u8 action 个数][u16...][u8 category 个数][u16...][u8 data 个数][data...]
+ * data：      [u16 scheme][u16 host][u16 port][u16 path][u16 pathPrefix][u16 pathPattern][u16 mimeType]
+ * </pre>
+ * 所有数值均为 LITTLE_ENDIAN，字符串以字符串表下标表示，0xFFFF 表示不存在。
+ *
+ * @author RePlugin Team
+ */
+public class ManifestIndexWriter {
+
+    def static final VERSION = 1
+
+    def static final NO_STRING = 0xFFFF
+
+    /** (RP-IDX) */
+    static final byte[] INDEX_MAGIC = [0x28, 0x52, 0x50, 0x2d, 0x49, 0x44, 0x58, 0x29] as byte[]
+
+    /** zip 的 End of central directory 标记 */
+    def static final EOCD_SIGNATURE = 0x06054b50
+
+    def static final EOCD_SIZE = 22
+
+    /** APK Signature Scheme v2 的签名块标记 */
+    def static final APK_SIG_BLOCK_MAGIC = "APK Sig Block 42"
+
+    /** assets 中的索引文件名，宿主库 ManifestParser 中有同样的定义 */
+    def static final ASSET_NAME = "replugin_manifest.idx"
+
+    def static final DATA_ATTRS = ['scheme', 'host', 'port', 'path', 'pathPrefix', 'pathPattern', 'mimeType']
+
+    /* AndroidManifest 文件路径 */
+    def final manifestPath
+
+    /* 字符串表，字符串 - 下标 */
+    def final strings = new LinkedHashMap<String, Integer>()
+
+    /* 索引内容，第一次用到时生成 */
+    byte[] index
+
+    public ManifestIndexWriter(String manifestPath) {
+        this.manifestPath = manifestPath
+    }
+
+    /**
+     * 生成索引并写入 assets 目录，需在 mergeAssets 之前调用
+     *
+     * @param assetsDir 参与 mergeAssets 合并的 assets 目录
+     * @return 是否写入成功
+     */
+    public boolean writeAsset(File assetsDir) {
+        if (assetsDir == null) {
+            println "${AppConstant.TAG} assets dir not found, skip manifest index asset"
+            return false
+        }
+
+        assetsDir.mkdirs()
+        def file = new File(assetsDir, ASSET_NAME)
+        file.bytes = getIndex()
+        println "${AppConstant.TAG} manifest index (${file.length()} bytes) written to ${file}"
+        return true
+    }
+
+    /**
+     * 生成索引并追加到 apk 的 comment 中，原有的 comment 保持不变
+     *
+     * @return 是否写入成功
+     */
+    public boolean writeTo(File apkFile) {
+        if (apkFile == null || !apkFile.exists()) {
+            println "${AppConstant.TAG} apk not found, skip manifest index: ${apkFile}"
+            return false
+        }
+
+        byte[] index = getIndex()
+        // 内容长度只有2字节，且整个 comment 不能超过 zip 的限制
+        if (index.length + 2 + INDEX_MAGIC.length > 0xFFFF) {
+            println "${AppConstant.TAG} manifest index too large (${index.length} bytes), skip"
+            return false
+        }
+
+        def comment = new ByteArrayOutputStream()
+        comment.write(index)
+        writeShort(comment, index.length)
+        comment.write(INDEX_MAGIC)
+
+        return writeComment(apkFile, comment.toByteArray())
+    }
+
+    byte[] getIndex() {
+        if (index == null) {
+            index = build()
+        }
+        index
+    }
+
+    /**
+     * 解析 AndroidManifest，生成索引内容
+     */
+    byte[] build() {
+        def manifest = new XmlSlurper().parse(manifestPath)
+        String pkg = manifest.@package
+
+        def app = manifest.application
+        def activities = app.activity.collect { component(pkg, it) }
+        def services = app.service.collect { component(pkg, it) }
+        def receivers = app.receiver.collect { component(pkg, it) }
+
+        def body = new ByteArrayOutputStream()
+        writeComponents(body, activities)
+        writeComponents(body, services)
+        writeComponents(body, receivers)
+
+        // 字符串表在收集组件时才能确定，放在组件列表之前写入
+        def out = new ByteArrayOutputStream()
+        out.write(VERSION)
+        writeShort(out, strings.size())
+        strings.keySet().each {
+            byte[] bytes = it.getBytes("UTF-8")
+            writeShort(out, bytes.length)
+            out.write(bytes)
+        }
+        out.write(body.toByteArray())
+        out.toByteArray()
+    }
+
+    def private component(String pkg, def node) {
+        String name = node.'@android:name'
+        // 与宿主解析 xml 时的规则保持一致：只补全以 . 开头的类名
+        if (name.startsWith('.')) {
+            name = pkg + name
+        }
+
+        def filters = node.'intent-filter'.collect { filter ->
+            [priority  : parsePriority(filter.'@android:priority'.text()),
+             actions   : filter.action.collect { it.'@android:name'.text() },
+             categories: filter.category.collect { it.'@android:name'.text() },
+             data      : filter.data.collect { data ->
+                 DATA_ATTRS.collect { attr -> attrOrNull(data, attr) }
+             }]
+        }
+
+        [name: name, process: attrOrNull(node, 'process'), filters: filters]
+    }
+
+    def private writeComponents(ByteArrayOutputStream out, def components) {
+        writeShort(out, components.size())
+        components.each { c ->
+            writeShort(out, stringIndex(c.name))
+            writeShort(out, stringIndex(c.process))
+            out.write(checkByte(c.filters.size()))
+            c.filters.each { f ->
+                writeInt(out, f.priority)
+                out.write(checkByte(f.actions.size()))
+                f.actions.each { writeShort(out, stringIndex(it)) }
+                out.write(checkByte(f.categories.size()))
+                f.categories.each { writeShort(out, stringIndex(it)) }
+                out.write(checkByte(f.data.size()))
+                f.data.each { attrs ->
+                    attrs.each { writeShort(out, stringIndex(it)) }
+                }
+            }
+        }
+    }
+
+    def private stringIndex(String str) {
+        if (str == null) {
+            return NO_STRING
+        }
+        Integer idx = strings.get(str)
+        if (idx == null) {
+            idx = strings.size()
+            if (idx >= NO_STRING) {
+                throw new IllegalStateException("too many strings in manifest index")
+            }
+            strings.put(str, idx)
+        }
+        idx
+    }
+
+    def private static attrOrNull(def node, String attr) {
+        def value = node."@android:${attr}"
+        value.isEmpty() ? null : value.text()
+    }
+
+    def private static parsePriority(String val) {
+        try {
+            return val ? Integer.parseInt(val) : 0
+        } catch (NumberFormatException ignored) {
+            return 0
+        }
+    }
+
+    def private static checkByte(int count) {
+        if (count > 0xFF) {
+            throw new IllegalStateException("too many items in manifest index: ${count}")
+        }
+        count
+    }
+
+    def private static writeShort(OutputStream out, int v) {
+        out.write(v & 0xFF)
+        out.write((v >>> 8) & 0xFF)
+    }
+
+    def private static writeInt(OutputStream out, int v) {
+        writeShort(out, v & 0xFFFF)
+        writeShort(out, (v >>> 16) & 0xFFFF)
+    }
+
+    /**
+     * 将索引追加到 apk（zip）原有的 comment 之后；原有 comment 末尾已有索引（重复执行）时先去掉旧的
+     */
+    def private static writeComment(File apkFile, byte[] comment) {
+        RandomAccessFile raf = new RandomAccessFile(apkFile, "rw")
+        try {
+            long eocd = findEocd(raf)
+            if (eocd < 0) {
+                println "${AppConstant.TAG} not a valid apk, skip manifest index: ${apkFile}"
+                return false
+            }
+
+            // v2 签名会校验 EOCD，修改 comment 会使签名失效，这种情况下不写入，宿主会退回到解析 AndroidManifest
+            raf.seek(eocd + 16)
+            long cdOffset = readInt(raf) & 0xFFFFFFFFL
+            if (cdOffset >= APK_SIG_BLOCK_MAGIC.length()) {
+                byte[] magic = new byte[APK_SIG_BLOCK_MAGIC.length()]
+                raf.seek(cdOffset - magic.length)
+                raf.readFully(magic)
+                if (new String(magic, "US-ASCII") == APK_SIG_BLOCK_MAGIC) {
+                    println "${AppConstant.TAG} apk is signed with v2 scheme, skip manifest index: ${apkFile}"
+                    return false
+                }
+            }
+
+            raf.seek(eocd + 20)
+            int oldLen = raf.read() | (raf.read() << 8)
+            byte[] old = new byte[oldLen]
+            raf.readFully(old)
+            int keep = stripIndex(old)
+            if (keep + comment.length > 0xFFFF) {
+                println "${AppConstant.TAG} apk comment too large (${keep} + ${comment.length} bytes), skip manifest index: ${apkFile}"
+                return false
+            }
+
+            int total = keep + comment.length
+            raf.seek(eocd + 20)
+            raf.write(total & 0xFF)
+            raf.write((total >>> 8) & 0xFF)
+            raf.seek(eocd + EOCD_SIZE + keep)
+            raf.write(comment)
+            raf.setLength(eocd + EOCD_SIZE + total)
+            println "${AppConstant.TAG} manifest index (${comment.length} bytes) written to ${apkFile}"
+            return true
+        } finally {
+            raf.close()
+        }
+    }
+
+    /**
+     * 原有 comment 中需要保留的长度：末尾是上次写入的索引时去掉它，其余内容（如 (MS-PLG)）原样保留
+     */
+    def private static stripIndex(byte[] comment) {
+        int magicPos = comment.length - INDEX_MAGIC.length
+        if (magicPos < 2 || !Arrays.equals(Arrays.copyOfRange(comment, magicPos, comment.length), INDEX_MAGIC)) {
+            return comment.length
+        }
+        int length = (comment[magicPos - 2] & 0xFF) | ((comment[magicPos - 1] & 0xFF) << 8)
+        int start = magicPos - 2 - length
+        return start >= 0 ? start : comment.length
+    }
+
+    /**
+     * 从文件尾部向前查找 EOCD 的位置
+     */
+    def private static findEocd(RandomAccessFile raf) {
+        long len = raf.length()
+        long min = Math.max(0, len - EOCD_SIZE - 0xFFFF)
+        for (long pos = len - EOCD_SIZE; pos >= min; pos--) {
+            raf.seek(pos)
+            if (readInt(raf) != EOCD_SIGNATURE) {
+                continue
+            }
+            raf.seek(pos + 20)
+            int commentLen = raf.read() | (raf.read() << 8)
+            if (pos + EOCD_SIZE + commentLen == len) {
+                return pos
+            }
+        }
+        return -1
+    }
+
+    def private static readInt(RandomAccessFile raf) {
+        raf.read() | (raf.read() << 8) | (raf.read() << 16) | (raf.read() << 24)
+    }
+}
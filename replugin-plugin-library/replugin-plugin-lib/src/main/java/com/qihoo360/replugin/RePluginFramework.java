@@ -23,6 +23,7 @@ import com.qihoo360.replugin.loader.b.PluginLocalBroadcastManager;
 import com.qihoo360.replugin.loader.p.PluginProviderClient;
 import com.qihoo360.replugin.loader.s.PluginServiceClient;
 import com.qihoo360.replugin.base.IPC;
+import com.qihoo360.replugin.base.SharedMessageBus;
 import com.qihoo360.replugin.helper.LogRelease;
 
 /**
@@ -74,6 +75,7 @@ public class RePluginFramework {
             PluginProviderClient.ProxyRePluginProviderClientVar.initLocked(cl);
             PluginServiceClient.ProxyRePluginServiceClientVar.initLocked(cl);
             IPC.ProxyIPCVar.initLocked(cl);
+            SharedMessageBus.ProxySharedMessageBusVar.initLocked(cl);
 
             mHostInitialized = true;
 
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2005-2017 Qihoo 360 Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed To in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.qihoo360.replugin.base;
+
+import android.content.Context;
+
+import com.qihoo360.replugin.MethodInvoker;
+import com.qihoo360.replugin.RePluginFramework;
+import com.qihoo360.replugin.helper.LogDebug;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+
+/**
+ * 基于共享内存的跨进程消息通道，适用于频繁发送的小消息。插件和宿主的各个进程之间可直接收发，不经过常驻进程中转。
+ * <p>
+ * 消息由一个 int 类型和最多 {@link #MAX_PAYLOAD} 字节的内容组成；目标进程未注册监听、已退出或缓冲区已满时发送失败，
+ * 此时可改用 {@link IPC#sendLocalBroadcast2Process} 等方法。
+ *
+ * @author RePlugin Team
+ */
+public class SharedMessageBus {
+
+    private static final String TAG = "SharedMessageBus";
+
+    /**
+     * 单条消息内容的最大长度
+     */
+    public static final int MAX_PAYLOAD = 1024;
+
+    /**
+     * 消息监听
+     */
+    public interface Listener {
+
+        /**
+         * 收到消息（在后台线程中调用）
+         *
+         * @param pid     发送方进程的 pid
+         * @param what    消息类型
+         * @param payload 消息内容，可能为空数组
+         */
+        void onMessage(int pid, int what, byte[] payload);
+    }
+
+    /**
+     * HashMap<插件的 Listener, 传给宿主的 Listener 代理>
+     */
+    private static final HashMap<Listener, Object> sListeners = new HashMap<>();
+
+    /**
+     * 注册监听。注册后其它进程才能向本进程发送消息
+     *
+     * @param context  Context 对象
+     * @param listener 监听器
+     * @return 是否成功
+     */
+    public static boolean register(Context context, Listener listener) {
+        if (!RePluginFramework.isHostInitialized() || ProxySharedMessageBusVar.sListenerClass == null) {
+            return false;
+        }
+
+        Object proxy;
+        synchronized (sListeners) {
+            proxy = sListeners.get(listener);
+            if (proxy == null) {
+                proxy = newHostListener(listener);
+            }
+        }
+
+        try {
+            Object obj = ProxySharedMessageBusVar.register.call(null, context, proxy);
+            if (obj != null && (Boolean) obj) {
+                synchronized (sListeners) {
+                    sListeners.put(listener, proxy);
+                }
+                return true;
+            }
+        } catch (Exception e) {
+            if (LogDebug.LOG) {
+                e.printStackTrace();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 取消监听
+     *
+     * @param listener 监听器
+     */
+    public static void unregister(Listener listener) {
+        if (!RePluginFramework.isHostInitialized() || ProxySharedMessageBusVar.sListenerClass == null) {
+            return;
+        }
+
+        Object proxy;
+        synchronized (sListeners) {
+            proxy = sListeners.remove(listener);
+        }
+        if (proxy == null) {
+            return;
+        }
+
+        try {
+            ProxySharedMessageBusVar.unregister.call(null, proxy);
+        } catch (Exception e) {
+            if (LogDebug.LOG) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 向目标进程发送消息，不等待对方处理
+     *
+     * @param context Context 对象
+     * @param target  目标进程名
+     * @param what    消息类型
+     * @param payload 消息内容，可以为 null，长度不能超过 {@link #MAX_PAYLOAD}
+     * @return 是否已写入目标进程的缓冲区
+     */
+    public static boolean post(Context context, String target, int what, byte[] payload) {
+        if (payload != null && payload.length > MAX_PAYLOAD) {
+            throw new IllegalArgumentException("payload too large: " + payload.length);
+        }
+        if (!RePluginFramework.isHostInitialized() || ProxySharedMessageBusVar.post == null) {
+            return false;
+        }
+
+        try {
+            Object obj = ProxySharedMessageBusVar.post.call(null, context, target, what, payload);
+            if (obj != null) {
+                return (Boolean) obj;
+            }
+        } catch (Exception e) {
+            if (LogDebug.LOG) {
+                e.printStackTrace();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 宿主的 Listener 接口由宿主的 ClassLoader 加载，插件无法直接实现，故用动态代理转发
+     */
+    private static Object newHostListener(final Listener listener) {
+        Class<?> clazz = ProxySharedMessageBusVar.sListenerClass;
+        return Proxy.newProxyInstance(clazz.getClassLoader(), new Class<?>[]{clazz}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("onMessage".equals(method.getName()) && args != null && args.length == 3) {
+                    listener.onMessage((Integer) args[0], (Integer) args[1], (byte[]) args[2]);
+                    return null;
+                }
+                // equals、hashCode、toString
+                if ("equals".equals(method.getName()) && args != null && args.length == 1) {
+                    return proxy == args[0];
+                }
+                if ("hashCode".equals(method.getName())) {
+                    return System.identityHashCode(proxy);
+                }
+                if ("toString".equals(method.getName())) {
+                    return TAG + ".Listener{" + listener + "}";
+                }
+                return null;
+            }
+        });
+    }
+
+    public static class ProxySharedMessageBusVar {
+
+        private static Class<?> sListenerClass;
+
+        private static MethodInvoker register;
+
+        private static MethodInvoker unregister;
+
+        private static MethodInvoker post;
+
+        public static void initLocked(final ClassLoader classLoader) {
+            //
+            final String BUS = "com.qihoo360.replugin.base.SharedMessageBus";
+            try {
+                sListenerClass = classLoader.loadClass(BUS + "$Listener");
+            } catch (ClassNotFoundException e) {
+                // 宿主版本过低，没有此功能
+                if (LogDebug.LOG) {
+                    LogDebug.d(TAG, "host has no SharedMessageBus");
+                }
+                return;
+            }
+            register = new MethodInvoker(classLoader, BUS, "register", new Class<?>[]{Context.class, sListenerClass});
+            unregister = new MethodInvoker(classLoader, BUS, "unregister", new Class<?>[]{sListenerClass});
+            post = new MethodInvoker(classLoader, BUS, "post", new Class<?>[]{Context.class, String.class, int.class, byte[].class});
+        }
+    }
+}
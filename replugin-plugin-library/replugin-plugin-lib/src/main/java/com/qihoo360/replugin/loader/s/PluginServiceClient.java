@@ -17,6 +17,9 @@
 package com.qihoo360.replugin.loader.s;
 
 import android.app.Service;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
 
 import com.qihoo360.replugin.RePluginFramework;
 import com.qihoo360.replugin.MethodInvoker;
@@ -54,15 +57,48 @@ public class PluginServiceClient {
         }
     }
 
+    /**
+     * 批量开启服务。结果与逐个调用Context.startService相同，但同一进程中的插件服务只需一次跨进程调用
+     *
+     * @param context Context对象
+     * @param intents 要打开的服务
+     * @return 与intents一一对应，最终打开哪个服务的ComponentName，失败为null
+     */
+    public static ComponentName[] startServices(Context context, Intent[] intents) {
+        if (RePluginFramework.mHostInitialized) {
+            try {
+                Object r = ProxyRePluginServiceClientVar.startServices.call(null, context, intents);
+                if (r != null) {
+                    return (ComponentName[]) r;
+                }
+            } catch (Exception e) {
+                if (LogDebug.LOG) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        // 未在宿主中运行，或宿主版本较低，则逐个启动
+        ComponentName[] result = new ComponentName[intents.length];
+        for (int i = 0; i < intents.length; i++) {
+            result[i] = context.startService(intents[i]);
+        }
+        return result;
+    }
 
     public static class ProxyRePluginServiceClientVar {
 
         private static MethodInvoker stopSelf;
 
+        private static MethodInvoker startServices;
+
         public static void initLocked(final ClassLoader classLoader) {
             //
             final String rePluginServiceClient = "com.qihoo360.loader2.mgr.PluginServiceClient";
             stopSelf = new MethodInvoker(classLoader, rePluginServiceClient, "stopSelf", new Class<?>[]{Service.class});
+
+            final String pluginServiceClient = "com.qihoo360.replugin.component.service.PluginServiceClient";
+            startServices = new MethodInvoker(classLoader, pluginServiceClient, "startServices", new Class<?>[]{Context.class, Intent[].class});
         }
     }
 }